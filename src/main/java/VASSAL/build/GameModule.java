@@ -103,7 +103,8 @@ import VASSAL.tools.WarningDialog;
 import VASSAL.tools.WriteErrorDialog;
 import VASSAL.tools.filechooser.FileChooser;
 import VASSAL.tools.image.ImageTileSource;
-import VASSAL.tools.image.tilecache.ImageTileDiskCache;
+import VASSAL.tools.image.tilecache.ContentAddressedTileCache;
+import VASSAL.tools.image.tilecache.TileIndex;
 import VASSAL.tools.io.IOUtils;
 
 /**
@@ -962,8 +963,16 @@ public abstract class GameModule extends AbstractConfigurable implements Command
       final String hstr =
         DigestUtils.sha1Hex(getGameName() + "_" + getGameVersion());
 
-      final File tc = new File(Info.getConfDir(), "tiles/" + hstr);
-      tcache = new ImageTileDiskCache(tc.getAbsolutePath());
+      final File tc = new File(Info.getConfDir(), "tiles");
+      try {
+        tcache = new ContentAddressedTileCache(tc.getAbsolutePath(), hstr);
+      }
+      catch (IOException e) {
+        // without an index, no image is tiled
+        log.error("Unable to read tile index", e);
+        tcache = new ContentAddressedTileCache(
+          tc.getAbsolutePath(), new TileIndex());
+      }
     }
 
     return tcache;
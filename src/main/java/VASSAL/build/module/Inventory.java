@@ -940,11 +940,12 @@ public class Inventory extends AbstractConfigurable
         if (node != null) {
           Command comm = getCommand(node, stroke);
           if (comm != null && !comm.isNull()) {
+            tracker.addCommand(comm);
             tracker.repaint();
             GameModule.getGameModule().sendAndLog(comm);
-            tracker = null;
             refresh();
           }
+          tracker = null;
         }
       }
     }
@@ -957,9 +958,11 @@ public class Inventory extends AbstractConfigurable
         p.setProperty(Properties.SNAPSHOT, PieceCloner.getInstance().clonePiece(p));
         if (tracker == null) {
           tracker = new BoundsTracker();
-          tracker.addPiece(p);
         }
+        // repaint each piece where it was and where the command left it
+        tracker.addPiece(p);
         comm = p.keyEvent(stroke);
+        tracker.addPiece(p);
       }
       else {
         comm = new NullCommand();
@@ -26,6 +26,7 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
@@ -50,6 +51,7 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.image.VolatileImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
@@ -211,6 +213,17 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
   protected ArrayList<Highlighter> highlighters = new ArrayList<>();
   protected boolean clearFirst = false; // Whether to clear the display before
   // drawing the map
+
+  /**
+   * Boards are drawn to the map view through a cached layer, which is
+   * redrawn only when the zoom, the visible area or the boards change.
+   * The layer may be disabled with <code>-DVASSAL.boardLayer=false</code>.
+   */
+  protected static final boolean BOARD_LAYER = Boolean.parseBoolean(
+    System.getProperty("VASSAL.boardLayer", "true"));
+
+  protected VolatileImage boardLayer;
+  protected List<Object> boardLayerKey;
   protected boolean hideCounters = false; // Option to hide counters to see
   // map
   protected float pieceOpacity = 1.0f;
@@ -761,6 +774,7 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
       boards.add(b);
     }
     setBoardBoundaries();
+    invalidateBoardLayer();
   }
 
   /**
@@ -1538,6 +1552,9 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
 
   public void repaint(boolean cf) {
     clearFirst = cf;
+    if (cf) {
+      invalidateBoardLayer();
+    }
     theMap.repaint();
   }
 
@@ -1547,7 +1564,12 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
 
   public void paintRegion(Graphics g, Rectangle visibleRect, Component c) {
     clearMapBorder(g); // To avoid ghost pieces around the edge
-    drawBoardsInRegion(g, visibleRect, c);
+    if (c == theMap && BOARD_LAYER) {
+      drawBoardLayer(g, visibleRect, c);
+    }
+    else {
+      drawBoardsInRegion(g, visibleRect, c);
+    }
     drawDrawable(g, false);
     drawPiecesInRegion(g, visibleRect, c);
     drawDrawable(g, true);
@@ -1558,12 +1580,123 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
                                  Component c) {
     final Graphics2D g2d = (Graphics2D) g;
     final double os_scale = g2d.getDeviceConfiguration().getDefaultTransform().getScaleX();
+    drawBoardsInRegion(g, visibleRect, c, os_scale);
+  }
+
+  protected void drawBoardsInRegion(Graphics g,
+                                    Rectangle visibleRect,
+                                    Component c,
+                                    double os_scale) {
     final double dzoom = getZoom() * os_scale;
     for (Board b : boards) {
       b.drawRegion(g, getLocation(b, dzoom), visibleRect, dzoom, c);
     }
   }
 
+  /**
+   * Draws the boards in the visible region from the board layer, first
+   * redrawing the layer if the zoom, the visible region or the boards
+   * have changed, or if the boards were not completely drawn last time.
+   */
+  protected void drawBoardLayer(Graphics g,
+                                Rectangle visibleRect,
+                                Component c) {
+    final Graphics2D g2d = (Graphics2D) g;
+    final GraphicsConfiguration gc = g2d.getDeviceConfiguration();
+
+    // HDPI: visibleRect and g are in device pixels, but volatile images
+    // are allocated in user space, scaled by the OS scaling. Allocate the
+    // layer so that it has at least visibleRect's size in device pixels.
+    final AffineTransform os_t = gc.getDefaultTransform();
+    final double os_sx = os_t.getScaleX();
+    final double os_sy = os_t.getScaleY();
+    final int lw = (int) Math.ceil(visibleRect.width / os_sx);
+    final int lh = (int) Math.ceil(visibleRect.height / os_sy);
+
+    final List<Object> key = new ArrayList<>();
+    key.add(getZoom());
+    key.add(new Rectangle(visibleRect));
+    key.add(bgColor);
+    for (Board b : boards) {
+      key.add(b);
+      key.add(b.isReversed());
+    }
+
+    boolean redraw = !key.equals(boardLayerKey);
+
+    final int status = boardLayer == null ?
+      VolatileImage.IMAGE_INCOMPATIBLE : boardLayer.validate(gc);
+
+    if (status == VolatileImage.IMAGE_INCOMPATIBLE ||
+        boardLayer.getWidth() != lw ||
+        boardLayer.getHeight() != lh) {
+      if (boardLayer != null) {
+        boardLayer.flush();
+        boardLayer = null;
+      }
+      if (visibleRect.isEmpty()) {
+        return;
+      }
+      boardLayer = gc.createCompatibleVolatileImage(lw, lh);
+      redraw = true;
+    }
+    else if (status == VolatileImage.IMAGE_RESTORED) {
+      redraw = true;
+    }
+
+    if (redraw) {
+      // draw in device pixels, as the view does
+      final Graphics2D lg = boardLayer.createGraphics();
+      lg.setTransform(SwingUtils.descaleTransform(lg.getTransform()));
+      lg.setColor(bgColor);
+      lg.fillRect(0, 0, visibleRect.width, visibleRect.height);
+      lg.translate(-visibleRect.x, -visibleRect.y);
+      drawBoardsInRegion(lg, visibleRect, c, os_sx);
+      lg.dispose();
+
+      // keep redrawing until every tile has arrived
+      boardLayerKey = key;
+      for (Board b : boards) {
+        if (b.isDrawPending()) {
+          boardLayerKey = null;
+          break;
+        }
+      }
+    }
+
+    // scaling by the OS scaling copies the layer pixel for pixel
+    final Graphics2D bg = (Graphics2D) g.create(
+      visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height);
+    bg.scale(os_sx, os_sy);
+    bg.drawImage(boardLayer, 0, 0, null);
+    bg.dispose();
+
+    if (boardLayer.contentsLost()) {
+      boardLayerKey = null;
+      repaint();
+    }
+  }
+
+  /**
+   * Discards the board layer, so that the boards are redrawn on the next
+   * paint. This must be called when the appearance of a board changes
+   * without a change of zoom, visible region, or board set.
+   */
+  public void invalidateBoardLayer() {
+    boardLayerKey = null;
+  }
+
+  /**
+   * Discards the board layers of all maps and repaints them, e.g., after
+   * a board or grid has been edited.
+   */
+  public static void invalidateBoardLayers() {
+    for (Map m : getMapList()) {
+      m.invalidateBoardLayer();
+      m.repaint();
+    }
+  }
+
   public void drawBoardsInRegion(Graphics g, Rectangle visibleRect) {
     drawBoardsInRegion(g, visibleRect, theMap);
   }
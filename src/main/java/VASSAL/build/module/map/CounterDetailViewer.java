@@ -38,6 +38,7 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,6 +52,7 @@ import VASSAL.build.Buildable;
 import VASSAL.build.GameModule;
 import VASSAL.build.IllegalBuildException;
 import VASSAL.build.module.Map;
+import VASSAL.build.module.PlayerRoster;
 import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.map.boardPicker.Board;
 import VASSAL.build.module.map.boardPicker.board.mapgrid.Zone;
@@ -80,6 +82,7 @@ import VASSAL.counters.Properties;
 import VASSAL.counters.Stack;
 import VASSAL.i18n.Resources;
 import VASSAL.tools.FormattedString;
+import VASSAL.tools.image.ImageUtils;
 
 /**
  * This is a {@link Drawable} class that draws the counters horizontally when
@@ -167,6 +170,17 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
   protected PropertyExpression propertyFilter = new PropertyExpression();
 
   protected Rectangle bounds = new Rectangle();
+
+  /*
+   * The search for pieces under the cursor and the drawing of the pieces
+   * found are both cached, unless VASSAL.counterDetailCache=false.
+   */
+  private static final boolean DETAIL_CACHE = Boolean.parseBoolean(
+    System.getProperty("VASSAL.counterDetailCache", "true"));
+
+  protected PieceSpatialIndex pieceIndex;
+  protected BufferedImage detailImage;
+  protected List<Object> detailKey;
   protected boolean mouseInView = true;
   protected List<GamePiece> displayablePieces = null;
 
@@ -284,6 +298,60 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
     if (dbounds.y < minY)
       dbounds.y = minY;
 
+    if (DETAIL_CACHE) {
+      final List<Object> key = getDetailKey(pieces, dbounds, os_scale);
+      if (detailImage == null || !key.equals(detailKey)) {
+        detailImage = ImageUtils.createCompatibleTranslucentImage(
+          dbounds.width + 4, dbounds.height + 4);
+        final Graphics2D ig = detailImage.createGraphics();
+        ig.setRenderingHints(g2d.getRenderingHints());
+        // no observer, so that piece images are complete when cached
+        drawPieces(ig, new Rectangle(2, 2, dbounds.width, dbounds.height),
+                   null, pieces, os_scale);
+        ig.dispose();
+        detailKey = key;
+      }
+      g.drawImage(detailImage, dbounds.x - 2, dbounds.y - 2, null);
+    }
+    else {
+      drawPieces(g, dbounds, comp, pieces, os_scale);
+    }
+
+    int borderOffset = borderWidth;
+    final double graphicsZoom = graphicsZoomLevel;
+    for (GamePiece piece : pieces) {
+      final Rectangle pieceBounds = getBounds(piece);
+
+      if (isTextUnderCounters()) {
+        String text = counterReportFormat.getLocalizedText(piece);
+        if (text.length() > 0) {
+          int x = dbounds.x - (int) (pieceBounds.x * graphicsZoom * os_scale) + (int)(borderOffset * os_scale);
+          int y = dbounds.y + dbounds.height + 10;
+          drawLabel(g, new Point(x, y), text, Labeler.CENTER, Labeler.CENTER);
+        }
+      }
+
+      dbounds.translate((int) (pieceBounds.width * graphicsZoom * os_scale), 0);
+      borderOffset += borderWidth;
+    }
+
+    bounds.x = (int)(dbounds.x / os_scale);
+    bounds.y = (int)(dbounds.y / os_scale);
+    bounds.width = (int)(dbounds.width / os_scale);
+    bounds.height = (int)(dbounds.height / os_scale);
+  }
+
+  /**
+   * Draws the background, the frame, and the pieces of the viewer.
+   *
+   * @param g the graphics context
+   * @param dbounds the area within the frame, in drawing coordinates
+   * @param comp the observer for piece images, or <code>null</code>
+   * @param pieces the pieces to draw, from left to right
+   * @param os_scale the scale of the display
+   */
+  protected void drawPieces(Graphics g, Rectangle dbounds, JComponent comp,
+                            List<GamePiece> pieces, double os_scale) {
     if (bgColor != null) {
       g.setColor(bgColor);
       g.fillRect(dbounds.x, dbounds.y, dbounds.width, dbounds.height);
@@ -298,11 +366,12 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
     Shape oldClip = g.getClip();
 
     Object owner = null;
+    int x = dbounds.x;
     int borderOffset = borderWidth;
     double graphicsZoom = graphicsZoomLevel;
     for (GamePiece piece : pieces) {
       // Draw the next piece
-      // pt is the location of the left edge of the piece
+      // x is the location of the left edge of the piece
       Rectangle pieceBounds = getBounds(piece);
       if (unrotatePieces) piece.setProperty(Properties.USE_UNROTATED_SHAPE, Boolean.TRUE);
       g.setClip(dbounds.x - 3, dbounds.y - 3, dbounds.width + 5, dbounds.height + 5);
@@ -315,7 +384,7 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
 
       piece.draw(
         g,
-        dbounds.x - (int) (pieceBounds.x * graphicsZoom * os_scale) + (int)(borderOffset * os_scale),
+        x - (int) (pieceBounds.x * graphicsZoom * os_scale) + (int)(borderOffset * os_scale),
         dbounds.y - (int) (pieceBounds.y * graphicsZoom * os_scale) + (int)(borderWidth * os_scale),
         comp,
         graphicsZoom * os_scale
@@ -325,23 +394,38 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
       if (unrotatePieces) piece.setProperty(Properties.USE_UNROTATED_SHAPE, Boolean.FALSE);
       g.setClip(oldClip);
 
-      if (isTextUnderCounters()) {
-        String text = counterReportFormat.getLocalizedText(piece);
-        if (text.length() > 0) {
-          int x = dbounds.x - (int) (pieceBounds.x * graphicsZoom * os_scale) + (int)(borderOffset * os_scale);
-          int y = dbounds.y + dbounds.height + 10;
-          drawLabel(g, new Point(x, y), text, Labeler.CENTER, Labeler.CENTER);
-        }
-      }
-
-      dbounds.translate((int) (pieceBounds.width * graphicsZoom * os_scale), 0);
+      x += (int) (pieceBounds.width * graphicsZoom * os_scale);
       borderOffset += borderWidth;
     }
+  }
 
-    bounds.x = (int)(dbounds.x / os_scale);
-    bounds.y = (int)(dbounds.y / os_scale);
-    bounds.width = (int)(dbounds.width / os_scale);
-    bounds.height = (int)(dbounds.height / os_scale);
+  /**
+   * The composed image of the pieces may be reused as long as the same
+   * pieces are shown in the same states, at the same size, for the same
+   * player. Changes which do not alter the state of a piece are not seen,
+   * as with the piece image cache.
+   */
+  protected List<Object> getDetailKey(List<GamePiece> pieces,
+                                      Rectangle dbounds, double os_scale) {
+    final List<Object> key = new ArrayList<>(4 * pieces.size() + 12);
+    key.add(os_scale);
+    key.add(graphicsZoomLevel);
+    key.add(dbounds.width);
+    key.add(dbounds.height);
+    key.add(unrotatePieces);
+    key.add(borderWidth);
+    key.add(bgColor);
+    key.add(fgColor);
+    key.add(PlayerRoster.getMySide());
+    key.add(pieces.isEmpty() ? null : pieces.get(0).getPosition());
+
+    for (GamePiece piece : pieces) {
+      key.add(piece);
+      key.add(piece.getState());
+      key.add(piece.getParent() instanceof Deck ?
+        ((Deck) piece.getParent()).isFaceDown() : null);
+    }
+    return key;
   }
 
   /** Set the bounds field large enough to accommodate the given set of pieces */
@@ -473,18 +557,53 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
    * on selection criteria setup in config.
    */
   protected List<GamePiece> getDisplayablePieces() {
-    GamePiece[] allPieces = map.getPieces(); // All pieces from bottom up
+    final Point pt = map.componentToMap(currentMousePosition.getPoint());
 
-    Visitor visitor = new Visitor(new Filter(), map,
-      map.componentToMap(currentMousePosition.getPoint()));
+    Visitor visitor = new Visitor(new Filter(), map, pt);
     DeckVisitorDispatcher dispatcher = new DeckVisitorDispatcher(visitor);
 
+    if (!DETAIL_CACHE) {
+      GamePiece[] allPieces = map.getPieces(); // All pieces from bottom up
+
+      /*
+       * Process pieces from the top down to make it easier to check for top
+       * layer only.
+       */
+      for (int i = allPieces.length - 1; i >= 0; i--) {
+        dispatcher.accept(allPieces[i]);
+      }
+
+      return visitor.getPieces();
+    }
+
+    if (pieceIndex == null) {
+      pieceIndex = new PieceSpatialIndex(map);
+    }
+    pieceIndex.validate();
+
+    final GamePiece[] allPieces = pieceIndex.getPieces();
+
     /*
-     * Process pieces from the top down to make it easier to check for top layer
-     * only.
+     * Only pieces whose bounds contain the point can be found by the
+     * visitor; once one has been, the pieces beneath it at the same
+     * position are added as well. Both are visited from the top down,
+     * as above.
      */
-    for (int i = allPieces.length - 1; i >= 0; i--) {
+    int found = -1;
+    for (int i : pieceIndex.query(pt)) {
       dispatcher.accept(allPieces[i]);
+      if (visitor.foundPieceAt != null) {
+        found = i;
+        break;
+      }
+    }
+
+    if (found >= 0) {
+      for (int i : pieceIndex.at(visitor.foundPieceAt)) {
+        if (i < found) {
+          dispatcher.accept(allPieces[i]);
+        }
+      }
     }
 
     return visitor.getPieces();
@@ -20,6 +20,7 @@ package VASSAL.build.module.map;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.HashMap;
@@ -184,6 +185,8 @@ public class HighlightLastMoved extends AbstractConfigurable implements Drawable
 
   public void setLastMovedPiece(GamePiece p) {
     if (currentlyEnabled) {
+      // the old highlight must be erased if only part of the map is repainted
+      repaintHighlight();
       if (p.getParent() instanceof Stack) {
         lastMoved = p.getParent();
       }
@@ -193,6 +196,15 @@ public class HighlightLastMoved extends AbstractConfigurable implements Drawable
       if (lastMoved.getMap() != null) {
         lastMoved.getMap().getPieceCollection().moveToFront(lastMoved);
       }
+      repaintHighlight();
+    }
+  }
+
+  protected void repaintHighlight() {
+    if (lastMoved != null && lastMoved.getMap() != null) {
+      final Rectangle r = highlighter.boundingBox(lastMoved);
+      r.translate(lastMoved.getPosition().x, lastMoved.getPosition().y);
+      lastMoved.getMap().repaint(r);
     }
   }
 
@@ -30,18 +30,23 @@ import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriter;
-import javax.imageio.event.IIOWriteProgressListener;
-import javax.imageio.stream.ImageOutputStream;
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 
@@ -63,15 +68,19 @@ import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.LaunchButton;
 import VASSAL.tools.NamedKeyStroke;
 import VASSAL.tools.WriteErrorDialog;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
 import VASSAL.tools.filechooser.FileChooser;
 import VASSAL.tools.filechooser.PNGFileFilter;
+import VASSAL.tools.image.PNGStreamWriter;
 import VASSAL.tools.swing.ProgressDialog;
 
-// FIXME: Replace this in 3.2 with tiling code.
-
 /**
  * This allows the user to capture a snapshot of the entire map into
  * a PNG file.
+ *
+ * The map is rendered in horizontal strips, the boards of several strips
+ * in parallel, and each strip is encoded as soon as it is finished, so
+ * that the whole image is never held in memory.
  */
 public class ImageSaver extends AbstractConfigurable {
 
@@ -85,6 +94,18 @@ public class ImageSaver extends AbstractConfigurable {
 
   protected static ProgressDialog dialog;
 
+  /** The maximum height of a strip of the map rendered at once. */
+  protected static final int STRIP_HEIGHT = 256;
+
+  /** The maximum number of pixels in a strip of the map. */
+  protected static final int STRIP_PIXELS = 1 << 22;
+
+  /** Images larger than this in either dimension may be saved as tiles. */
+  protected static final int SPLIT_SIZE = 16384;
+
+  /** The size of a tile, when saving the map as tiles. */
+  protected static final int TILE_SIZE = 8192;
+
   public ImageSaver() {
     final ActionListener al = new ActionListener() {
       @Override
@@ -234,7 +255,32 @@ public class ImageSaver extends AbstractConfigurable {
       }
     }
 
-    writeMapRectAsImage(file, 0, 0, w, h);
+    // very large images may be written as tiles, which more programs
+    // can open
+    int tw = w;
+    int th = h;
+    if (w > SPLIT_SIZE || h > SPLIT_SIZE) {
+      final int choice = JOptionPane.showConfirmDialog(
+        frame,
+        "The map image is " + w + "x" + h + " pixels, which many programs " +
+        "cannot open.\nSave it as tiles of at most " + TILE_SIZE + "x" +
+        TILE_SIZE + " pixels instead?",
+        "Saving Map Image",
+        JOptionPane.YES_NO_CANCEL_OPTION
+      );
+
+      if (choice == JOptionPane.CANCEL_OPTION ||
+          choice == JOptionPane.CLOSED_OPTION) {
+        dialog.dispose();
+        return;
+      }
+      else if (choice == JOptionPane.YES_OPTION) {
+        tw = Math.min(w, TILE_SIZE);
+        th = Math.min(h, TILE_SIZE);
+      }
+    }
+
+    writeMapRectAsImage(file, 0, 0, w, h, tw, th);
 
     dialog.setVisible(true);
   }
@@ -249,7 +295,24 @@ public class ImageSaver extends AbstractConfigurable {
    * @param h the height of the map area to write
    */
   protected void writeMapRectAsImage(File file, int x, int y, int w, int h) {
-    final SnapshotTask task = new SnapshotTask(file, x, y, w, h);
+    writeMapRectAsImage(file, x, y, w, h, w, h);
+  }
+
+  /**
+   * Helper method for writing images, possibly as a set of tiles. The
+   * tiles are named <code>name.col.row.png</code>.
+   *
+   * @param file the file to write
+   * @param x the left edge of the map area to write
+   * @param y the top edge of the map area to write
+   * @param w the width of the map area to write
+   * @param h the height of the map area to write
+   * @param tw the width of a tile
+   * @param th the height of a tile
+   */
+  protected void writeMapRectAsImage(File file, int x, int y, int w, int h,
+                                     int tw, int th) {
+    final SnapshotTask task = new SnapshotTask(file, x, y, w, h, tw, th);
 
     task.addPropertyChangeListener(new PropertyChangeListener() {
       @Override
@@ -279,9 +342,6 @@ public class ImageSaver extends AbstractConfigurable {
   }
 
   private class SnapshotTask extends SwingWorker<Void,Void> {
-    private int tiles;
-    private int tilesDone = 0;
-
     private final File file;
     @SuppressWarnings("unused")
     private final int x;
@@ -289,6 +349,8 @@ public class ImageSaver extends AbstractConfigurable {
     private final int y;
     private final int w;
     private final int h;
+    private final int tw;
+    private final int th;
 
     private final Color bg = ColorConfigurer.stringToColor(
       map.getAttributeValueString(Map.BACKGROUND_COLOR));
@@ -296,17 +358,18 @@ public class ImageSaver extends AbstractConfigurable {
     private final List<File> files = new ArrayList<>();
 
 // FIXME: SnapshotTask ignores x,y!
-    public SnapshotTask(File file, int x, int y, int w, int h) {
+    public SnapshotTask(File file, int x, int y, int w, int h, int tw, int th) {
       this.file = file;
       this.x = x;
       this.y = y;
       this.w = w;
       this.h = h;
+      this.tw = tw;
+      this.th = th;
     }
 
-    private void writeImage(final File f, BufferedImage img, Rectangle r)
+    private PNGStreamWriter openImage(final File f, int iw, int ih)
                                                           throws IOException {
-
       files.add(f);
 
       // make sure that we can write the file before proceeding
@@ -326,155 +389,150 @@ public class ImageSaver extends AbstractConfigurable {
         }
       }
 
-      // update the dialog on the EDT
-      SwingUtilities.invokeLater(new Runnable() {
-        @Override
-        public void run() {
-          dialog.setLabel("Saving map image as " + f.getName() + ":");
-          dialog.setIndeterminate(true);
-        }
-      });
+      return new PNGStreamWriter(
+        new BufferedOutputStream(new FileOutputStream(f)), iw, ih);
+    }
 
-      // FIXME: do something to estimate how long painting will take
+    /**
+     * Renders the boards in a strip of the map. Strips are rendered
+     * concurrently.
+     */
+    private BufferedImage renderBoards(Rectangle r) {
+      final BufferedImage img =
+        new BufferedImage(r.width, r.height, BufferedImage.TYPE_INT_ARGB);
       final Graphics2D g = img.createGraphics();
 
-      final Color oc = g.getColor();
       g.setColor(bg);
-      g.fillRect(0, 0, img.getWidth(), img.getHeight());
-      g.setColor(oc);
+      g.fillRect(0, 0, r.width, r.height);
 
       g.translate(-r.x, -r.y);
-      map.paintRegion(g, r, null);
+      map.drawBoardsInRegion(g, r, null);
       g.dispose();
+      return img;
+    }
 
-      // update the dialog on the EDT
-      SwingUtilities.invokeLater(new Runnable() {
-        @Override
-        public void run() {
-          dialog.setIndeterminate(false);
-        }
-      });
-
-      final ImageWriter iw = ImageIO.getImageWritersByFormatName("png").next();
-      iw.addIIOWriteProgressListener(new IIOWriteProgressListener() {
-        @Override
-        public void imageComplete(ImageWriter source) { }
-
-        @Override
-        public void imageProgress(ImageWriter source, float percentageDone) {
-          setProgress(Math.round((100*tilesDone + percentageDone)/tiles));
-        }
-
-        @Override
-        public void imageStarted(ImageWriter source, int imageIndex) { }
-
-        @Override
-        public void thumbnailComplete(ImageWriter source) { }
-
-        @Override
-        public void thumbnailProgress(ImageWriter source,
-                                      float percentageDone) { }
-
-        @Override
-        public void thumbnailStarted(ImageWriter source,
-                                     int imageIndex, int thumbnailIndex) { }
-
-        @Override
-        public void writeAborted(ImageWriter source) { }
-      });
-
-      try (ImageOutputStream os = ImageIO.createImageOutputStream(f)) {
-        if (os == null) {
-          throw new IOException("Failed to write file " + f.getAbsolutePath());
-        }
-
-        iw.setOutput(os);
-        iw.write(img);
-      }
-      finally {
-        iw.dispose();
-      }
+    /**
+     * Renders the pieces and other drawables over the boards in a strip.
+     * Pieces are not safe to draw concurrently, so strips are finished
+     * one at a time.
+     */
+    private void renderPieces(BufferedImage img, Rectangle r) {
+      final Graphics2D g = img.createGraphics();
+      g.translate(-r.x, -r.y);
+      g.setClip(r);
+      map.drawDrawable(g, false);
+      map.drawPiecesInRegion(g, r, null);
+      map.drawDrawable(g, true);
+      g.dispose();
     }
 
     @Override
-    public Void doInBackground() throws IOException {
+    public Void doInBackground() throws IOException, InterruptedException,
+                                        ExecutionException {
       setProgress(0);
 
-      int tw = w;
-      int th = h;
-      BufferedImage img = null;
+      // get the base name of the files to write, if writing tiles
+      final int tcols = (int) Math.ceil((double) w / tw);
+      final int trows = (int) Math.ceil((double) h / th);
 
-      // ensure that the size of the image data array (4 bytes per pixel)
-      // does not exceed the maximum array size, 2^31-1 elements;
-      // otherwise we'll overflow an int and have a negavive array size
-      while ((long)tw * th > Integer.MAX_VALUE/4) {
-        if (tw > th) {
-          tw = (int) Math.ceil(tw/2.0);
-        }
-        else {
-          th = (int) Math.ceil(th/2.0);
-        }
+      final String base;
+      final String suffix;
+      final String s = file.getName();
+      if (s.endsWith(".png")) {
+        base = s.substring(0, s.lastIndexOf('.'));
+        suffix = ".png";
       }
-
-      // find a size of BufferedImage we can allocate successfully
-      while (img == null) {
-        try {
-          img = new BufferedImage(tw, th, BufferedImage.TYPE_INT_ARGB);
-        }
-        catch (OutOfMemoryError e) {
-          if (tw > th) {
-            tw = (int) Math.ceil(tw/2.0);
-          }
-          else {
-            th = (int) Math.ceil(th/2.0);
-          }
-        }
+      else {
+        base = s;
+        suffix = "";
       }
 
-      if (tw == w && th == h) {
-        // write the whole map as one image
-        tiles = 1;
-        writeImage(file, img, new Rectangle(0, 0, w, h));
-      }
-      else {
-        // get the base name of the files to write
-        final String base;
-        final String suffix;
-        final String s = file.getName();
-        if (s.endsWith(".png")) {
-          base = s.substring(0, s.lastIndexOf('.'));
-          suffix = ".png";
-        }
-        else {
-          base = s;
-          suffix = "";
-        }
+      // strips span the whole width of the map; keep each one modest
+      final int sh = Math.max(1, Math.min(STRIP_HEIGHT, STRIP_PIXELS / w));
+      final int strips = trows * (int) Math.ceil((double) th / sh);
+      final int threads = stripThreads(4L * w * sh);
 
-        // calculate total tiles
-        final int tcols = (int) Math.ceil((double) w / tw);
-        final int trows = (int) Math.ceil((double) h / th);
+      final ExecutorService ex = Executors.newFixedThreadPool(
+        threads, new DaemonThreadFactory(ImageSaver.class.getSimpleName()));
 
-        tiles = tcols * trows;
+      final PNGStreamWriter[] writers = new PNGStreamWriter[tcols];
+      int stripsDone = 0;
 
-        // tile across the map with images of size tw by th.
-        for (int tx = 0; tx < tcols; ++tx) {
-          for (int ty = 0; ty < trows; ++ty) {
-            final File f = new File(file.getParent(),
-              base + "." + tx + "." + ty + suffix);
+      try {
+        for (int ty = 0; ty < trows; ++ty) {
+          final int y0 = th*ty;
+          final int bh = Math.min(th, h - y0);
+
+          // open one image for each tile in this row of tiles
+          for (int tx = 0; tx < tcols; ++tx) {
+            final File f = tcols * trows == 1 ? file :
+              new File(file.getParent(), base + "." + tx + "." + ty + suffix);
+            writers[tx] = openImage(f, Math.min(tw, w - tw*tx), bh);
+          }
 
-            final Rectangle r = new Rectangle(
-              tw*tx,
-              th*ty,
-              Math.min(tw, w - tw*tx),
-              Math.min(th, h - th*ty)
-            );
+          final String name = tcols * trows == 1 ?
+            file.getName() : base + ".*." + ty + suffix;
+
+          // update the dialog on the EDT
+          SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              dialog.setLabel("Saving map image as " + name + ":");
+              dialog.setIndeterminate(false);
+            }
+          });
+
+          // render the boards for a few strips ahead, in parallel
+          final Deque<Future<BufferedImage>> ahead = new ArrayDeque<>();
+          final Deque<Rectangle> rects = new ArrayDeque<>();
+          int next = 0;
+
+          while (next < bh || !ahead.isEmpty()) {
+            while (next < bh && ahead.size() <= threads) {
+              final Rectangle r = new Rectangle(0, y0 + next, w,
+                                                Math.min(sh, bh - next));
+              ahead.add(ex.submit(() -> renderBoards(r)));
+              rects.add(r);
+              next += r.height;
+            }
+
+            if (isCancelled()) {
+              return null;
+            }
+
+            final BufferedImage img = ahead.remove().get();
+            final Rectangle r = rects.remove();
+            renderPieces(img, r);
+
+            for (int tx = 0; tx < tcols; ++tx) {
+              writers[tx].writeRows(img, tw*tx, 0, r.height);
+            }
+
+            setProgress(Math.min(99, 100 * ++stripsDone / strips));
+          }
 
-            writeImage(f, img, r);
-            ++tilesDone;
+          for (int tx = 0; tx < tcols; ++tx) {
+            writers[tx].close();
+            writers[tx] = null;
+          }
+        }
+      }
+      finally {
+        ex.shutdownNow();
+
+        for (PNGStreamWriter pw : writers) {
+          if (pw != null) {
+            try {
+              pw.close();
+            }
+            catch (IOException e) {
+              // the image is incomplete; it will be removed
+            }
           }
         }
       }
 
+      setProgress(100);
       return null;
     }
 
@@ -491,6 +549,8 @@ public class ImageSaver extends AbstractConfigurable {
         ErrorDialog.bug(e);
       }
       catch (ExecutionException e) {
+        for (File f : files) f.delete();
+
         final Throwable c = e.getCause();
         if (c instanceof IOException) {
           WriteErrorDialog.error(e, (IOException) c, files.get(files.size()-1));
@@ -502,6 +562,20 @@ public class ImageSaver extends AbstractConfigurable {
     }
   }
 
+  /**
+   * Chooses how many strips to render at once, so that the strips in
+   * flight use no more than a quarter of the available memory.
+   *
+   * @param stripBytes the size of one strip
+   * @return the number of threads with which to render strips
+   */
+  protected static int stripThreads(long stripBytes) {
+    final long budget = Runtime.getRuntime().maxMemory() / 4;
+    final long fit = budget / Math.max(1, stripBytes) - 1;
+    return (int) Math.max(1, Math.min(
+      Runtime.getRuntime().availableProcessors(), fit));
+  }
+
   /**
    * Write a PNG-encoded snapshot of the map to the given OutputStreams,
    * dividing the map into vertical sections, one per stream
@@ -27,6 +27,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Paint;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.TexturePaint;
@@ -35,8 +36,10 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -149,6 +152,31 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
   protected AlphaComposite borderComposite = null;
   protected BasicStroke stroke = null;
 
+  /**
+   * The contribution of one shaded piece to the shade, together with the
+   * position and shade key from which it was computed.
+   */
+  protected static class ShadeEntry {
+    protected final Point pos;
+    protected final Object key;
+    protected final Area area;
+
+    protected ShadeEntry(Point pos, Object key, Area area) {
+      this.pos = pos;
+      this.key = key;
+      this.area = area;
+    }
+  }
+
+  // The shade is rebuilt only when a shaded piece is added, moved, removed
+  // or changes its shade key; pieces are keyed by identity, not by equals().
+  protected final java.util.Map<GamePiece,ShadeEntry> shadeEntries =
+    new IdentityHashMap<>();
+  protected Area shadeShape;
+  protected Area shadeClip;
+  protected Area zoomedSource;
+  protected final java.util.Map<Double,Area> zoomedShapes = new HashMap<>();
+
   @Override
   public void draw(Graphics g, Map map) {
     if (!shadingVisible) {
@@ -170,11 +198,7 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
     g2d.setPaint(
       scaleImage && pattern.equals(TYPE_IMAGE) && imageName != null ?
       getTexture(zoom) : getTexture());
-    Area area = getShadeShape(map);
-    if (zoom != 1.0) {
-      area = new Area(AffineTransform.getScaleInstance(zoom,zoom)
-                                     .createTransformedShape(area));
-    }
+    final Area area = getZoomedShadeShape(getShadeShape(map), zoom);
     g2d.fill(area);
     if (border) {
       g2d.setComposite(getBorderComposite());
@@ -218,16 +242,168 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
 
   /**
    * Get/Build the shape of the shade.
+   *
+   * <p>The shape is cached and rebuilt only when some shaded piece has
+   * been added, moved, removed, or changed its
+   * {@link ShadedPiece#getShadeKey shade key} since the last call.
+   * The returned <code>Area</code> is shared and must not be modified.</p>
    */
   protected Area getShadeShape(Map map) {
-    final Area myShape = type.equals(FG_TYPE) ?
-      new Area() : new Area(getBoardClip());
+    final Area clip = type.equals(FG_TYPE) ? null : getBoardClip();
+    if (clip != shadeClip) {
+      invalidateShadeShape();
+      shadeClip = clip;
+    }
+
+    final java.util.Map<GamePiece,ShadeEntry> seen = new IdentityHashMap<>();
+    final List<Area> added = new ArrayList<>();
+    boolean rebuild = shadeShape == null;
 
     for (GamePiece p : map.getPieces()) {
-      checkPiece(myShape, p);
+      if (p instanceof Stack) {
+        for (GamePiece sp : ((Stack) p).asList()) {
+          rebuild |= updateShadeEntry(sp, seen, added);
+        }
+      }
+      else {
+        rebuild |= updateShadeEntry(p, seen, added);
+      }
+    }
+
+    // any entries not seen this time belong to pieces no longer on the map
+    if (!rebuild) {
+      for (GamePiece p : shadeEntries.keySet()) {
+        if (!seen.containsKey(p)) {
+          rebuild = true;
+          break;
+        }
+      }
     }
 
-    return myShape;
+    if (rebuild) {
+      shadeEntries.clear();
+      shadeEntries.putAll(seen);
+
+      final List<Area> areas = new ArrayList<>();
+      for (ShadeEntry e : shadeEntries.values()) {
+        if (e.area != null) areas.add(e.area);
+      }
+      shadeShape = combineShade(clip, areas);
+      zoomedShapes.clear();
+    }
+    else if (!added.isEmpty()) {
+      // new pieces only: fold their areas into the existing shade
+      shadeEntries.putAll(seen);
+      shadeShape = combineShade(shadeShape, added);
+      zoomedShapes.clear();
+    }
+
+    return shadeShape;
+  }
+
+  /**
+   * Records the shade entry for a piece, reusing the previous entry if the
+   * piece has neither moved nor changed its shade key.
+   *
+   * @return <code>true</code> if the piece changed and the shade must be
+   * rebuilt
+   */
+  protected boolean updateShadeEntry(GamePiece piece,
+                                     java.util.Map<GamePiece,ShadeEntry> seen,
+                                     List<Area> added) {
+    final ShadedPiece shaded =
+      (ShadedPiece) Decorator.getDecorator(piece, ShadedPiece.class);
+    if (shaded == null) {
+      return false;
+    }
+
+    final Point pos = piece.getPosition();
+    Object key = shaded.getShadeKey(this);
+    if (key == null) {
+      key = Decorator.getOutermost(piece).getState();
+    }
+
+    final ShadeEntry old = shadeEntries.get(piece);
+    if (old != null && old.pos.equals(pos) && old.key.equals(key)) {
+      seen.put(piece, old);
+      return false;
+    }
+
+    final ShadeEntry e = new ShadeEntry(pos, key, shaded.getArea(this));
+    seen.put(piece, e);
+
+    if (old != null) {
+      return true;
+    }
+
+    if (e.area != null) {
+      added.add(e.area);
+    }
+    return false;
+  }
+
+  /**
+   * Combines piece areas into the shade: the union of the areas for a
+   * foreground shade, or the base less the union for a background shade.
+   *
+   * @param base the area to combine with, or <code>null</code> for none
+   * @param areas the areas of the pieces
+   * @return the combined area
+   */
+  protected Area combineShade(Area base, List<Area> areas) {
+    final Area union = union(areas, 0, areas.size());
+    final Area shade = base == null ? new Area() : new Area(base);
+    if (type.equals(FG_TYPE)) {
+      shade.add(union);
+    }
+    else {
+      shade.subtract(union);
+    }
+    return shade;
+  }
+
+  // Union pairwise rather than one at a time, so that each Area operation
+  // works on operands of similar complexity.
+  private static Area union(List<Area> areas, int from, int to) {
+    if (to - from == 0) {
+      return new Area();
+    }
+    else if (to - from == 1) {
+      return new Area(areas.get(from));
+    }
+
+    final int mid = (from + to) >>> 1;
+    final Area a = union(areas, from, mid);
+    a.add(union(areas, mid, to));
+    return a;
+  }
+
+  /**
+   * Gets the shade scaled to a zoom level, reusing the scaled shade until
+   * the shade itself changes.
+   */
+  protected Area getZoomedShadeShape(Area area, double zoom) {
+    if (zoom == 1.0) {
+      return area;
+    }
+
+    if (area != zoomedSource) {
+      zoomedShapes.clear();
+      zoomedSource = area;
+    }
+
+    return zoomedShapes.computeIfAbsent(zoom, z -> new Area(
+      AffineTransform.getScaleInstance(z, z).createTransformedShape(area)));
+  }
+
+  /**
+   * Discards the cached shade, forcing it to be rebuilt on the next paint.
+   */
+  public void invalidateShadeShape() {
+    shadeEntries.clear();
+    shadeShape = null;
+    zoomedSource = null;
+    zoomedShapes.clear();
   }
 
   protected void checkPiece(Area area, GamePiece piece) {
@@ -607,6 +783,7 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
     launch.setEnabled(gameStarting);
     if (!gameStarting) {
       boardClip = null;
+      invalidateShadeShape();
     }
   }
 
@@ -624,6 +801,7 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
 
   @Override
   public void setAttribute(String key, Object value) {
+    invalidateShadeShape();
     if (NAME.equals(key)) {
       setConfigureName((String) value);
       if (launch.getAttributeValueString(TOOLTIP) == null) {
@@ -903,5 +1081,19 @@ public class MapShader extends AbstractConfigurable implements GameComponent, Dr
      * @return the Area contributed by the piece
      */
     public Area getArea(MapShader shader);
+
+    /**
+     * Returns a value which is equal to the previous one for as long as
+     * the piece's area, relative to its position, stays the same, so that
+     * the shader need not ask for the area again.
+     * @param shader
+     * @return the key, or <code>null</code> if the piece has none, in
+     * which case the shader recomputes the area whenever the piece's
+     * state changes
+     * @since 3.3.2
+     */
+    public default Object getShadeKey(MapShader shader) {
+      return null;
+    }
   }
 }
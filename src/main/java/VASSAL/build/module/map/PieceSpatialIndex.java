@@ -0,0 +1,233 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+import VASSAL.build.module.Map;
+import VASSAL.build.module.PlayerRoster;
+import VASSAL.counters.Deck;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Stack;
+
+/**
+ * An index of the pieces on a {@link Map} by the area which they cover,
+ * for finding the pieces near a point without visiting every piece.
+ *
+ * <p>The map is divided into square cells, and each top-level piece is
+ * listed in each cell which its bounding box overlaps. Pieces are referred
+ * to by their position in {@link Map#getPieces()}, so that candidates can
+ * be visited in drawing order.</p>
+ *
+ * <p>Pieces do not report when they move or change, so {@link #validate}
+ * compares the pieces on the map with those indexed, and rebuilds the index
+ * if they differ. That is cheap compared with testing each piece's shape:
+ * a {@link Stack} is compared by position and layout version (see
+ * {@link Stack#getLayoutVersion}); other pieces, such as {@link Deck}s, are
+ * few, and are compared by their bounds.</p>
+ *
+ * @since 3.3.2
+ */
+public class PieceSpatialIndex {
+
+  /** The width and height of a cell, in map coordinates. */
+  protected static final int CELL_SIZE = 128;
+
+  /**
+   * Pieces which would be listed in more than this many cells are instead
+   * returned by every query.
+   */
+  protected static final int MAX_CELLS = 64;
+
+  private static final int[] NONE = new int[0];
+
+  protected final Map map;
+
+  private GamePiece[] pieces = new GamePiece[0];
+  private Point[] positions = new Point[0];
+  private int[] versions = NONE;
+  private Rectangle[] bounds = new Rectangle[0];
+  private String side;
+
+  private final java.util.Map<Long,List<Integer>> cells = new HashMap<>();
+  private final java.util.Map<Point,List<Integer>> byPosition = new HashMap<>();
+  private final List<Integer> large = new ArrayList<>();
+
+  public PieceSpatialIndex(Map map) {
+    this.map = map;
+  }
+
+  /**
+   * Brings the index up to date with the pieces on the map.
+   */
+  public void validate() {
+    final GamePiece[] current = map.getPieces();
+    final String mySide = PlayerRoster.getMySide();
+    if (!isCurrent(current, mySide)) {
+      rebuild(current, mySide);
+    }
+  }
+
+  /**
+   * @return the pieces indexed as of the last {@link #validate}, from the
+   * bottom up
+   */
+  public GamePiece[] getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Finds the pieces whose bounding boxes may contain a point.
+   *
+   * @param pt the point, in map coordinates
+   * @return the indices into {@link #getPieces} of the candidates, from
+   * the top down
+   */
+  public int[] query(Point pt) {
+    final List<Integer> cell = cells.get(cellKey(
+      Math.floorDiv(pt.x, CELL_SIZE), Math.floorDiv(pt.y, CELL_SIZE)));
+
+    final int n = (cell == null ? 0 : cell.size()) + large.size();
+    if (n == 0) {
+      return NONE;
+    }
+
+    final int[] found = new int[n];
+    int i = 0;
+    if (cell != null) {
+      for (int j : cell) found[i++] = j;
+    }
+    for (int j : large) found[i++] = j;
+
+    return topDown(found);
+  }
+
+  /**
+   * Finds the pieces at a position.
+   *
+   * @param pos the position, in map coordinates
+   * @return the indices into {@link #getPieces} of the pieces whose
+   * position is <code>pos</code>, from the top down
+   */
+  public int[] at(Point pos) {
+    final List<Integer> l = byPosition.getOrDefault(pos, Collections.emptyList());
+    final int[] found = new int[l.size()];
+    for (int i = 0; i < found.length; ++i) {
+      found[i] = l.get(i);
+    }
+    return topDown(found);
+  }
+
+  private static int[] topDown(int[] a) {
+    Arrays.sort(a);
+    for (int i = 0, j = a.length - 1; i < j; ++i, --j) {
+      final int t = a[i];
+      a[i] = a[j];
+      a[j] = t;
+    }
+    return a;
+  }
+
+  protected boolean isCurrent(GamePiece[] current, String mySide) {
+    if (current.length != pieces.length || !Objects.equals(mySide, side)) {
+      return false;
+    }
+
+    for (int i = 0; i < current.length; ++i) {
+      final GamePiece p = current[i];
+      if (p != pieces[i] || !p.getPosition().equals(positions[i])) {
+        return false;
+      }
+
+      if (isStack(p)) {
+        if (((Stack) p).getLayoutVersion() != versions[i]) {
+          return false;
+        }
+      }
+      else if (!boundsOf(p).equals(bounds[i])) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  protected void rebuild(GamePiece[] current, String mySide) {
+    cells.clear();
+    byPosition.clear();
+    large.clear();
+
+    pieces = current;
+    side = mySide;
+    positions = new Point[current.length];
+    versions = new int[current.length];
+    bounds = new Rectangle[current.length];
+
+    for (int i = 0; i < current.length; ++i) {
+      final GamePiece p = current[i];
+      positions[i] = p.getPosition();
+      bounds[i] = boundsOf(p);
+      if (isStack(p)) {
+        versions[i] = ((Stack) p).getLayoutVersion();
+      }
+
+      byPosition.computeIfAbsent(positions[i], k -> new ArrayList<>()).add(i);
+
+      final Rectangle r = bounds[i];
+      final int x0 = Math.floorDiv(r.x, CELL_SIZE);
+      final int y0 = Math.floorDiv(r.y, CELL_SIZE);
+      final int x1 = Math.floorDiv(r.x + r.width, CELL_SIZE);
+      final int y1 = Math.floorDiv(r.y + r.height, CELL_SIZE);
+
+      if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+        large.add(i);
+      }
+      else {
+        for (int cx = x0; cx <= x1; ++cx) {
+          for (int cy = y0; cy <= y1; ++cy) {
+            cells.computeIfAbsent(cellKey(cx, cy), k -> new ArrayList<>()).add(i);
+          }
+        }
+      }
+    }
+  }
+
+  // Decks are compared by their bounds, which depend on their contents
+  private static boolean isStack(GamePiece p) {
+    return p instanceof Stack && !(p instanceof Deck);
+  }
+
+  protected Rectangle boundsOf(GamePiece p) {
+    final Rectangle r = p.boundingBox();
+    final Point pos = p.getPosition();
+    r.translate(pos.x, pos.y);
+    return r;
+  }
+
+  private static Long cellKey(int cx, int cy) {
+    return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+  }
+}
@@ -26,7 +26,10 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.event.KeyEvent;
 import java.awt.geom.AffineTransform;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.WeakHashMap;
 
 import javax.swing.KeyStroke;
 
@@ -36,6 +39,7 @@ import VASSAL.build.Buildable;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.GameState;
 import VASSAL.build.module.Map;
+import VASSAL.build.module.PlayerRoster;
 import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.command.AddPiece;
 import VASSAL.command.Command;
@@ -48,7 +52,6 @@ import VASSAL.counters.BasicPiece;
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Highlighter;
 import VASSAL.counters.PieceFilter;
-import VASSAL.counters.PieceIterator;
 import VASSAL.counters.Properties;
 import VASSAL.counters.Stack;
 import VASSAL.i18n.Resources;
@@ -93,6 +96,7 @@ public class StackMetrics extends AbstractConfigurable {
 
   @Override
   public void setAttribute(String name, Object value) {
+    layouts.clear();
     if (EXSEP_X.equals(name)) {
       if (value instanceof String) {
         try {
@@ -270,17 +274,17 @@ public class StackMetrics extends AbstractConfigurable {
   public void draw(Stack stack, Graphics g, int x, int y, Component obs, double zoom) {
     Highlighter highlighter = stack.getMap() == null ? BasicPiece.getHighlighter() : stack.getMap().getHighlighter();
     Point[] positions = new Point[stack.getPieceCount()];
-    getContents(stack, positions, null, null, x, y);
-
-    for (PieceIterator e = new PieceIterator(stack.getPiecesIterator(),
-                                             unselectedVisible);
-         e.hasMoreElements();)
-    {
-      GamePiece next = e.nextPiece();
-      int index = stack.indexOf(next);
+    final int count = getContents(stack, positions, null, null, x, y);
+    final int top = topIndex(stack, count, unselectedVisible);
+
+    for (int index = 0; index <= top; ++index) {
+      GamePiece next = stack.getPieceAt(index);
+      if (!unselectedVisible.accept(next)) {
+        continue;
+      }
       int nextX = x + (int) (zoom * (positions[index].x - x));
       int nextY = y + (int) (zoom * (positions[index].y - y));
-      if (stack.isExpanded() || !e.hasMoreElements()) {
+      if (stack.isExpanded() || index == top) {
         next.draw(g, nextX, nextY, obs, zoom);
       }
       else {
@@ -288,15 +292,28 @@ public class StackMetrics extends AbstractConfigurable {
       }
     }
 
-    stack.asList().stream()
-         .filter(gamePiece -> selectedVisible.accept(gamePiece))
-         .forEach(gamePiece -> {
-           int index = stack.indexOf(gamePiece);
-           int nextX = x + (int) (zoom * (positions[index].x - x));
-           int nextY = y + (int) (zoom * (positions[index].y - y));
-           gamePiece.draw(g, nextX, nextY, obs, zoom);
-           highlighter.draw(gamePiece, g, nextX, nextY, obs, zoom);
-         });
+    for (int index = 0; index < count; ++index) {
+      final GamePiece gamePiece = stack.getPieceAt(index);
+      if (selectedVisible.accept(gamePiece)) {
+        int nextX = x + (int) (zoom * (positions[index].x - x));
+        int nextY = y + (int) (zoom * (positions[index].y - y));
+        gamePiece.draw(g, nextX, nextY, obs, zoom);
+        highlighter.draw(gamePiece, g, nextX, nextY, obs, zoom);
+      }
+    }
+  }
+
+  /**
+   * @return the index of the topmost piece of the stack accepted by the
+   * filter, or -1 if there is none
+   */
+  private static int topIndex(Stack stack, int count, PieceFilter filter) {
+    for (int index = count - 1; index >= 0; --index) {
+      if (filter.accept(stack.getPieceAt(index))) {
+        return index;
+      }
+    }
+    return -1;
   }
 
   /**
@@ -318,17 +335,17 @@ public class StackMetrics extends AbstractConfigurable {
     Rectangle region = visibleRect == null ? null : map.drawingToMap(visibleRect, os_scale);
     Point[] positions = new Point[stack.getPieceCount()];
     Rectangle[] bounds = region == null ? null : new Rectangle[stack.getPieceCount()];
-    getContents(stack, positions, null, bounds, mapLocation.x, mapLocation.y);
-
-    for (PieceIterator e = new PieceIterator(stack.getPiecesIterator(),
-                                             unselectedVisible);
-         e.hasMoreElements();)
-    {
-      GamePiece next = e.nextPiece();
-      int index = stack.indexOf(next);
-      Point pt = map.mapToDrawing(positions[index], os_scale);
+    final int count = getContents(stack, positions, null, bounds, mapLocation.x, mapLocation.y);
+    final int top = topIndex(stack, count, unselectedVisible);
+
+    for (int index = 0; index <= top; ++index) {
+      GamePiece next = stack.getPieceAt(index);
+      if (!unselectedVisible.accept(next)) {
+        continue;
+      }
       if (bounds == null || isVisible(region, bounds[index])) {
-        if (stack.isExpanded() || !e.hasMoreElements()) {
+        Point pt = map.mapToDrawing(positions[index], os_scale);
+        if (stack.isExpanded() || index == top) {
           next.draw(g, pt.x, pt.y, view, zoom);
         }
         else {
@@ -337,16 +354,15 @@ public class StackMetrics extends AbstractConfigurable {
       }
     }
 
-    stack.asList().stream()
-         .filter(gamePiece -> selectedVisible.accept(gamePiece))
-         .forEach(gamePiece -> {
-           int index = stack.indexOf(gamePiece);
-           if (bounds == null || isVisible(region, bounds[index])) {
-             Point pt = map.mapToDrawing(positions[index], os_scale);
-             gamePiece.draw(g, pt.x, pt.y, view, zoom);
-             highlighter.draw(gamePiece, g, pt.x, pt.y, view, zoom);
-           }
-         });
+    for (int index = 0; index < count; ++index) {
+      final GamePiece gamePiece = stack.getPieceAt(index);
+      if (selectedVisible.accept(gamePiece) &&
+          (bounds == null || isVisible(region, bounds[index]))) {
+        Point pt = map.mapToDrawing(positions[index], os_scale);
+        gamePiece.draw(g, pt.x, pt.y, view, zoom);
+        highlighter.draw(gamePiece, g, pt.x, pt.y, view, zoom);
+      }
+    }
   }
 
   private boolean isVisible(Rectangle region, Rectangle bounds) {
@@ -410,23 +426,102 @@ public class StackMetrics extends AbstractConfigurable {
     if (shapes != null) {
       count = Math.min(count,shapes.length);
     }
+
+    final Layout layout = getLayout(parent);
+    count = Math.min(count, layout.positions.length);
+
+    for (int index = 0; index < count; ++index) {
+      final Point pos = new Point(layout.positions[index]);
+      pos.translate(x, y);
+
+      if (positions != null) {
+        positions[index] = pos;
+      }
+      if (boundingBoxes != null) {
+        final Rectangle bbox = new Rectangle(layout.boundingBoxes[index]);
+        bbox.translate(x, y);
+        boundingBoxes[index] = bbox;
+      }
+      if (shapes != null) {
+        if (layout.invisible[index]) {
+          shapes[index] = new Rectangle(x, y, 0, 0);
+        }
+        else {
+          shapes[index] = AffineTransform.getTranslateInstance(pos.x, pos.y)
+            .createTransformedShape(parent.getPieceAt(index).getShape());
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The positions and bounding boxes of the pieces in a stack, relative
+   * to the position of the stack.
+   */
+  protected static class Layout {
+    protected final int version;
+    protected final String side;
+    protected final boolean[] invisible;
+    protected final Point[] positions;
+    protected final Rectangle[] boundingBoxes;
+
+    protected Layout(int version, String side, int count) {
+      this.version = version;
+      this.side = side;
+      invisible = new boolean[count];
+      positions = new Point[count];
+      boundingBoxes = new Rectangle[count];
+    }
+  }
+
+  // Layouts are kept until the stack's layout version changes or the player
+  // changes sides. Traits invalidate the layout of their stack whenever
+  // they may change their bounds or visibility.
+  protected final java.util.Map<Stack,Layout> layouts =
+    Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * Gets the layout of a stack, computing it only if the stack has
+   * changed since it was last computed.
+   */
+  protected Layout getLayout(Stack parent) {
+    final int version = parent.getLayoutVersion();
+    final String side = getSide();
+    Layout layout = layouts.get(parent);
+    if (layout == null ||
+        layout.version != version ||
+        !Objects.equals(layout.side, side)) {
+      layout = computeLayout(parent, new Layout(
+        version, side, parent.getMaximumVisiblePieceCount()));
+      layouts.put(parent, layout);
+    }
+    return layout;
+  }
+
+  /**
+   * @return the side of the local player, or <code>null</code> if there
+   * is none
+   */
+  protected String getSide() {
+    return GameModule.getGameModule() == null ?
+      null : PlayerRoster.getMySide();
+  }
+
+  protected Layout computeLayout(Stack parent, Layout layout) {
+    final int count = layout.positions.length;
+
     int dx = parent.isExpanded() ? exSepX : unexSepX;
     int dy = parent.isExpanded() ? exSepY : unexSepY;
     Point currentPos = null, nextPos = null;
     Rectangle currentSelBounds = null, nextSelBounds = null;
     for (int index = 0; index < count; ++index) {
       GamePiece child = parent.getPieceAt(index);
-      if (Boolean.TRUE.equals(child.getProperty(Properties.INVISIBLE_TO_ME))) {
-        Rectangle blank = new Rectangle(x, y, 0, 0);
-        if (positions != null) {
-          positions[index] = blank.getLocation();
-        }
-        if (boundingBoxes != null) {
-          boundingBoxes[index] = blank;
-        }
-        if (shapes != null) {
-          shapes[index] = blank;
-        }
+      layout.invisible[index] = Boolean.TRUE.equals(
+        child.getProperty(Properties.INVISIBLE_TO_ME));
+      if (layout.invisible[index]) {
+        layout.positions[index] = new Point(0, 0);
+        layout.boundingBoxes[index] = new Rectangle(0, 0, 0, 0);
       }
       else {
         child.setProperty(Properties.USE_UNROTATED_SHAPE,Boolean.TRUE);
@@ -435,31 +530,21 @@ public class StackMetrics extends AbstractConfigurable {
         nextPos = new Point(0,0);
         if (currentPos == null) {
           currentSelBounds = nextSelBounds;
-          currentSelBounds.translate(x, y);
-          currentPos = new Point(x, y);
+          currentPos = new Point(0, 0);
           nextPos = currentPos;
         }
         else {
           nextPosition(currentPos, currentSelBounds, nextPos, nextSelBounds, dx, dy);
         }
-        if (positions != null) {
-          positions[index] = nextPos;
-        }
-        if (boundingBoxes != null) {
-          Rectangle bbox = child.boundingBox();
-          bbox.translate(nextPos.x, nextPos.y);
-          boundingBoxes[index] = bbox;
-        }
-        if (shapes != null) {
-          Shape s = child.getShape();
-          s = AffineTransform.getTranslateInstance(nextPos.x,nextPos.y).createTransformedShape(s);
-          shapes[index] = s;
-        }
+        layout.positions[index] = nextPos;
+        Rectangle bbox = child.boundingBox();
+        bbox.translate(nextPos.x, nextPos.y);
+        layout.boundingBoxes[index] = bbox;
         currentPos = nextPos;
         currentSelBounds = nextSelBounds;
       }
     }
-    return count;
+    return layout;
   }
 
   protected void nextPosition(Point currentPos, Rectangle currentBounds, Point nextPos, Rectangle nextBounds, int dx, int dy) {
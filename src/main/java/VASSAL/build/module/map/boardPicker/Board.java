@@ -311,6 +311,26 @@ public class Board extends AbstractConfigurable implements GridContainer {
   private ConcurrentMap<Point,Future<BufferedImage>> o_requested =
     new ConcurrentHashMap<>();
 
+  /**
+   * @return <code>true</code> if the last region drawn on the map view
+   * was incomplete, because some tiles were not yet ready or were still
+   * fading in
+   */
+  public boolean isDrawPending() {
+    if (!requested.isEmpty()) {
+      return true;
+    }
+
+    // a fade which has finished leaves its last value behind until its
+    // tile is drawn again
+    for (Float a : alpha.values()) {
+      if (a < 1.0f) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static Comparator<Point> tileOrdering = new Comparator<>() {
     @Override
     public int compare(Point t1, Point t2) {
@@ -378,6 +398,11 @@ public class Board extends AbstractConfigurable implements GridContainer {
       final int oh = op.getTileHeight();
 
       final Point[] tiles = op.getTileIndices(r);
+
+      // tiles nearer the center of the visible area are requested first
+      final int ctx = (r.x + r.width/2) / ow;
+      final int cty = (r.y + r.height/2) / oh;
+
       for (Point tile : tiles) {
         // find tile position
         final int tx = location.x + tile.x*ow;
@@ -399,8 +424,11 @@ public class Board extends AbstractConfigurable implements GridContainer {
           new Repainter(obs, cx, cy, cw, ch);
 
         try {
+          final int priority =
+            Math.max(Math.abs(tile.x - ctx), Math.abs(tile.y - cty));
+
           final Future<BufferedImage> fim =
-            op.getFutureTile(tile.x, tile.y, rep);
+            op.getFutureTile(tile.x, tile.y, rep, priority);
 
           if (obs == null) {
             drawTile(g, fim, tx, ty, obs);
@@ -479,6 +507,13 @@ public class Board extends AbstractConfigurable implements GridContainer {
             requested.remove(tile);
           }
         }
+
+        // tiles scrolled out while fading in will be drawn whole next time
+        for (Point tile : alpha.keySet().toArray(new Point[0])) {
+          if (Arrays.binarySearch(tiles, tile, tileOrdering) < 0) {
+            alpha.remove(tile);
+          }
+        }
       }
       else {
         for (Point tile : o_requested.keySet().toArray(new Point[0])) {
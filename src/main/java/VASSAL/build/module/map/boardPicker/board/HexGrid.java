@@ -57,6 +57,7 @@ import VASSAL.configure.ColorConfigurer;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.VisibilityCondition;
 import VASSAL.i18n.Resources;
+import VASSAL.tools.image.AreaMaskCache;
 
 /**
  * A Hexgrid is a map grid composed of hexes.
@@ -261,6 +262,7 @@ public class HexGrid extends AbstractConfigurable
     dy = size;
     dx = sqrt3_2 * size;
     shapeCache.clear();
+    AreaMaskCache.clearAll();
   }
 
   public double getHexSize() {
@@ -446,6 +448,7 @@ public class HexGrid extends AbstractConfigurable
       snapScale = (Integer)val;
     }
     shapeCache.clear();
+    AreaMaskCache.clearAll();
   }
 
   @Override
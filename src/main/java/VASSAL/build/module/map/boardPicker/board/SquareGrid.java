@@ -53,6 +53,7 @@ import VASSAL.configure.Configurer;
 import VASSAL.configure.StringEnum;
 import VASSAL.configure.VisibilityCondition;
 import VASSAL.i18n.Resources;
+import VASSAL.tools.image.AreaMaskCache;
 
 public class SquareGrid extends AbstractConfigurable implements GeometricGrid, GridEditor.EditableGrid {
   protected double dx = 48.0;
@@ -360,6 +361,7 @@ public class SquareGrid extends AbstractConfigurable implements GeometricGrid, G
       color = (Color) val;
     }
     shapeCache.clear();
+    AreaMaskCache.clearAll();
   }
 
   @Override
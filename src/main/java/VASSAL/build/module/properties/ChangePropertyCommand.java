@@ -17,6 +17,7 @@
  */
 package VASSAL.build.module.properties;
 
+import VASSAL.build.module.Map;
 import VASSAL.command.Command;
 
 /**
@@ -42,6 +43,10 @@ public class ChangePropertyCommand extends Command {
   @Override
   protected void executeCommand() {
     property.setPropertyValue(newValue);
+    // pieces anywhere may follow the property
+    for (Map m : Map.getMapList()) {
+      m.repaint();
+    }
   }
 
   @Override
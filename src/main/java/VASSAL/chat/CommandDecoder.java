@@ -41,6 +41,10 @@ public class CommandDecoder implements PropertyChangeListener {
         public void run() {
           c.execute();
           GameModule.getGameModule().getLogger().log(c);
+          final SynchSnapshot snapshot = SynchSnapshot.getInstance();
+          if (snapshot != null) {
+            snapshot.executed(c);
+          }
         }
       };
       SwingUtilities.invokeLater(runnable);
@@ -83,6 +83,10 @@ public class HybridClient implements ChatServerConnection, PlayerEncoder, ChatCo
   @Override
   public void sendToOthers(Command c) {
     delegate.sendToOthers(c);
+    final SynchSnapshot snapshot = SynchSnapshot.getInstance();
+    if (snapshot != null) {
+      snapshot.executed(c);
+    }
   }
 
   @Override
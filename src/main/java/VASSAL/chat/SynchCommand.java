@@ -43,7 +43,9 @@ public class SynchCommand extends Command {
   protected void executeCommand() {
     if (recipient != null) {
       GameModule.getGameModule().warn(Resources.getString("Server.sending_game_info", recipient.getName())); //$NON-NLS-1$
-      Command synch = GameModule.getGameModule().getGameState().getRestoreCommand();
+      final SynchSnapshot snapshot = SynchSnapshot.getInstance();
+      Command synch = snapshot != null ? snapshot.getSynchCommand() :
+        GameModule.getGameModule().getGameState().getRestoreCommand();
       if (synch != null) {
         client.sendTo(recipient, synch);
       }
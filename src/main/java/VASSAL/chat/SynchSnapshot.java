@@ -0,0 +1,275 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import VASSAL.build.GameModule;
+import VASSAL.build.module.Chatter;
+import VASSAL.build.module.GameComponent;
+import VASSAL.command.Command;
+import VASSAL.command.CommandEncoder;
+import VASSAL.command.CommandFilter;
+import VASSAL.command.NullCommand;
+import VASSAL.command.PlayAudioClipCommand;
+
+/**
+ * Keeps the encoded state of the game, for answering {@link SynchCommand}s
+ * without encoding the whole game for each player who joins.
+ *
+ * <p>The snapshot is taken lazily, when a player first asks to be
+ * synchronized. After that, each command which every player has executed
+ * (those sent to the others, and those received from them) is encoded and
+ * kept, and a player joining later is sent the snapshot followed by those
+ * commands, as a logfile holds the state at its beginning followed by the
+ * commands logged since. The same encoded message is sent to every player
+ * who joins before the next command. Chat messages and sounds are left
+ * out, since they do not change the game and would only be repeated to
+ * the player joining.</p>
+ *
+ * <p>The snapshot is discarded when a game starts or ends, when a command
+ * which is not logged (and so might not be safe to replay) is executed,
+ * and when the commands kept grow too many or too long compared with the
+ * snapshot. Set <code>-DVASSAL.chat.synchSnapshot=false</code> to encode
+ * the game for every request instead.</p>
+ *
+ * @since 3.3.2
+ */
+public class SynchSnapshot implements GameComponent, CommandEncoder {
+  /** The most commands kept after a snapshot. */
+  protected static final int MAX_TAIL = 200;
+
+  private static SynchSnapshot instance;
+
+  private final CommandEncoder encoder;
+  private final Supplier<Command> restore;
+
+  private String snapshot;
+  private final List<String> tail = new ArrayList<>();
+  private long tailLength = 0;
+  private String message;
+
+  public SynchSnapshot() {
+    this(GameModule.getGameModule(),
+         () -> GameModule.getGameModule().getGameState().getRestoreCommand());
+  }
+
+  /**
+   * @param encoder encodes commands, and compound commands as a sequence
+   * @param restore supplies the command which restores the current state
+   * of the game, or null if there is no game
+   */
+  public SynchSnapshot(CommandEncoder encoder, Supplier<Command> restore) {
+    this.encoder = encoder;
+    this.restore = restore;
+  }
+
+  /**
+   * @return the snapshot of the running module, or null if there is none
+   */
+  public static synchronized SynchSnapshot getInstance() {
+    return instance;
+  }
+
+  /**
+   * Registers this as the snapshot of a module, unless disabled.
+   */
+  public void addTo(GameModule mod) {
+    if ("false".equals(System.getProperty("VASSAL.chat.synchSnapshot"))) { //$NON-NLS-1$ //$NON-NLS-2$
+      return;
+    }
+    mod.addCommandEncoder(this);
+    mod.getGameState().addGameComponent(this);
+    synchronized (SynchSnapshot.class) {
+      instance = this;
+    }
+  }
+
+  /**
+   * Records a command which has been executed by every player in the
+   * room.
+   *
+   * @param c the command
+   */
+  public synchronized void executed(Command c) {
+    if (snapshot == null || c == null || c.isNull() ||
+        c instanceof SynchCommand) {
+      return;
+    }
+    if (!c.isLoggable() || tail.size() >= MAX_TAIL) {
+      invalidate();
+      return;
+    }
+
+    if (isMessagesOnly(c)) {
+      return;
+    }
+
+    String s = encoder.encode(c);
+    if (s != null && hasMessages(c)) {
+      // c is still being sent and logged, so filter a copy of it
+      final Command copy = encoder.decode(s);
+      s = copy == null ? null : encoder.encode(MESSAGE_FILTER.apply(copy));
+    }
+    if (s == null) {
+      invalidate();
+      return;
+    }
+    tail.add(s);
+    tailLength += s.length();
+    message = null;
+
+    // past this, encoding the game again is cheaper for the joiner
+    if (tailLength > snapshot.length() / 2) {
+      invalidate();
+    }
+  }
+
+  /**
+   * @param c a command
+   * @return true if the command only shows the players something, and
+   * does not change the game
+   */
+  protected static boolean isMessage(Command c) {
+    return c instanceof Chatter.DisplayText ||
+           c instanceof PlayAudioClipCommand;
+  }
+
+  private static boolean hasMessages(Command c) {
+    if (isMessage(c)) {
+      return true;
+    }
+    for (Command sub : c.getSubCommands()) {
+      if (hasMessages(sub)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isMessagesOnly(Command c) {
+    if (!isMessage(c) && !(c instanceof NullCommand)) {
+      return false;
+    }
+    for (Command sub : c.getSubCommands()) {
+      if (!isMessagesOnly(sub)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final CommandFilter MESSAGE_FILTER = new CommandFilter() {
+    @Override
+    protected boolean accept(Command c) {
+      return !isMessage(c);
+    }
+  };
+
+  /**
+   * Discards the snapshot, so that the next request encodes the game.
+   */
+  public synchronized void invalidate() {
+    snapshot = null;
+    tail.clear();
+    tailLength = 0;
+    message = null;
+  }
+
+  /**
+   * @return a command which brings a player who has just joined up to date
+   * with the game, or null if there is no game
+   */
+  public synchronized Command getSynchCommand() {
+    if (message == null) {
+      if (snapshot == null) {
+        final Command c = restore.get();
+        if (c == null) {
+          return null;
+        }
+        snapshot = encoder.encode(c);
+        if (snapshot == null) {
+          return null;
+        }
+      }
+
+      if (tail.isEmpty()) {
+        message = snapshot;
+      }
+      else {
+        // the snapshot and the commands since, as one compound command
+        final Command c = new Encoded(snapshot);
+        for (String s : tail) {
+          c.append(new Encoded(s));
+        }
+        message = encoder.encode(c);
+      }
+    }
+    return new Encoded(message);
+  }
+
+  /** A command which has already been encoded. It is never executed. */
+  public static class Encoded extends Command {
+    private final String value;
+
+    public Encoded(String value) {
+      this.value = value;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    @Override
+    protected void executeCommand() {
+    }
+
+    @Override
+    protected Command myUndoCommand() {
+      return null;
+    }
+
+    @Override
+    public boolean isLoggable() {
+      return false;
+    }
+  }
+
+  @Override
+  public Command decode(String command) {
+    return null;
+  }
+
+  @Override
+  public String encode(Command c) {
+    return c instanceof Encoded ? ((Encoded) c).getValue() : null;
+  }
+
+  @Override
+  public void setup(boolean gameStarting) {
+    invalidate();
+  }
+
+  @Override
+  public Command getRestoreCommand() {
+    return null;
+  }
+}
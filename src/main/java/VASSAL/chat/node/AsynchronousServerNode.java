@@ -58,7 +58,7 @@ public class AsynchronousServerNode extends ServerNode {
   }
 
   @Override
-  protected synchronized void sendContents(Node node) {
+  protected void sendContents(Node node) {
     contentsReporter.markChanged(node);
   }
 
@@ -79,7 +79,10 @@ public class AsynchronousServerNode extends ServerNode {
       while (true) {
         try {
           synchronized (this) {
-            wait();
+            // a change marked while sending is not lost
+            while (changed.isEmpty()) {
+              wait();
+            }
             sendContents();
           }
         }
@@ -92,7 +95,8 @@ public class AsynchronousServerNode extends ServerNode {
       server.statusReporter.updateContents(server.getLeafDescendants());
       long time = System.currentTimeMillis();
       Iterator<Node> modules;
-      if (time - lastGlobalUpdate < GLOBAL_UPDATE_INTERVAL) {
+      final boolean global = time - lastGlobalUpdate >= GLOBAL_UPDATE_INTERVAL;
+      if (global) {
         modules = Arrays.asList(server.getChildren()).iterator();
         lastGlobalUpdate = time;
       }
@@ -101,8 +105,6 @@ public class AsynchronousServerNode extends ServerNode {
       }
       while (modules.hasNext()) {
         Node module = modules.next();
-        logger.fine("Sending contents of "+module.getId()); //$NON-NLS-1$
-        Node[] players = module.getLeafDescendants();
         Node[] rooms = module.getChildren();
 
         // Check if any rooms have lost their first player
@@ -125,11 +127,8 @@ public class AsynchronousServerNode extends ServerNode {
           }
         }
 
-        String listCommand = Protocol.encodeListCommand(players);
-        logger.finer(listCommand);
-        module.send(listCommand);
-        String roomInfo = Protocol.encodeRoomsInfo(rooms);
-        module.send(roomInfo);
+        // the periodic update also resynchronizes clients receiving deltas
+        server.reportContents(module, global);
       }
       changed.clear();
     }
@@ -0,0 +1,295 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A server which shares its modules and rooms with the other servers of a
+ * cluster, so that players connected to different servers can play
+ * together.
+ *
+ * <p>Each server owns the players connected to it and tells the others,
+ * over {@link PeerLink}s, when they register, move, change their
+ * information, or leave. The others add a {@link RemotePlayerNode} for
+ * each, so every server has the whole directory of modules, rooms, and
+ * players, and reports it to its own players as usual.</p>
+ *
+ * <p>A forwarded message is delivered to the local recipients, and relayed
+ * once to each server which has any of the remaining ones; that server
+ * resolves the path again against its copy of the tree and delivers it to
+ * its own players.</p>
+ *
+ * <p>The state of a player is read and published while holding the lock
+ * of that player, and only while it is connected, so the other servers
+ * see its changes in order and never after it has left. Nothing else is
+ * locked while holding it.</p>
+ *
+ * <p>Every server should be told of every other; when two servers dial
+ * each other, both keep the link dialed by the server whose name is
+ * least.</p>
+ *
+ * @since 3.3.2
+ */
+public class ClusteredServerNode extends AsynchronousServerNode {
+  private static final Logger logger =
+    Logger.getLogger(ClusteredServerNode.class.getName());
+
+  private final String name;
+  private final Map<String,PeerLink> links = new ConcurrentHashMap<>();
+  private final Map<String,PlayerNode> local = new ConcurrentHashMap<>();
+
+  public ClusteredServerNode(String url, String name) {
+    super(url);
+    this.name = name;
+  }
+
+  /**
+   * @return the name by which the other servers know this one
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the links to the other servers
+   */
+  public PeerLink[] getLinks() {
+    return links.values().toArray(new PeerLink[0]);
+  }
+
+  /**
+   * @return true if there is an open link to the named server
+   */
+  public boolean isLinked(String peer) {
+    final PeerLink link = links.get(peer);
+    return link != null && link.isOpen();
+  }
+
+  private void publish(String msg) {
+    for (PeerLink link : links.values()) {
+      link.send(msg);
+    }
+  }
+
+  private static String playerCommand(Node player) {
+    final Node room = player.getParent();
+    return room == null ? null : Protocol.encodePeerPlayerCommand(
+      player.getId(), room.getPath(), player.getInfo());
+  }
+
+  private void publishPlayer(PlayerNode player) {
+    synchronized (player) {
+      if (local.get(player.getId()) == player) {
+        final String msg = playerCommand(player);
+        if (msg != null) {
+          publish(msg);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void forward(String senderPath, String msg) {
+    final Recipients target = getRecipients(senderPath);
+    deliver(target, new EncodedLine(msg));
+
+    Set<PeerLink> peers = null;
+    for (Node n : target.senders) {
+      if (n instanceof RemotePlayerNode) {
+        if (peers == null) {
+          peers = new HashSet<>();
+        }
+        peers.add(((RemotePlayerNode) n).getLink());
+      }
+    }
+    if (peers != null) {
+      final String relay = Protocol.encodePeerForwardCommand(senderPath, msg);
+      for (PeerLink link : peers) {
+        link.send(relay);
+      }
+    }
+  }
+
+  @Override
+  public void registerNode(String parentPath, Node newNode) {
+    super.registerNode(parentPath, newNode);
+    if (newNode instanceof PlayerNode) {
+      final PlayerNode p = (PlayerNode) newNode;
+      synchronized (p) {
+        local.put(p.getId(), p);
+        publishPlayer(p);
+      }
+    }
+  }
+
+  @Override
+  public void move(Node target, String newParentPath) {
+    if (target instanceof RemotePlayerNode) {
+      // only the player's own server can move it
+      ((RemotePlayerNode) target).getLink().send(
+        Protocol.encodePeerMoveCommand(target.getId(), newParentPath));
+    }
+    else {
+      super.move(target, newParentPath);
+      if (target instanceof PlayerNode) {
+        publishPlayer((PlayerNode) target);
+      }
+    }
+  }
+
+  @Override
+  public void updateInfo(Node target) {
+    super.updateInfo(target);
+    if (target instanceof PlayerNode) {
+      publishPlayer((PlayerNode) target);
+    }
+    else if (!target.isLeaf() && target.getParent() != null &&
+             getModule(target) != target) {
+      publish(Protocol.encodePeerRoomInfoCommand(
+        target.getPath(), target.getInfo()));
+    }
+  }
+
+  @Override
+  public void disconnect(Node target) {
+    super.disconnect(target);
+    if (target instanceof PlayerNode && target.getId() != null) {
+      synchronized (target) {
+        // a player which reconnected under the same id stays
+        if (local.remove(target.getId(), target)) {
+          publish(Protocol.encodePeerLeaveCommand(target.getId()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Called when the server at the other end of a link has named itself.
+   * Keeps one link to each server, and tells the server of the players
+   * and rooms here.
+   */
+  void linkEstablished(PeerLink link) {
+    final PeerLink loser;
+    synchronized (links) {
+      final PeerLink existing = links.get(link.getPeer());
+      if (existing == null || !existing.isOpen() ||
+          link.getDialer().compareTo(existing.getDialer()) <= 0) {
+        links.put(link.getPeer(), link);
+        loser = existing;
+      }
+      else {
+        loser = link;
+      }
+    }
+
+    if (loser != null) {
+      loser.close();
+    }
+    if (loser == link) {
+      return;
+    }
+
+    logger.info("Linked to " + link.getPeer()); //$NON-NLS-1$
+    for (PlayerNode p : local.values()) {
+      synchronized (p) {
+        final String msg = local.get(p.getId()) == p ? playerCommand(p) : null;
+        if (msg != null) {
+          link.send(msg);
+        }
+      }
+    }
+    for (Node module : getChildren()) {
+      for (Node room : module.getChildren()) {
+        if (room.getInfo() != null) {
+          link.send(Protocol.encodePeerRoomInfoCommand(
+            room.getPath(), room.getInfo()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Called when a link closes. The players reported over it leave.
+   */
+  void linkClosed(PeerLink link) {
+    if (link.getPeer() != null && links.remove(link.getPeer(), link)) {
+      logger.info("Lost link to " + link.getPeer()); //$NON-NLS-1$
+    }
+    for (RemotePlayerNode p : link.getPlayers()) {
+      link.removePlayer(p.getId());
+      super.disconnect(p);
+    }
+  }
+
+  void remoteForward(String path, String msg) {
+    deliver(getRecipients(path), new EncodedLine(msg));
+  }
+
+  void remotePlayer(PeerLink link, String id, String parentPath, String info) {
+    // a link which lost to another to the same server is closing
+    if (links.get(link.getPeer()) != link) {
+      return;
+    }
+
+    RemotePlayerNode p = link.getPlayer(id);
+    if (p == null) {
+      p = new RemotePlayerNode(link, id, info);
+      link.addPlayer(p);
+      super.registerNode(parentPath, p);
+      return;
+    }
+
+    p.setInfo(info);
+    final Node room = p.getParent();
+    if (room == null || !parentPath.equals(room.getPath())) {
+      super.move(p, parentPath);
+    }
+    else {
+      super.updateInfo(p);
+    }
+  }
+
+  void remoteLeave(PeerLink link, String id) {
+    final RemotePlayerNode p = link.removePlayer(id);
+    if (p != null) {
+      super.disconnect(p);
+    }
+  }
+
+  void remoteRoomInfo(String roomPath, String info) {
+    final Node room = getDescendant(roomPath);
+    if (room != null && !room.isLeaf()) {
+      room.setInfo(info);
+      super.updateInfo(room);
+    }
+  }
+
+  void remoteMove(String id, String newParentPath) {
+    final PlayerNode p = local.get(id);
+    if (p != null) {
+      logger.fine("Moving " + id + " to " + newParentPath + " for a peer"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      move(p, newParentPath);
+    }
+  }
+}
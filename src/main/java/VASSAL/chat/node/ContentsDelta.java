@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change to the players and rooms of a module, sent by the server to
+ * clients which understand it in place of a full {@link Protocol#LIST} and
+ * {@link Protocol#ROOM_INFO}.
+ *
+ * <p>Deltas are numbered in sequence for each module. A client applies a
+ * delta only if it follows the last one applied, and otherwise asks for a
+ * resynchronization, which the server answers with a <em>full</em> delta
+ * listing everything in the module.</p>
+ *
+ * <p>Players are identified by their path within the module,
+ * <code>room/id</code>. Rooms exist while they have players in them.</p>
+ *
+ * @see ModuleContents
+ * @see Protocol#encodeDeltaCommand
+ * @since 3.3.2
+ */
+public class ContentsDelta {
+  /** A player has joined: path, info. */
+  public static final String JOINED = "J"; //$NON-NLS-1$
+  /** A player has left: path. */
+  public static final String LEFT = "L"; //$NON-NLS-1$
+  /** A player has moved to another room: old path, new room. */
+  public static final String MOVED = "M"; //$NON-NLS-1$
+  /** A player's info has changed: path, info. */
+  public static final String INFO = "I"; //$NON-NLS-1$
+  /** A room's info has changed: room, info. */
+  public static final String ROOM_INFO = "R"; //$NON-NLS-1$
+
+  private final long seq;
+  private final boolean full;
+  private final List<String[]> events;
+
+  public ContentsDelta(long seq, boolean full, List<String[]> events) {
+    this.seq = seq;
+    this.full = full;
+    this.events = Collections.unmodifiableList(new ArrayList<>(events));
+  }
+
+  /**
+   * @return the number of this delta in its module's sequence; a full
+   * delta has the number of the last delta it includes
+   */
+  public long getSeq() {
+    return seq;
+  }
+
+  /**
+   * @return true if this delta lists the whole module, and so replaces
+   * whatever the client knew about it
+   */
+  public boolean isFull() {
+    return full;
+  }
+
+  /**
+   * @return the events, each an array of the event type followed by its
+   * arguments
+   */
+  public List<String[]> getEvents() {
+    return events;
+  }
+
+  public boolean isEmpty() {
+    return events.isEmpty();
+  }
+
+  /**
+   * Applies this delta to a module node with rooms as children and players
+   * as grandchildren, as built by {@link Protocol#decodeListCommand}.
+   *
+   * @param module the module
+   */
+  public void apply(Node module) {
+    if (full) {
+      for (Node room : module.getChildren()) {
+        module.remove(room);
+      }
+    }
+
+    for (String[] e : events) {
+      switch (e[0]) {
+      case JOINED:
+        Node.build(module, e[1]).setInfo(arg(e, 2));
+        break;
+      case LEFT:
+        remove(module, module.getDescendant(e[1]));
+        break;
+      case MOVED:
+        final Node player = module.getDescendant(e[1]);
+        if (player != null) {
+          remove(module, player);
+          Node.build(module, arg(e, 2)).add(player);
+        }
+        break;
+      case INFO:
+        final Node n = module.getDescendant(e[1]);
+        if (n != null) {
+          n.setInfo(arg(e, 2));
+        }
+        break;
+      case ROOM_INFO:
+        final Node room = module.getChild(e[1]);
+        if (room != null) {
+          room.setInfo(arg(e, 2));
+        }
+        break;
+      default:
+        // from a newer server; a full delta will put things right
+      }
+    }
+  }
+
+  private static String arg(String[] e, int i) {
+    return i < e.length ? e[i] : ""; //$NON-NLS-1$
+  }
+
+  // as on the server, a room goes when its last player does
+  private static void remove(Node module, Node player) {
+    if (player == null) {
+      return;
+    }
+
+    final Node room = player.getParent();
+    room.remove(player);
+    if (room.getChildren().length == 0) {
+      module.remove(room);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message together with its encoding as a line of UTF-8, so that a
+ * message sent to many players is encoded only once.
+ *
+ * <p>The bytes are never modified, so one instance may be queued for any
+ * number of connections at once; each takes its own read-only view with
+ * {@link #asByteBuffer}.</p>
+ *
+ * @since 3.3.2
+ */
+public final class EncodedLine {
+  private final String msg;
+  private final byte[] bytes;
+
+  public EncodedLine(String msg) {
+    this.msg = msg;
+    bytes = (msg + '\n').getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the message, without the line terminator
+   */
+  public String getMessage() {
+    return msg;
+  }
+
+  /**
+   * @return the number of bytes in the encoded line
+   */
+  public int length() {
+    return bytes.length;
+  }
+
+  /**
+   * @return a new read-only buffer over the encoded line, positioned at
+   * its start
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  /**
+   * Writes the encoded line to a stream.
+   *
+   * @param out the stream
+   * @throws IOException if writing fails
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return msg;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import VASSAL.tools.SequenceEncoder;
+
+/**
+ * What the server last reported about the players and rooms of one module,
+ * from which it works out the {@link ContentsDelta} to send next.
+ *
+ * @since 3.3.2
+ */
+public class ModuleContents {
+  private long seq = 0;
+
+  // room/id -> info, and room -> info for rooms which have info and
+  // players; as in a LIST, rooms without players are not reported
+  private Map<String,String> players = new LinkedHashMap<>();
+  private Map<String,String> rooms = new LinkedHashMap<>();
+
+  /**
+   * Records the current contents of the module.
+   *
+   * @param roomNodes the rooms of the module
+   * @return what has changed since the last update, numbered with the next
+   * number in sequence, or <code>null</code> if nothing has
+   */
+  public synchronized ContentsDelta update(Node[] roomNodes) {
+    final Map<String,String> newPlayers = new LinkedHashMap<>();
+    final Map<String,String> newRooms = new LinkedHashMap<>();
+    for (Node room : roomNodes) {
+      boolean occupied = false;
+      for (Node p : room.getChildren()) {
+        if (p.getId() != null && p.getInfo() != null) {
+          newPlayers.put(path(room.getId(), p.getId()), p.getInfo());
+          occupied = true;
+        }
+      }
+      if (occupied && room.getInfo() != null && room.getInfo().length() > 0) {
+        newRooms.put(room.getId(), room.getInfo());
+      }
+    }
+
+    final List<String[]> events = new ArrayList<>();
+
+    // players who have gone from where they were, by id
+    final Map<String,String> gone = new HashMap<>();
+    final Set<String> ambiguous = new HashSet<>();
+    for (String path : players.keySet()) {
+      if (!newPlayers.containsKey(path)) {
+        final String id = id(path);
+        if (gone.put(id, path) != null) {
+          ambiguous.add(id);
+        }
+      }
+    }
+
+    // rooms which a player has left, which the client may have removed
+    final Set<String> emptied = new HashSet<>();
+    final Set<String> movedFrom = new HashSet<>();
+
+    final List<String[]> arrivals = new ArrayList<>();
+    for (Map.Entry<String,String> e : newPlayers.entrySet()) {
+      final String path = e.getKey();
+      final String info = e.getValue();
+      if (players.containsKey(path)) {
+        if (!info.equals(players.get(path))) {
+          arrivals.add(new String[]{ContentsDelta.INFO, path, info});
+        }
+        continue;
+      }
+
+      final String id = id(path);
+      final String from = ambiguous.contains(id) ? null : gone.remove(id);
+      if (from != null) {
+        events.add(new String[]{ContentsDelta.MOVED, from, room(path)});
+        movedFrom.add(from);
+        emptied.add(room(from));
+        if (!info.equals(players.get(from))) {
+          arrivals.add(new String[]{ContentsDelta.INFO, path, info});
+        }
+      }
+      else {
+        arrivals.add(new String[]{ContentsDelta.JOINED, path, info});
+      }
+    }
+
+    for (String path : players.keySet()) {
+      if (!newPlayers.containsKey(path) && !movedFrom.contains(path)) {
+        events.add(new String[]{ContentsDelta.LEFT, path});
+        emptied.add(room(path));
+      }
+    }
+
+    events.addAll(arrivals);
+
+    for (Map.Entry<String,String> e : newRooms.entrySet()) {
+      final String room = e.getKey();
+      if (!e.getValue().equals(rooms.get(room)) || emptied.contains(room)) {
+        events.add(new String[]{ContentsDelta.ROOM_INFO, room, e.getValue()});
+      }
+    }
+
+    players = newPlayers;
+    rooms = newRooms;
+
+    if (events.isEmpty()) {
+      return null;
+    }
+    return new ContentsDelta(++seq, false, events);
+  }
+
+  /**
+   * @return everything recorded by the last update, as a full delta
+   */
+  public synchronized ContentsDelta full() {
+    final List<String[]> events = new ArrayList<>();
+    for (Map.Entry<String,String> e : players.entrySet()) {
+      events.add(new String[]{ContentsDelta.JOINED, e.getKey(), e.getValue()});
+    }
+    for (Map.Entry<String,String> e : rooms.entrySet()) {
+      events.add(new String[]{ContentsDelta.ROOM_INFO, e.getKey(), e.getValue()});
+    }
+    return new ContentsDelta(seq, true, events);
+  }
+
+  private static String path(String room, String id) {
+    return new SequenceEncoder(room, '/').append(id).getValue();
+  }
+
+  private static String room(String path) {
+    return new SequenceEncoder.Decoder(path, '/').nextToken();
+  }
+
+  private static String id(String path) {
+    final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(path, '/');
+    st.nextToken();
+    return st.nextToken();
+  }
+}
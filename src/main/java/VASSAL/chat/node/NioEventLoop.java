@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread which services many {@link NioSocketHandler}s with one
+ * {@link Selector}.
+ *
+ * <p>All reading, writing, and closing of a handler's channel happens on
+ * the loop to which it belongs; other threads hand work to the loop with
+ * {@link #execute}.</p>
+ *
+ * @since 3.3.2
+ */
+public class NioEventLoop extends Thread {
+  private static final Logger logger =
+    Logger.getLogger(NioEventLoop.class.getName());
+
+  /** How often idle connections are checked, in milliseconds. */
+  protected static final long IDLE_CHECK_INTERVAL = 10000L;
+
+  private final Selector selector;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private long lastIdleCheck = System.currentTimeMillis();
+
+  public NioEventLoop(String name) throws IOException {
+    super(name);
+    setDaemon(true);
+    selector = Selector.open();
+  }
+
+  /**
+   * Runs a task on this loop.
+   *
+   * @param task the task
+   */
+  public void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  /**
+   * Starts servicing a handler on this loop.
+   *
+   * @param handler the handler
+   */
+  public void register(NioSocketHandler handler) {
+    execute(() -> {
+      try {
+        handler.setKey(handler.getChannel().register(
+          selector, SelectionKey.OP_READ, handler));
+      }
+      catch (IOException e) {
+        handler.closeSocket();
+      }
+    });
+  }
+
+  @Override
+  public void run() {
+    while (!isInterrupted()) {
+      try {
+        selector.select(IDLE_CHECK_INTERVAL);
+      }
+      catch (IOException e) {
+        logger.log(Level.SEVERE, "Error selecting on " + getName(), e); //$NON-NLS-1$
+        continue;
+      }
+
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        try {
+          task.run();
+        }
+        catch (RuntimeException e) {
+          logger.log(Level.SEVERE, "Error running task on " + getName(), e); //$NON-NLS-1$
+        }
+      }
+
+      final Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+      while (i.hasNext()) {
+        final SelectionKey key = i.next();
+        i.remove();
+
+        final NioSocketHandler h = (NioSocketHandler) key.attachment();
+        if (key.isValid() && key.isReadable()) {
+          h.doRead();
+        }
+        if (key.isValid() && key.isWritable()) {
+          h.doWrite();
+        }
+      }
+
+      final long now = System.currentTimeMillis();
+      if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+          if (key.isValid()) {
+            ((NioSocketHandler) key.attachment()).checkIdle(now);
+          }
+        }
+      }
+    }
+  }
+}
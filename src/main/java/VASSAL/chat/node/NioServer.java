@@ -0,0 +1,95 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accepts connections for the node server like {@link Server}, but services
+ * them with a few {@link NioEventLoop}s rather than two threads apiece.
+ *
+ * <p>Selected by starting the server with <code>-io nio</code>. If
+ * accepting fails ten times in a row, the server stops accepting and closes
+ * its event loops.</p>
+ *
+ * @since 3.3.2
+ */
+public class NioServer extends Thread {
+  private static final Logger logger =
+    Logger.getLogger(NioServer.class.getName());
+
+  private final AsynchronousServerNode rootNode;
+  private final ServerSocketChannel socket;
+  private final NioEventLoop[] loops;
+  private int next = 0;
+
+  public NioServer(AsynchronousServerNode rootNode, int port) throws IOException {
+    this(rootNode, port, Runtime.getRuntime().availableProcessors());
+  }
+
+  public NioServer(AsynchronousServerNode rootNode, int port, int threads) throws IOException {
+    super("NioServer " + port); //$NON-NLS-1$
+    this.rootNode = rootNode;
+
+    socket = ServerSocketChannel.open();
+    socket.bind(new InetSocketAddress(port));
+
+    loops = new NioEventLoop[Math.max(1, threads)];
+    for (int i = 0; i < loops.length; ++i) {
+      loops[i] = new NioEventLoop("io " + i); //$NON-NLS-1$
+      loops[i].start();
+    }
+
+    logger.info("Started NIO server on port " + port); //$NON-NLS-1$
+    start();
+  }
+
+  @Override
+  public void run() {
+    int consecutiveFailures = 0;
+    while (consecutiveFailures < 10) {
+      try {
+        final SocketChannel s = socket.accept();
+        new PlayerNode(s, loops[next], rootNode);
+        next = (next + 1) % loops.length;
+        consecutiveFailures = 0;
+      }
+      catch (Exception e) {
+        logger.log(Level.SEVERE, "Error accepting connection", e); //$NON-NLS-1$
+        consecutiveFailures++;
+      }
+    }
+
+    logger.severe("Stopped accepting connections after repeated errors"); //$NON-NLS-1$
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      logger.log(Level.SEVERE, "Error closing server socket", e); //$NON-NLS-1$
+    }
+    for (NioEventLoop loop : loops) {
+      loop.interrupt();
+    }
+  }
+}
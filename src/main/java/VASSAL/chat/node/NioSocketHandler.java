@@ -0,0 +1,413 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link SocketHandler} for a non-blocking {@link SocketChannel}, serviced
+ * by an {@link NioEventLoop} instead of a pair of threads of its own.
+ *
+ * <p>The line protocol is the same: each message is a line of UTF-8 text,
+ * an idle connection is sent an empty line every two minutes, and
+ * <code>!BYE</code> closes the connection. Lines read are passed to the
+ * {@link SocketWatcher} on the event loop thread, so watchers must not
+ * block. A line longer than {@link SocketHandler#MAX_LINE_LENGTH} closes
+ * the connection.</p>
+ *
+ * @since 3.3.2
+ */
+public class NioSocketHandler extends SocketHandler {
+  private static final Logger logger =
+    Logger.getLogger(NioSocketHandler.class.getName());
+
+  /** How long a connection may go without being written to. */
+  protected static final long KEEP_ALIVE = 1000L * 60 * 2;
+
+  /** The most queued buffers passed to one gathering write. */
+  protected static final int MAX_GATHER = 64;
+
+  private static final String SIGN_OFF = "!BYE"; //$NON-NLS-1$
+
+  private final SocketChannel channel;
+  private final NioEventLoop loop;
+  private final SocketWatcher watcher;
+  private SelectionKey key;
+
+  private final ByteBuffer in = ByteBuffer.allocate(8192);
+  private byte[] line = new byte[256];
+  private int lineLength = 0;
+  private boolean lastWasCR = false;
+
+  private final OutboundQueue out = new OutboundQueue();
+  private final AtomicBoolean flushPending = new AtomicBoolean();
+
+  // lines taken from the queue but not yet written, owned by the loop
+  private final Deque<ByteBuffer> inflight = new ArrayDeque<>();
+  private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+  private EncodedLine signOff;
+  private ByteBuffer signOffBuffer;
+
+  // compression, once offered and accepted (see SocketHandler)
+  private boolean firstLine = true;
+  private volatile boolean acceptOffer = false;
+  private final AtomicBoolean offered = new AtomicBoolean();
+  private volatile EncodedLine deflateMarker;
+  private volatile boolean deflating = false;
+  private Inflater inflater;
+  private Deflater deflater;
+  private final ByteBuffer inflated = ByteBuffer.allocate(8192);
+  private ByteBuffer deflated = ByteBuffer.allocate(8192);
+  private long lastWrite = System.currentTimeMillis();
+
+  private volatile boolean isOpen = true;
+
+  public NioSocketHandler(SocketChannel channel, NioEventLoop loop,
+                          SocketWatcher watcher) throws IOException {
+    super(watcher);
+    this.channel = channel;
+    this.loop = loop;
+    this.watcher = watcher;
+    channel.configureBlocking(false);
+  }
+
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  @Override
+  public void start() {
+    loop.register(this);
+  }
+
+  @Override
+  public void writeLine(String msg) {
+    if (isOpen) {
+      writeLine(new EncodedLine(msg));
+    }
+  }
+
+  @Override
+  public void writeLine(EncodedLine line) {
+    if (!isOpen) {
+      return;
+    }
+
+    if (SIGN_OFF.equals(line.getMessage())) {
+      signOff = line;
+    }
+    if (!out.add(line)) {
+      loop.execute(this::evict);
+      return;
+    }
+
+    // one flush on the loop covers all lines queued before it runs
+    if (flushPending.compareAndSet(false, true)) {
+      loop.execute(() -> {
+        flushPending.set(false);
+        doWrite();
+      });
+    }
+  }
+
+  @Override
+  public void close() {
+    writeLine(SIGN_OFF);
+  }
+
+  @Override
+  public int getQueuedLines() {
+    return out.size();
+  }
+
+  @Override
+  public long getQueuedBytes() {
+    return out.getBytes();
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    return channel.socket().getInetAddress();
+  }
+
+  /** Reads what is available from the channel. Called on the loop. */
+  void doRead() {
+    try {
+      final int n = channel.read(in);
+      if (n < 0) {
+        closeSocket();
+        return;
+      }
+
+      in.flip();
+      if (inflater == null) {
+        parse(in);
+      }
+      // what follows a DEFLATE line, in this read or later ones
+      if (inflater != null && isOpen) {
+        inflater.setInput(in);
+        int k;
+        do {
+          inflated.clear();
+          k = inflater.inflate(inflated);
+          inflated.flip();
+          parse(inflated);
+        } while (k > 0 && isOpen);
+      }
+      in.clear();
+    }
+    catch (IOException | DataFormatException e) {
+      closeSocket();
+    }
+  }
+
+  // splits bytes into lines, stopping early if the input becomes compressed
+  private void parse(ByteBuffer buf) {
+    final boolean raw = inflater == null;
+    while (buf.hasRemaining() && isOpen) {
+      final byte b = buf.get();
+      if (b == '\n' || b == '\r') {
+        // "\r\n" ends one line, as for BufferedReader.readLine()
+        if (!(b == '\n' && lastWasCR)) {
+          lineRead();
+          if (raw && inflater != null) {
+            return;
+          }
+        }
+        lastWasCR = b == '\r';
+      }
+      else {
+        if (lineLength == line.length) {
+          if (lineLength >= MAX_LINE_LENGTH) {
+            logger.warning("Closing connection to " + getInetAddress() + ", which sent a line longer than " + MAX_LINE_LENGTH + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            closeSocket();
+            return;
+          }
+          line = Arrays.copyOf(line, Math.min(2 * line.length, MAX_LINE_LENGTH));
+        }
+        line[lineLength++] = b;
+        lastWasCR = false;
+      }
+    }
+  }
+
+  private void lineRead() {
+    final String msg = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    lineLength = 0;
+
+    final boolean first = firstLine;
+    firstLine = false;
+    if (inflater == null && Protocol.DEFLATE.equals(msg) &&
+        (offered.get() || (first && acceptOffer))) {
+      inflater = new Inflater(true);
+      lastWasCR = false;
+      enableCompression();
+    }
+    else if (SIGN_OFF.equals(msg)) {
+      closeSocket();
+    }
+    else if (msg.length() > 0) {
+      try {
+        watcher.handleMessage(msg);
+      }
+      catch (Exception e) {
+        // Handler threw an exception.  Keep reading.
+        logger.log(Level.SEVERE, "Error handling " + msg, e); //$NON-NLS-1$
+      }
+    }
+  }
+
+  /**
+   * Writes as much of the queued output as the channel accepts, passing
+   * several queued lines to each write.
+   */
+  void doWrite() {
+    if (!isOpen || key == null) {
+      // not yet registered: the loop runs the registration first, so this
+      // can only happen if registration failed
+      return;
+    }
+
+    try {
+      while (true) {
+        EncodedLine line;
+        boolean compressed = false;
+        boolean compressedSignOff = false;
+        while (inflight.size() < MAX_GATHER && (line = out.poll()) != null) {
+          if (deflater != null) {
+            // everything queued goes into one compressed buffer
+            deflate(line.asByteBuffer(), Deflater.NO_FLUSH);
+            compressed = true;
+            compressedSignOff |= line == signOff;
+            continue;
+          }
+
+          final ByteBuffer buf = line.asByteBuffer();
+          if (line == signOff) {
+            signOffBuffer = buf;
+          }
+          inflight.add(buf);
+          if (line == deflateMarker) {
+            deflater = new Deflater(COMPRESSION_LEVEL, true);
+            deflating = true;
+          }
+        }
+        if (compressed) {
+          deflate(null, Deflater.SYNC_FLUSH);
+          deflated.flip();
+          final ByteBuffer buf =
+            ByteBuffer.allocate(deflated.remaining()).put(deflated).flip();
+          deflated.clear();
+          if (compressedSignOff) {
+            signOffBuffer = buf;
+          }
+          inflight.add(buf);
+        }
+        if (inflight.isEmpty()) {
+          break;
+        }
+
+        final int n = inflight.size();
+        inflight.toArray(gather);
+        channel.write(gather, 0, n);
+        Arrays.fill(gather, 0, n, null);
+
+        boolean wrote = false;
+        while (!inflight.isEmpty() && !inflight.peek().hasRemaining()) {
+          wrote = true;
+          if (inflight.poll() == signOffBuffer) {
+            closeSocket();
+            return;
+          }
+        }
+        if (wrote) {
+          lastWrite = System.currentTimeMillis();
+        }
+
+        if (!inflight.isEmpty()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          return;
+        }
+      }
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+    catch (IOException e) {
+      closeSocket();
+    }
+  }
+
+  // compresses input, if any, into the deflated buffer, growing it as needed
+  private void deflate(ByteBuffer input, int flush) {
+    if (input != null) {
+      deflater.setInput(input);
+    }
+    while (true) {
+      if (deflated.remaining() < 64) {
+        deflated = ByteBuffer.allocate(2 * deflated.capacity()).put(deflated.flip());
+      }
+      deflater.deflate(deflated, flush);
+      // done when input is used up and, for a flush, output is not cut short
+      if (deflater.needsInput() && deflated.hasRemaining()) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void enableCompression() {
+    if (offered.compareAndSet(false, true)) {
+      deflateMarker = new EncodedLine(Protocol.DEFLATE);
+      writeLine(deflateMarker);
+    }
+  }
+
+  @Override
+  public void acceptCompression() {
+    acceptOffer = true;
+  }
+
+  @Override
+  public boolean isCompressing() {
+    return deflating;
+  }
+
+  /**
+   * Sends a keep-alive if nothing has been written for a while, and closes
+   * the connection if its client has stopped reading.
+   */
+  void checkIdle(long now) {
+    if (out.isStalled(now)) {
+      evict();
+    }
+    else if (now - lastWrite >= KEEP_ALIVE && out.isEmpty() && inflight.isEmpty()) {
+      lastWrite = now;
+      writeLine("");
+    }
+  }
+
+  private void evict() {
+    logger.warning("Closing connection to " + getInetAddress() + ", which is not keeping up"); //$NON-NLS-1$ //$NON-NLS-2$
+    closeSocket();
+  }
+
+  void closeSocket() {
+    synchronized (this) {
+      if (!isOpen) {
+        return;
+      }
+      isOpen = false;
+    }
+
+    if (key != null) {
+      key.cancel();
+    }
+    try {
+      channel.close();
+    }
+    catch (IOException ignore) {
+    }
+    out.clear();
+    inflight.clear();
+    if (inflater != null) {
+      inflater.end();
+    }
+    if (deflater != null) {
+      deflater.end();
+    }
+    watcher.socketClosed(this);
+  }
+}
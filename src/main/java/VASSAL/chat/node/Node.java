@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import VASSAL.tools.PropertiesEncoder;
@@ -40,9 +42,11 @@ import VASSAL.tools.SequenceEncoder;
 public class Node implements MsgSender {
   private static Logger logger = Logger.getLogger(MsgSender.class.getName());
   private String id;
-  private String info;
-  private Node parent;
-  private List<Node> children = new ArrayList<>();
+  private volatile String info;
+  private volatile Node parent;
+  // copy-on-write, so that the tree can be read without locking
+  private List<Node> children = new CopyOnWriteArrayList<>();
+  private final AtomicInteger version = new AtomicInteger();
 
   public Node(Node parent, String id, String info) {
     this.parent = parent;
@@ -71,6 +75,21 @@ public class Node implements MsgSender {
     this.info = info;
   }
 
+  /**
+   * @return a number which increases whenever a child is added to or
+   * removed from this node or any of its descendants
+   */
+  public int getVersion() {
+    return version.get();
+  }
+
+  /** Marks this node and its ancestors as changed. */
+  protected void changed() {
+    for (Node n = this; n != null; n = n.getParent()) {
+      n.version.incrementAndGet();
+    }
+  }
+
   public void setParent(Node parent) {
     this.parent = parent;
   }
@@ -81,7 +100,9 @@ public class Node implements MsgSender {
 
   public void remove(Node child) {
     logger.finer("Removing "+child+" from "+this); //$NON-NLS-1$ //$NON-NLS-2$
-    children.remove(child);
+    if (children.remove(child)) {
+      changed();
+    }
   }
 
   public void add(Node child) {
@@ -96,6 +117,7 @@ public class Node implements MsgSender {
     logger.finer("Adding "+child+" to "+this); //$NON-NLS-1$ //$NON-NLS-2$
     children.add(child);
     child.setParent(this);
+    changed();
   }
 
   public boolean equals(Object o) {
@@ -148,8 +170,27 @@ public class Node implements MsgSender {
 
   @Override
   public void send(String msg) {
+    final EncodedLine line = new EncodedLine(msg);
     for (Node n : getChildren()) {
-      n.send(msg);
+      n.send(line);
+    }
+  }
+
+  /**
+   * Sends a message which has already been encoded. Leaves which can
+   * write the encoded line directly, such as {@link PlayerNode}, override
+   * this; others receive the message through {@link #send(String)}.
+   *
+   * @param line the message
+   */
+  public void send(EncodedLine line) {
+    if (isLeaf()) {
+      send(line.getMessage());
+    }
+    else {
+      for (Node n : getChildren()) {
+        n.send(line);
+      }
     }
   }
 
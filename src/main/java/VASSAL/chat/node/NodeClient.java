@@ -87,6 +87,10 @@ public abstract class NodeClient implements LockableChatServerConnection,
   protected String playerId;
   protected MainRoomChecker checker = new MainRoomChecker();
   protected int compressionLimit = 1000;
+  // Even on a compressed connection, large messages are still sent as
+  // !ZIP!, so that they stay well under SocketHandler.MAX_LINE_LENGTH
+  protected int streamCompressionLimit =
+    Integer.getInteger("VASSAL.chat.zipThreshold", 1024) * 1024; //$NON-NLS-1$
   protected CommandEncoder encoder;
   protected MessageBoardControlsInitializer messageBoardControls;
   protected RoomInteractionControlsInitializer roomControls;
@@ -99,6 +103,9 @@ public abstract class NodeClient implements LockableChatServerConnection,
   protected PropertyChangeListener nameChangeListener;
   protected PropertyChangeListener profileChangeListener;
   protected NodeRoom pendingSynchToRoom;
+  // the server's contents as built from deltas, and the last delta applied
+  protected Node deltaContents;
+  protected long deltaSeq;
 
   public NodeClient(String moduleName, String playerId, CommandEncoder encoder,
       MessageBoard msgSvr, WelcomeMessageServer welcomer) {
@@ -185,6 +192,8 @@ public abstract class NodeClient implements LockableChatServerConnection,
   protected void registerNewConnection() {
     String path = new SequenceEncoder(moduleName, '/').append(defaultRoomName)
         .getValue();
+    deltaContents = null;
+    send(Protocol.encodeCapabilitiesCommand(getCapabilities()));
     send(Protocol.encodeRegisterCommand(me.getId(), path,
         new PropertiesEncoder(me.toProperties()).getStringValue()));
     if (GameModule.getGameModule() != null) {
@@ -196,6 +205,22 @@ public abstract class NodeClient implements LockableChatServerConnection,
     }
   }
 
+  /**
+   * @return the optional parts of the protocol which this client
+   * understands, declared to the server before registering
+   */
+  protected String[] getCapabilities() {
+    return new String[]{Protocol.DELTA_CAPABILITY};
+  }
+
+  /**
+   * @return true if the connection to the server is compressed, so that
+   * messages need not be compressed individually
+   */
+  protected boolean isCompressing() {
+    return false;
+  }
+
   protected abstract void closeConnection();
 
   protected abstract void initializeConnection() throws IOException;
@@ -239,7 +264,8 @@ public abstract class NodeClient implements LockableChatServerConnection,
   public void forward(String receipientPath, String msg) {
     if (isConnected() && currentRoom != null && msg != null) {
       msg = checker.filter(msg, defaultRoomName, currentRoom.getName());
-      if (msg.length() > compressionLimit) {
+      if (msg.length() >
+          (isCompressing() ? streamCompressionLimit : compressionLimit)) {
         try {
           msg = ZIP_HEADER + Base64.encodeBase64String(
             Compressor.compress(msg.getBytes(StandardCharsets.UTF_8))
@@ -447,21 +473,34 @@ public abstract class NodeClient implements LockableChatServerConnection,
   public void handleMessageFromServer(String msg) {
     Node n;
     Properties p;
+    ContentsDelta delta;
     if ((n = Protocol.decodeListCommand(msg)) != null) {
       Node mod = n.getChild(moduleName);
       if (mod != null) {
         updateRooms(mod);
       }
-      // Rooms have been updated with any new players (including us), so perform
-      // a Synchronize
-      // for a move to a new room if needed.
-      if (pendingSynchToRoom != null) {
-        new SynchAction(pendingSynchToRoom.getOwningPlayer(), this)
-            .actionPerformed(null);
-        pendingSynchToRoom = null;
-        GameModule.getGameModule().warn(
-            Resources.getString("Chat.synchronize_complete"));
+      synchIfPending();
+    }
+    else if ((delta = Protocol.decodeDeltaCommand(msg)) != null) {
+      if (delta.isFull()) {
+        deltaContents = new Node(null, null, null);
+      }
+      else if (deltaContents == null || delta.getSeq() != deltaSeq + 1) {
+        // missed something: ignore deltas until the full contents arrive
+        if (deltaContents != null) {
+          deltaContents = null;
+          send(Protocol.encodeResyncRequest());
+        }
+        return;
       }
+      deltaSeq = delta.getSeq();
+
+      final Node mod = Node.build(deltaContents, moduleName);
+      delta.apply(mod);
+      updateRooms(mod);
+      synchIfPending();
+      propSupport.firePropertyChange(ROOM, null, currentRoom);
+      propSupport.firePropertyChange(AVAILABLE_ROOMS, null, allRooms);
     }
     else if ((p = Protocol.decodeRoomsInfo(msg)) != null) {
       for (NodeRoom aRoom : allRooms) {
@@ -504,6 +543,18 @@ public abstract class NodeClient implements LockableChatServerConnection,
     }
   }
 
+  // Rooms have been updated with any new players (including us), so perform
+  // a Synchronize for a move to a new room if needed.
+  private void synchIfPending() {
+    if (pendingSynchToRoom != null) {
+      new SynchAction(pendingSynchToRoom.getOwningPlayer(), this)
+          .actionPerformed(null);
+      pendingSynchToRoom = null;
+      GameModule.getGameModule().warn(
+          Resources.getString("Chat.synchronize_complete"));
+    }
+  }
+
   protected void updateRooms(Node module) {
     Node[] roomNodes = module.getChildren();
     NodeRoom[] rooms = new NodeRoom[roomNodes.length];
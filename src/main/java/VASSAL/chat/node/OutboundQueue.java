@@ -0,0 +1,274 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lines waiting to be written to one connection, limited by a budget
+ * of bytes.
+ *
+ * <p>A client on a slow link cannot keep up with everything broadcast to
+ * its room, so its queue grows. To bound it:</p>
+ * <ul>
+ * <li>A {@link Protocol#LIST} or {@link Protocol#ROOM_INFO} replaces one
+ * of the same kind which is still waiting, since it supersedes it.</li>
+ * <li>A queue which stays over its budget for longer than a grace period,
+ * or grows to {@link #HARD_LIMIT_FACTOR} times its budget, asks for its
+ * connection to be closed.</li>
+ * </ul>
+ *
+ * <p>The budget and grace period default to the system properties
+ * <code>VASSAL.chat.outboundBudget</code>, in kilobytes, and
+ * <code>VASSAL.chat.outboundGrace</code>, in seconds.</p>
+ *
+ * @since 3.3.2
+ */
+public class OutboundQueue {
+
+  /** The default budget, in bytes. */
+  public static final long DEFAULT_BUDGET =
+    Integer.getInteger("VASSAL.chat.outboundBudget", 1024) * 1024L;
+
+  /** The default grace period, in milliseconds. */
+  public static final long DEFAULT_GRACE =
+    Integer.getInteger("VASSAL.chat.outboundGrace", 30) * 1000L;
+
+  /** How many times its budget a queue may grow to before eviction. */
+  public static final int HARD_LIMIT_FACTOR = 4;
+
+  /**
+   * Returned by {@link #poll(long)} once the connection has been evicted.
+   * Compare with <code>==</code>.
+   */
+  public static final EncodedLine CLOSED = new EncodedLine(""); //$NON-NLS-1$
+
+  private static final LongAdder evictions = new LongAdder();
+  private static final LongAccumulator highWater =
+    new LongAccumulator(Math::max, 0);
+
+  private static class Entry {
+    EncodedLine line;
+
+    Entry(EncodedLine line) {
+      this.line = line;
+    }
+  }
+
+  private final long budget;
+  private final long grace;
+
+  private final Deque<Entry> entries = new ArrayDeque<>();
+  private Entry waitingList;
+  private Entry waitingRoomInfo;
+  private long bytes = 0;
+  private long overSince = -1;
+  private boolean evicted = false;
+
+  public OutboundQueue() {
+    this(DEFAULT_BUDGET, DEFAULT_GRACE);
+  }
+
+  /**
+   * @param budget the most bytes which may wait for longer than the grace
+   * period
+   * @param grace the grace period, in milliseconds
+   */
+  public OutboundQueue(long budget, long grace) {
+    this.budget = budget;
+    this.grace = grace;
+  }
+
+  /**
+   * @return a queue which is never over its budget, for connections which
+   * must not be closed however far behind they fall, such as links between
+   * servers
+   */
+  public static OutboundQueue unbounded() {
+    return new OutboundQueue(Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Queues a line.
+   *
+   * @param line the line
+   * @return false if the connection should be closed because its client
+   * is not keeping up; the line is then not queued
+   */
+  public synchronized boolean add(EncodedLine line) {
+    if (evicted) {
+      return false;
+    }
+
+    final String msg = line.getMessage();
+    if (msg.startsWith(Protocol.LIST)) {
+      if (waitingList != null) {
+        replace(waitingList, line);
+        return checkBudget(System.currentTimeMillis());
+      }
+      waitingList = append(line);
+    }
+    else if (msg.startsWith(Protocol.ROOM_INFO)) {
+      if (waitingRoomInfo != null) {
+        replace(waitingRoomInfo, line);
+        return checkBudget(System.currentTimeMillis());
+      }
+      waitingRoomInfo = append(line);
+    }
+    else {
+      append(line);
+    }
+
+    notifyAll();
+    return checkBudget(System.currentTimeMillis());
+  }
+
+  private Entry append(EncodedLine line) {
+    final Entry e = new Entry(line);
+    entries.add(e);
+    bytes += line.length();
+    highWater.accumulate(bytes);
+    return e;
+  }
+
+  private void replace(Entry e, EncodedLine line) {
+    bytes += line.length() - e.line.length();
+    e.line = line;
+  }
+
+  /**
+   * @return the next line, or <code>null</code> if there is none
+   */
+  public synchronized EncodedLine poll() {
+    final Entry e = entries.poll();
+    if (e == null) {
+      return null;
+    }
+
+    if (e == waitingList) {
+      waitingList = null;
+    }
+    else if (e == waitingRoomInfo) {
+      waitingRoomInfo = null;
+    }
+
+    bytes -= e.line.length();
+    if (bytes <= budget) {
+      overSince = -1;
+    }
+    return e.line;
+  }
+
+  /**
+   * Waits for the next line.
+   *
+   * @param timeout how long to wait, in milliseconds
+   * @return the next line, <code>null</code> if none came in time, or
+   * {@link #CLOSED} if the connection has been evicted, in which case
+   * nothing more will come
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized EncodedLine poll(long timeout)
+                                             throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeout;
+    long left = timeout;
+    while (entries.isEmpty() && !evicted && left > 0) {
+      wait(left);
+      left = deadline - System.currentTimeMillis();
+    }
+    return evicted ? CLOSED : poll();
+  }
+
+  /**
+   * @param now the current time, in milliseconds
+   * @return true if the queue has been over its budget for longer than
+   * the grace period, in which case the connection should be closed
+   */
+  public synchronized boolean isStalled(long now) {
+    return !checkBudget(now);
+  }
+
+  private boolean checkBudget(long now) {
+    if (!evicted) {
+      if (bytes <= budget) {
+        overSince = -1;
+        return true;
+      }
+
+      if (overSince < 0) {
+        overSince = now;
+      }
+      if (bytes <= HARD_LIMIT_FACTOR * budget && now - overSince <= grace) {
+        return true;
+      }
+
+      evicted = true;
+      evictions.increment();
+      entries.clear();
+      waitingList = waitingRoomInfo = null;
+      bytes = 0;
+      // wake the writer, so that it can stop
+      notifyAll();
+    }
+    return false;
+  }
+
+  public synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * @return the number of lines waiting
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the number of bytes waiting
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    waitingList = waitingRoomInfo = null;
+    bytes = 0;
+    overSince = -1;
+  }
+
+  /**
+   * @return the most bytes which have waited in any one queue
+   */
+  public static long getHighWaterBytes() {
+    return highWater.get();
+  }
+
+  /**
+   * @return the number of connections closed so far because their
+   * clients did not keep up
+   */
+  public static long getEvictions() {
+    return evictions.sum();
+  }
+}
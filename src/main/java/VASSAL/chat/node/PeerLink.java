@@ -0,0 +1,156 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A connection between two servers of a cluster.
+ *
+ * <p>The server which dials sends a {@link Protocol#PEER} line naming
+ * itself; the other end offers compression and answers with its own name.
+ * After that, each side tells the other about its players and relays the
+ * messages forwarded to them (see {@link ClusteredServerNode}). The
+ * players reported over a link are kept here, and leave the tree when the
+ * link closes.</p>
+ *
+ * @since 3.3.2
+ */
+public class PeerLink implements SocketWatcher {
+  private static final Logger logger =
+    Logger.getLogger(PeerLink.class.getName());
+
+  private final ClusteredServerNode server;
+  private final SocketHandler handler;
+  private final boolean dialed;
+  private volatile String peer;
+  private volatile boolean open = true;
+  private final Map<String,RemotePlayerNode> players = new ConcurrentHashMap<>();
+
+  /**
+   * @param socket the connection
+   * @param server the local server
+   * @param dialed true if the local server opened the connection
+   */
+  public PeerLink(Socket socket, ClusteredServerNode server, boolean dialed) throws IOException {
+    this.server = server;
+    this.dialed = dialed;
+    handler = new SocketHandler(socket, this, OutboundQueue.unbounded());
+    if (dialed) {
+      handler.acceptCompression();
+    }
+    handler.start();
+    if (dialed) {
+      handler.writeLine(Protocol.encodePeerCommand(server.getName()));
+    }
+  }
+
+  /**
+   * @return the name of the server at the other end, or null until it
+   * has been received
+   */
+  public String getPeer() {
+    return peer;
+  }
+
+  /**
+   * @return the name of the server which opened the connection
+   */
+  public String getDialer() {
+    return dialed ? server.getName() : peer;
+  }
+
+  public boolean isOpen() {
+    return open;
+  }
+
+  public void send(String msg) {
+    handler.writeLine(msg);
+  }
+
+  public void close() {
+    handler.close();
+  }
+
+  RemotePlayerNode getPlayer(String id) {
+    return players.get(id);
+  }
+
+  void addPlayer(RemotePlayerNode p) {
+    players.put(p.getId(), p);
+  }
+
+  RemotePlayerNode removePlayer(String id) {
+    return players.remove(id);
+  }
+
+  Collection<RemotePlayerNode> getPlayers() {
+    return players.values();
+  }
+
+  @Override
+  public void handleMessage(String line) {
+    String[] info;
+    String s;
+    if (peer == null) {
+      if ((s = Protocol.decodePeerCommand(line)) == null) {
+        logger.warning("Closing peer link which did not identify itself"); //$NON-NLS-1$
+        close();
+        return;
+      }
+      peer = s;
+      if (!dialed) {
+        handler.enableCompression();
+        handler.writeLine(Protocol.encodePeerCommand(server.getName()));
+      }
+      server.linkEstablished(this);
+    }
+    else if ((info = Protocol.decodePeerForwardCommand(line)) != null) {
+      server.remoteForward(info[0], info[1]);
+    }
+    else if ((info = Protocol.decodePeerPlayerCommand(line)) != null) {
+      server.remotePlayer(this, info[0], info[1], info[2]);
+    }
+    else if ((s = Protocol.decodePeerLeaveCommand(line)) != null) {
+      server.remoteLeave(this, s);
+    }
+    else if ((info = Protocol.decodePeerRoomInfoCommand(line)) != null) {
+      server.remoteRoomInfo(info[0], info[1]);
+    }
+    else if ((info = Protocol.decodePeerMoveCommand(line)) != null) {
+      server.remoteMove(info[0], info[1]);
+    }
+  }
+
+  @Override
+  public void socketClosed(SocketHandler handler) {
+    open = false;
+    server.linkClosed(this);
+  }
+
+  @Override
+  public String toString() {
+    return "PeerLink[" + peer + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+}
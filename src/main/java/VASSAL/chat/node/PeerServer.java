@@ -0,0 +1,170 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import VASSAL.tools.SequenceEncoder;
+
+/**
+ * Accepts links from the other servers of a cluster, and dials those it
+ * has been told of, dialing again whenever a link is lost.
+ *
+ * <p>Enabled by starting the server with <code>-peerPort</code>, giving
+ * the port on which to accept links, and <code>-peers</code>, giving the
+ * others as a comma-separated list of <code>host:port</code>. A link
+ * relays players and their messages unchecked, so links are accepted only
+ * from the hosts in that list.</p>
+ *
+ * @since 3.3.2
+ */
+public class PeerServer extends Thread {
+  private static final Logger logger =
+    Logger.getLogger(PeerServer.class.getName());
+
+  /** How often lost links are dialed again, in milliseconds. */
+  protected static final long RETRY_INTERVAL = 5000L;
+
+  private final ClusteredServerNode server;
+  private final ServerSocket socket;
+  private final List<InetSocketAddress> peers;
+  private final Map<InetSocketAddress,PeerLink> dialed = new HashMap<>();
+
+  public PeerServer(ClusteredServerNode server, int port,
+                    List<InetSocketAddress> peers) throws IOException {
+    super("PeerServer " + port); //$NON-NLS-1$
+    this.server = server;
+    this.peers = peers;
+    socket = new ServerSocket(port);
+    logger.info("Accepting peers on port " + port); //$NON-NLS-1$
+    start();
+
+    final Timer t = new Timer("peer dialer", true); //$NON-NLS-1$
+    t.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        dialPeers();
+      }
+    }, 0, RETRY_INTERVAL);
+  }
+
+  /**
+   * Parses a list of peers.
+   *
+   * @param list comma-separated <code>host:port</code> pairs
+   * @return the addresses
+   */
+  public static List<InetSocketAddress> parsePeers(String list) {
+    final List<InetSocketAddress> l = new ArrayList<>();
+    final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(list, ',');
+    while (st.hasMoreTokens()) {
+      final String peer = st.nextToken().trim();
+      final int colon = peer.lastIndexOf(':');
+      if (colon > 0) {
+        l.add(InetSocketAddress.createUnresolved(
+          peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+      }
+    }
+    return l;
+  }
+
+  /**
+   * @param addr the address of a host
+   * @param peers the peers
+   * @return true if the host is one of the peers
+   */
+  static boolean isListed(InetAddress addr, List<InetSocketAddress> peers) {
+    for (InetSocketAddress a : peers) {
+      try {
+        // resolved each time, in case a peer's address has changed
+        for (InetAddress i : InetAddress.getAllByName(a.getHostString())) {
+          if (i.equals(addr)) {
+            return true;
+          }
+        }
+      }
+      catch (UnknownHostException e) {
+        // not a peer we can reach either
+      }
+    }
+    return false;
+  }
+
+  private void dialPeers() {
+    for (InetSocketAddress a : peers) {
+      final PeerLink link = dialed.get(a);
+      if (link != null && (link.isOpen() ||
+          (link.getPeer() != null && server.isLinked(link.getPeer())))) {
+        // connected, or kept the link which the peer dialed instead
+        continue;
+      }
+
+      try {
+        final Socket s = new Socket(a.getHostString(), a.getPort());
+        dialed.put(a, new PeerLink(s, server, true));
+      }
+      catch (IOException e) {
+        // not up yet; try again later
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    int consecutiveFailures = 0;
+    while (consecutiveFailures < 10) {
+      try {
+        final Socket s = socket.accept();
+        if (isListed(s.getInetAddress(), peers)) {
+          new PeerLink(s, server, false);
+        }
+        else {
+          logger.warning("Refusing peer link from unlisted host " + s.getInetAddress()); //$NON-NLS-1$
+          s.close();
+        }
+        consecutiveFailures = 0;
+      }
+      catch (Exception e) {
+        logger.log(Level.SEVERE, "Error accepting peer link", e); //$NON-NLS-1$
+        consecutiveFailures++;
+      }
+    }
+
+    logger.severe("Stopped accepting peer links after repeated errors"); //$NON-NLS-1$
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      logger.log(Level.SEVERE, "Error closing peer socket", e); //$NON-NLS-1$
+    }
+  }
+}
@@ -19,7 +19,10 @@ package VASSAL.chat.node;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import VASSAL.tools.SequenceEncoder;
 
@@ -34,15 +37,26 @@ public class PlayerNode extends Node implements SocketWatcher {
   protected String id;
   protected String info;
   private AsynchronousServerNode server;
+  private volatile boolean deltas = false;
+  private final AtomicBoolean needsResync = new AtomicBoolean(true);
   private static ConnectionLimiter connLimiter = new ConnectionLimiter();
 
   public PlayerNode(Socket socket, AsynchronousServerNode server) throws IOException {
     super(null,null,null);
-    server = server;
+    this.server = server;
+    server.getMetrics().connectionOpened();
     input = new SocketHandler(socket, this);
     input.start();
   }
 
+  public PlayerNode(SocketChannel channel, NioEventLoop loop, AsynchronousServerNode server) throws IOException {
+    super(null,null,null);
+    this.server = server;
+    server.getMetrics().connectionOpened();
+    input = new NioSocketHandler(channel, loop, this);
+    input.start();
+  }
+
   @Override
   public String getId() {
     return id;
@@ -58,6 +72,41 @@ public class PlayerNode extends Node implements SocketWatcher {
     input.writeLine(msg);
   }
 
+  @Override
+  public void send(EncodedLine line) {
+    input.writeLine(line);
+  }
+
+  /**
+   * @return true if the client has declared
+   * {@link Protocol#DELTA_CAPABILITY}
+   */
+  public boolean isDeltaCapable() {
+    return deltas;
+  }
+
+  /**
+   * @return true if the client needs the full contents of its module,
+   * because it has just arrived or has asked for them; clears the request
+   */
+  public boolean takeResync() {
+    return needsResync.getAndSet(false);
+  }
+
+  /**
+   * @return the number of lines waiting to be sent to the player
+   */
+  public int getQueuedLines() {
+    return input.getQueuedLines();
+  }
+
+  /**
+   * @return the number of bytes waiting to be sent to the player
+   */
+  public long getQueuedBytes() {
+    return input.getQueuedBytes();
+  }
+
   // Always update IP on client info in case client 'forgets' their IP
   @Override
   public String getInfo() {
@@ -131,10 +180,21 @@ public class PlayerNode extends Node implements SocketWatcher {
     else if ((cmd = Protocol.decodeLoginCommand(line)) != null) {
       connLimiter.register(cmd,input);
     }
+    else if ((info = Protocol.decodeCapabilitiesCommand(line)) != null) {
+      deltas = Arrays.asList(info).contains(Protocol.DELTA_CAPABILITY);
+      if (Arrays.asList(info).contains(Protocol.DEFLATE_CAPABILITY)) {
+        input.enableCompression();
+      }
+    }
+    else if (Protocol.decodeResyncRequest(line)) {
+      needsResync.set(true);
+      server.updateInfo(this);
+    }
   }
 
   @Override
   public void socketClosed(SocketHandler handler) {
+    server.getMetrics().connectionClosed();
     server.disconnect(this);
   }
 }
@@ -18,6 +18,8 @@
 package VASSAL.chat.node;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import VASSAL.tools.PropertiesEncoder;
@@ -40,6 +42,29 @@ public class Protocol {
   public static final String ROOM_INFO = "ROOM_INFO\t"; //$NON-NLS-1$
   public static final String LOGIN = "LOGIN\t"; //$NON-NLS-1$
   public static final String KICK = "KICK\t"; //$NON-NLS-1$
+  public static final String CAPABILITIES = "CAPS\t"; //$NON-NLS-1$
+  public static final String DELTA = "DELTA\t"; //$NON-NLS-1$
+  public static final String RESYNC = "RESYNC\t"; //$NON-NLS-1$
+  public static final String DEFLATE = "DEFLATE\t"; //$NON-NLS-1$
+
+  // sent between the servers of a cluster; see ClusteredServerNode
+  public static final String PEER = "PEER\t"; //$NON-NLS-1$
+  public static final String PEER_PLAYER = "PPLAYER\t"; //$NON-NLS-1$
+  public static final String PEER_LEAVE = "PLEAVE\t"; //$NON-NLS-1$
+  public static final String PEER_FORWARD = "PFWD\t"; //$NON-NLS-1$
+  public static final String PEER_ROOM_INFO = "PROOM\t"; //$NON-NLS-1$
+  public static final String PEER_MOVE = "PMOVE\t"; //$NON-NLS-1$
+
+  /** The capability of receiving {@link #DELTA} instead of {@link #LIST}. */
+  public static final String DELTA_CAPABILITY = "delta"; //$NON-NLS-1$
+
+  /**
+   * The capability of compressing the connection after a {@link #DEFLATE}
+   * exchange.
+   */
+  public static final String DEFLATE_CAPABILITY = "deflate"; //$NON-NLS-1$
+
+  private static final String FULL = "full"; //$NON-NLS-1$
 
   /**
    * Contains registration information sent when a client initially connects to
@@ -219,6 +244,149 @@ public class Protocol {
     return p;
   }
 
+  /**
+   * Sent by each end of a link between two servers of a cluster, to name
+   * the server which sent it
+   *
+   * @param name
+   * @return
+   */
+  public static String encodePeerCommand(String name) {
+    return PEER + name;
+  }
+
+  public static String decodePeerCommand(String cmd) {
+    String name = null;
+    if (cmd.startsWith(PEER)) {
+      name = cmd.substring(PEER.length());
+    }
+    return name;
+  }
+
+  /**
+   * Sent to the other servers of a cluster when a player connected to
+   * this one registers, moves, or changes its information
+   *
+   * @param id
+   * @param parentPath
+   * @param info
+   * @return
+   */
+  public static String encodePeerPlayerCommand(String id, String parentPath, String info) {
+    final String msg = new SequenceEncoder(id, '\t').append(parentPath).append(info == null ? "" : info).getValue(); //$NON-NLS-1$
+    return PEER_PLAYER + msg;
+  }
+
+  /**
+   * @see #encodePeerPlayerCommand
+   * @return id, parentPath, info
+   */
+  public static String[] decodePeerPlayerCommand(String cmd) {
+    String[] info = null;
+    if (cmd.startsWith(PEER_PLAYER)) {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(cmd.substring(PEER_PLAYER.length()), '\t');
+      info = new String[] {st.nextToken(), st.nextToken(), st.nextToken("")}; //$NON-NLS-1$
+    }
+    return info;
+  }
+
+  /**
+   * Sent to the other servers of a cluster when a player connected to
+   * this one disconnects
+   *
+   * @param id
+   * @return
+   */
+  public static String encodePeerLeaveCommand(String id) {
+    return PEER_LEAVE + id;
+  }
+
+  public static String decodePeerLeaveCommand(String cmd) {
+    String id = null;
+    if (cmd.startsWith(PEER_LEAVE)) {
+      id = cmd.substring(PEER_LEAVE.length());
+    }
+    return id;
+  }
+
+  /**
+   * Relays a forwarded message to another server of a cluster, which
+   * delivers it to its own players only
+   *
+   * @param recipientPath
+   * @param message
+   * @return
+   */
+  public static String encodePeerForwardCommand(String recipientPath, String message) {
+    final String msg = new SequenceEncoder(recipientPath, '\t').append(message).getValue();
+    return PEER_FORWARD + msg;
+  }
+
+  /**
+   * @see #encodePeerForwardCommand
+   * @return recipientPath, message
+   */
+  public static String[] decodePeerForwardCommand(String cmd) {
+    String[] info = null;
+    if (cmd.startsWith(PEER_FORWARD)) {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(cmd.substring(PEER_FORWARD.length()), '\t');
+      info = new String[] {st.nextToken(), st.nextToken()};
+    }
+    return info;
+  }
+
+  /**
+   * Sent to the other servers of a cluster when a player connected to
+   * this one changes the information of a room
+   *
+   * @param roomPath
+   * @param info
+   * @return
+   */
+  public static String encodePeerRoomInfoCommand(String roomPath, String info) {
+    final String msg = new SequenceEncoder(roomPath, '\t').append(info == null ? "" : info).getValue(); //$NON-NLS-1$
+    return PEER_ROOM_INFO + msg;
+  }
+
+  /**
+   * @see #encodePeerRoomInfoCommand
+   * @return roomPath, info
+   */
+  public static String[] decodePeerRoomInfoCommand(String cmd) {
+    String[] info = null;
+    if (cmd.startsWith(PEER_ROOM_INFO)) {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(cmd.substring(PEER_ROOM_INFO.length()), '\t');
+      info = new String[] {st.nextToken(), st.nextToken("")}; //$NON-NLS-1$
+    }
+    return info;
+  }
+
+  /**
+   * Asks the server of a cluster to which a player is connected to move
+   * it, as when it is kicked by the owner of a room
+   *
+   * @param id
+   * @param newParentPath
+   * @return
+   */
+  public static String encodePeerMoveCommand(String id, String newParentPath) {
+    final String msg = new SequenceEncoder(id, '\t').append(newParentPath).getValue();
+    return PEER_MOVE + msg;
+  }
+
+  /**
+   * @see #encodePeerMoveCommand
+   * @return id, newParentPath
+   */
+  public static String[] decodePeerMoveCommand(String cmd) {
+    String[] info = null;
+    if (cmd.startsWith(PEER_MOVE)) {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(cmd.substring(PEER_MOVE.length()), '\t');
+      info = new String[] {st.nextToken(), st.nextToken()};
+    }
+    return info;
+  }
+
   /**
    * A dump of the current connections to the server. Includes a path name and
    * info for each player node
@@ -261,6 +429,107 @@ public class Protocol {
     return node;
   }
 
+  /**
+   * Sent by a client, before registering, to tell the server which
+   * optional parts of the protocol it understands. Servers which do not
+   * know the command ignore it.
+   *
+   * @param capabilities
+   * @return
+   */
+  public static String encodeCapabilitiesCommand(String... capabilities) {
+    final SequenceEncoder se = new SequenceEncoder(',');
+    for (String c : capabilities) {
+      se.append(c);
+    }
+    final String value = se.getValue();
+    return value == null ? CAPABILITIES : CAPABILITIES + value;
+  }
+
+  /**
+   * @see #encodeCapabilitiesCommand
+   * @return the capabilities
+   */
+  public static String[] decodeCapabilitiesCommand(String cmd) {
+    String[] caps = null;
+    if (cmd.startsWith(CAPABILITIES)) {
+      final List<String> l = new ArrayList<>();
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(
+        cmd.substring(CAPABILITIES.length()), ',');
+      while (st.hasMoreTokens()) {
+        l.add(st.nextToken());
+      }
+      caps = l.toArray(new String[0]);
+    }
+    return caps;
+  }
+
+  /**
+   * A change to the contents of the module, sent in place of
+   * {@link #LIST} and {@link #ROOM_INFO} to clients which have declared
+   * {@link #DELTA_CAPABILITY}
+   *
+   * @param delta
+   * @return
+   */
+  public static String encodeDeltaCommand(ContentsDelta delta) {
+    final SequenceEncoder se = new SequenceEncoder('\t')
+      .append(delta.getSeq())
+      .append(delta.isFull() ? FULL : ""); //$NON-NLS-1$
+    for (String[] e : delta.getEvents()) {
+      final SequenceEncoder event = new SequenceEncoder('=');
+      for (String arg : e) {
+        event.append(arg);
+      }
+      se.append(event.getValue());
+    }
+    return DELTA + se.getValue();
+  }
+
+  /**
+   * @see #encodeDeltaCommand
+   * @param cmd
+   * @return
+   */
+  public static ContentsDelta decodeDeltaCommand(String cmd) {
+    ContentsDelta delta = null;
+    if (cmd.startsWith(DELTA)) {
+      final SequenceEncoder.Decoder st =
+        new SequenceEncoder.Decoder(cmd.substring(DELTA.length()), '\t');
+      final long seq = st.nextLong(0);
+      final boolean full = FULL.equals(st.nextToken("")); //$NON-NLS-1$
+      final List<String[]> events = new ArrayList<>();
+      while (st.hasMoreTokens()) {
+        final List<String> e = new ArrayList<>();
+        final SequenceEncoder.Decoder st2 =
+          new SequenceEncoder.Decoder(st.nextToken(), '=');
+        while (st2.hasMoreTokens()) {
+          e.add(st2.nextToken());
+        }
+        // every event has a type and at least one argument
+        if (e.size() > 1) {
+          events.add(e.toArray(new String[0]));
+        }
+      }
+      delta = new ContentsDelta(seq, full, events);
+    }
+    return delta;
+  }
+
+  /**
+   * Sent by a client which has missed a {@link #DELTA}, asking for the full
+   * contents of its module
+   *
+   * @return
+   */
+  public static String encodeResyncRequest() {
+    return RESYNC;
+  }
+
+  public static boolean decodeResyncRequest(String cmd) {
+    return cmd.startsWith(RESYNC);
+  }
+
   public static boolean decodeRegisterRequest(String cmd) {
     return cmd.startsWith(REG_REQUEST);
   }
@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+/**
+ * A player connected to another server of a cluster. It takes its place
+ * in the tree like a {@link PlayerNode}, so that it is listed to local
+ * players, but sends nothing: messages for it are relayed once to its
+ * server over the {@link PeerLink}, which delivers them itself.
+ *
+ * @since 3.3.2
+ */
+public class RemotePlayerNode extends Node {
+  private final PeerLink link;
+
+  public RemotePlayerNode(PeerLink link, String id, String info) {
+    super(null, id, info);
+    this.link = link;
+  }
+
+  /**
+   * @return the link to the server to which the player is connected
+   */
+  public PeerLink getLink() {
+    return link;
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return true;
+  }
+
+  // the same player may briefly be reported over two links to its server,
+  // so proxies are distinct even when their ids are equal
+  @Override
+  public boolean equals(Object o) {
+    return this == o;
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(this);
+  }
+
+  @Override
+  public void send(String msg) {
+  }
+
+  @Override
+  public void send(EncodedLine line) {
+  }
+}
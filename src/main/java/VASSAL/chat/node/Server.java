@@ -19,6 +19,7 @@ package VASSAL.chat.node;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Properties;
@@ -66,7 +67,27 @@ public class Server extends Thread {
       reportURL = null;
     }
     if (!"true".equals(p.getProperty("test"))) { //$NON-NLS-1$ //$NON-NLS-2$
-      new Server(new AsynchronousServerNode(reportURL), port);
+      final AsynchronousServerNode rootNode;
+      final String peerPort = p.getProperty("peerPort"); //$NON-NLS-1$
+      if (peerPort != null) {
+        final String name = p.getProperty("name", //$NON-NLS-1$
+          InetAddress.getLocalHost().getHostName() + ":" + peerPort); //$NON-NLS-1$
+        final ClusteredServerNode cluster =
+          new ClusteredServerNode(reportURL, name);
+        new PeerServer(cluster, Integer.parseInt(peerPort),
+          PeerServer.parsePeers(p.getProperty("peers", ""))); //$NON-NLS-1$ //$NON-NLS-2$
+        rootNode = cluster;
+      }
+      else {
+        rootNode = new AsynchronousServerNode(reportURL);
+      }
+      ServerMetrics.register(rootNode.getMetrics(), port);
+      if ("nio".equals(p.getProperty("io"))) { //$NON-NLS-1$ //$NON-NLS-2$
+        new NioServer(rootNode, port);
+      }
+      else {
+        new Server(rootNode, port);
+      }
       new LockWatcher(1000L*60*30,1000L*60,port).start();
     }
     if (p.getProperty("test") != null) { //$NON-NLS-1$
@@ -0,0 +1,294 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what a {@link ServerNode} does, for watching a running server.
+ *
+ * <p>Counting costs a few uncontended additions per message, so it is
+ * always on. The counts are published over JMX by {@link #register}, under
+ * <code>VASSAL.chat.node:type=ServerMetrics</code>; rates are worked out
+ * when read, over at least {@link #RATE_INTERVAL}.</p>
+ *
+ * @since 3.3.2
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+  private static final Logger logger =
+    Logger.getLogger(ServerMetrics.class.getName());
+
+  /** The shortest interval over which rates are worked out, in ms. */
+  public static final long RATE_INTERVAL = 10000L;
+
+  private static class ModuleCounters {
+    final LongAdder in = new LongAdder();
+    final LongAdder out = new LongAdder();
+
+    // the counts and rates at the last sample
+    long sampledIn;
+    long sampledOut;
+    double inRate;
+    double outRate;
+  }
+
+  private final ServerNode server;
+
+  private final LongAdder opened = new LongAdder();
+  private final LongAdder closed = new LongAdder();
+
+  private final Map<String,ModuleCounters> modules = new ConcurrentHashMap<>();
+  private final LongAdder messagesIn = new LongAdder();
+  private final LongAdder messagesOut = new LongAdder();
+  private final LongAdder compressedBytesIn = new LongAdder();
+  private final LongAdder uncompressedBytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder resolutionNanos = new LongAdder();
+  private final LongAccumulator maxResolutionNanos =
+    new LongAccumulator(Math::max, 0);
+
+  private long lastSample = System.currentTimeMillis();
+
+  public ServerMetrics(ServerNode server) {
+    this.server = server;
+  }
+
+  /**
+   * Publishes metrics over JMX.
+   *
+   * @param metrics the metrics
+   * @param port the port on which the server listens, to tell servers in
+   * one process apart
+   */
+  public static void register(ServerMetrics metrics, int port) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+        new ObjectName("VASSAL.chat.node:type=ServerMetrics,port=" + port)); //$NON-NLS-1$
+    }
+    catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to publish server metrics", e); //$NON-NLS-1$
+    }
+  }
+
+  public void connectionOpened() {
+    opened.increment();
+  }
+
+  public void connectionClosed() {
+    closed.increment();
+  }
+
+  /**
+   * Records a forwarded message.
+   *
+   * @param module the module to which it was sent, or <code>*</code> if
+   * it was sent to several
+   * @param recipients the number of players to whom it was sent
+   * @param line the message
+   */
+  public void forwarded(String module, int recipients, EncodedLine line) {
+    final ModuleCounters c =
+      modules.computeIfAbsent(module, k -> new ModuleCounters());
+    c.in.increment();
+    c.out.add(recipients);
+
+    messagesIn.increment();
+    messagesOut.add(recipients);
+    if (line.getMessage().startsWith(NodeClient.ZIP_HEADER)) {
+      compressedBytesIn.add(line.length());
+    }
+    else {
+      uncompressedBytesIn.add(line.length());
+    }
+    bytesOut.add((long) recipients * line.length());
+  }
+
+  /** Records a recipient lookup answered from the cache. */
+  public void lookupHit() {
+    lookups.increment();
+    hits.increment();
+  }
+
+  /**
+   * Records a recipient lookup which resolved the path.
+   *
+   * @param nanos how long resolving took
+   */
+  public void lookupResolved(long nanos) {
+    lookups.increment();
+    resolutionNanos.add(nanos);
+    maxResolutionNanos.accumulate(nanos);
+  }
+
+  @Override
+  public long getConnections() {
+    return opened.sum() - closed.sum();
+  }
+
+  @Override
+  public long getConnectionsOpened() {
+    return opened.sum();
+  }
+
+  @Override
+  public int getPlayers() {
+    return server.getLeafDescendants().length;
+  }
+
+  @Override
+  public long getMessagesIn() {
+    return messagesIn.sum();
+  }
+
+  @Override
+  public long getMessagesOut() {
+    return messagesOut.sum();
+  }
+
+  @Override
+  public Map<String,Double> getMessagesInPerSecond() {
+    sample();
+    final Map<String,Double> m = new TreeMap<>();
+    for (Map.Entry<String,ModuleCounters> e : modules.entrySet()) {
+      m.put(e.getKey(), e.getValue().inRate);
+    }
+    return m;
+  }
+
+  @Override
+  public Map<String,Double> getMessagesOutPerSecond() {
+    sample();
+    final Map<String,Double> m = new TreeMap<>();
+    for (Map.Entry<String,ModuleCounters> e : modules.entrySet()) {
+      m.put(e.getKey(), e.getValue().outRate);
+    }
+    return m;
+  }
+
+  // works out rates, if the last sample is old enough
+  private synchronized void sample() {
+    final long now = System.currentTimeMillis();
+    final long elapsed = now - lastSample;
+    if (elapsed < RATE_INTERVAL) {
+      return;
+    }
+    lastSample = now;
+
+    final Map<String,ModuleCounters> idle = new HashMap<>();
+    for (Map.Entry<String,ModuleCounters> e : modules.entrySet()) {
+      final ModuleCounters c = e.getValue();
+      final long in = c.in.sum();
+      final long out = c.out.sum();
+      c.inRate = 1000.0 * (in - c.sampledIn) / elapsed;
+      c.outRate = 1000.0 * (out - c.sampledOut) / elapsed;
+      if (in == c.sampledIn && server.getChild(e.getKey()) == null) {
+        idle.put(e.getKey(), c);
+      }
+      c.sampledIn = in;
+      c.sampledOut = out;
+    }
+
+    // forget modules which have gone quiet and away
+    for (Map.Entry<String,ModuleCounters> e : idle.entrySet()) {
+      modules.remove(e.getKey(), e.getValue());
+    }
+  }
+
+  @Override
+  public long getCompressedBytesIn() {
+    return compressedBytesIn.sum();
+  }
+
+  @Override
+  public long getUncompressedBytesIn() {
+    return uncompressedBytesIn.sum();
+  }
+
+  @Override
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  @Override
+  public long getRecipientLookups() {
+    return lookups.sum();
+  }
+
+  @Override
+  public long getRecipientCacheHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public double getMeanResolutionMicros() {
+    final long misses = lookups.sum() - hits.sum();
+    return misses == 0 ? 0.0 : resolutionNanos.sum() / 1000.0 / misses;
+  }
+
+  @Override
+  public double getMaxResolutionMicros() {
+    return maxResolutionNanos.get() / 1000.0;
+  }
+
+  @Override
+  public long getQueuedBytes() {
+    long total = 0;
+    for (Node n : server.getLeafDescendants()) {
+      if (n instanceof PlayerNode) {
+        total += ((PlayerNode) n).getQueuedBytes();
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public long getMaxQueuedBytes() {
+    long max = 0;
+    for (Node n : server.getLeafDescendants()) {
+      if (n instanceof PlayerNode) {
+        max = Math.max(max, ((PlayerNode) n).getQueuedBytes());
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public long getQueueHighWaterBytes() {
+    return OutboundQueue.getHighWaterBytes();
+  }
+
+  @Override
+  public long getSlowConsumerEvictions() {
+    return OutboundQueue.getEvictions();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.Map;
+
+/**
+ * The figures which {@link ServerMetrics} publishes over JMX.
+ *
+ * @since 3.3.2
+ */
+public interface ServerMetricsMXBean {
+  /** @return the number of open connections */
+  long getConnections();
+
+  /** @return the number of connections opened since the server started */
+  long getConnectionsOpened();
+
+  /** @return the number of registered players */
+  int getPlayers();
+
+  /** @return the number of messages forwarded */
+  long getMessagesIn();
+
+  /** @return the number of copies of forwarded messages sent to players */
+  long getMessagesOut();
+
+  /**
+   * @return for each module, the messages forwarded per second over the
+   * last sampling interval
+   */
+  Map<String,Double> getMessagesInPerSecond();
+
+  /**
+   * @return for each module, the copies sent per second over the last
+   * sampling interval
+   */
+  Map<String,Double> getMessagesOutPerSecond();
+
+  /** @return the bytes of forwarded messages which clients compressed */
+  long getCompressedBytesIn();
+
+  /** @return the bytes of forwarded messages which were not compressed */
+  long getUncompressedBytesIn();
+
+  /** @return the bytes of forwarded messages sent to players */
+  long getBytesOut();
+
+  /** @return the number of recipient lookups for forwarded messages */
+  long getRecipientLookups();
+
+  /** @return the number of lookups answered from the cache */
+  long getRecipientCacheHits();
+
+  /** @return the mean time to resolve a path not in the cache */
+  double getMeanResolutionMicros();
+
+  /** @return the longest time taken to resolve a path */
+  double getMaxResolutionMicros();
+
+  /** @return the bytes waiting to be written, over all connections */
+  long getQueuedBytes();
+
+  /** @return the most bytes waiting to be written to one connection */
+  long getMaxQueuedBytes();
+
+  /**
+   * @return the most bytes which have waited to be written to one
+   * connection since the server started
+   */
+  long getQueueHighWaterBytes();
+
+  /** @return the number of connections closed for not keeping up */
+  long getSlowConsumerEvictions();
+}
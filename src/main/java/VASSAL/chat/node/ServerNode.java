@@ -21,9 +21,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import VASSAL.tools.PropertiesEncoder;
@@ -32,6 +34,9 @@ import VASSAL.tools.SequenceEncoder;
 public class ServerNode extends Node {
   private static final Logger logger = Logger.getLogger(ServerNode.class.getName());
   private SendContentsTask sendContents;
+  private final ServerMetrics metrics = new ServerMetrics(this);
+  private final java.util.Map<String,ModuleContents> contents =
+    new ConcurrentHashMap<>();
 
   public ServerNode() {
     super(null, null, null);
@@ -40,12 +45,130 @@ public class ServerNode extends Node {
     t.schedule(sendContents, 0, 1000);
   }
 
-  public synchronized void forward(String senderPath, String msg) {
-    MsgSender target = getMsgSender(senderPath);
-    target.send(msg);
+  public void forward(String senderPath, String msg) {
+    deliver(getRecipients(senderPath), new EncodedLine(msg));
   }
 
-  public synchronized MsgSender getMsgSender(String path) {
+  /**
+   * Sends a forwarded message to its recipients, and counts it.
+   */
+  protected void deliver(Recipients target, EncodedLine line) {
+    target.send(line);
+    if (target.module != null) {
+      metrics.forwarded(target.module == this ? "*" : target.module.getId(), //$NON-NLS-1$
+                        target.senders.length, line);
+    }
+  }
+
+  /**
+   * @return the counts of what this server has done
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** The most paths whose recipients are cached. */
+  protected static final int MAX_CACHED_PATHS = 4096;
+
+  /**
+   * The recipients of messages sent to a path, as resolved when the part
+   * of the tree which the path covers had the given version. A message is
+   * encoded once and the same bytes are queued for every recipient.
+   */
+  protected static class Recipients implements MsgSender {
+    protected final Node module;
+    protected final int version;
+    protected final Node[] senders;
+
+    protected Recipients(Node module, int version, Node[] senders) {
+      this.module = module;
+      this.version = version;
+      this.senders = senders;
+    }
+
+    @Override
+    public void send(String msg) {
+      send(new EncodedLine(msg));
+    }
+
+    public void send(EncodedLine line) {
+      for (Node sender : senders) {
+        sender.send(line);
+      }
+    }
+  }
+
+  private final java.util.Map<String,Recipients> recipients =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Gets the recipients of messages sent to a path.
+   *
+   * <p>Recipients are cached by path, and resolved again only when a node
+   * has been added to or removed from the module to which the path leads,
+   * or, for paths which start with a wildcard, from anywhere.</p>
+   */
+  public MsgSender getMsgSender(String path) {
+    return getRecipients(path);
+  }
+
+  protected Recipients getRecipients(String path) {
+    // the node whose version covers everything the path can reach
+    final String first = moduleId(path);
+    final Node scope = first == null || "*".equals(first) || first.startsWith("~") ? //$NON-NLS-1$ //$NON-NLS-2$
+      this : getChild(first);
+    if (scope == null) {
+      return new Recipients(null, 0, new Node[0]);
+    }
+
+    Recipients r = recipients.get(path);
+    if (r != null && r.module == scope && r.version == scope.getVersion()) {
+      metrics.lookupHit();
+      return r;
+    }
+
+    // read the version first, so that changes made while resolving cause
+    // the path to be resolved again next time
+    final long start = System.nanoTime();
+    final int version = scope.getVersion();
+    r = new Recipients(scope, version, flatten(resolve(path)));
+    metrics.lookupResolved(System.nanoTime() - start);
+
+    if (recipients.size() >= MAX_CACHED_PATHS) {
+      recipients.clear();
+    }
+    recipients.put(path, r);
+    return r;
+  }
+
+  /*
+   * Replaces plain nodes with the players below them, so that sending
+   * to a room is one pass over its players. Subclasses of Node may send
+   * differently, so are kept as they are.
+   */
+  private static Node[] flatten(Node[] target) {
+    final ArrayList<Node> l = new ArrayList<>();
+    for (Node n : target) {
+      addRecipients(n, l);
+    }
+    return l.toArray(new Node[0]);
+  }
+
+  private static void addRecipients(Node n, List<Node> l) {
+    if (n.getClass() == Node.class) {
+      for (Node child : n.getChildren()) {
+        addRecipients(child, l);
+      }
+    }
+    else {
+      l.add(n);
+    }
+  }
+
+  /**
+   * @return the nodes to which a path leads
+   */
+  protected Node[] resolve(String path) {
     Node[] target = new Node[]{this};
     SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(path, '/');
     while (st.hasMoreTokens()) {
@@ -85,43 +208,130 @@ public class ServerNode extends Node {
       }
     }
 
-    final MsgSender[] senders = Arrays.copyOf(target, target.length);
+    return target;
+  }
+
+  /*
+   * Locking: the tree is copy-on-write, so forwarding and other reads take
+   * no locks. Changes to the rooms and players of a module are made while
+   * holding the lock of that module, so that independent modules never
+   * contend. The lock of the root is held only to add or remove a module,
+   * and only ever after a module lock, never before one.
+   */
 
-    return new MsgSender() {
-      @Override
-      public void send(String msg) {
-        for (MsgSender sender : senders) {
-          sender.send(msg);
+  /**
+   * Gets the module with the given id, creating it if necessary. The
+   * module may be removed as soon as this returns; see {@link #isAttached}.
+   */
+  protected Node getOrCreateModule(String id) {
+    Node module = getChild(id);
+    if (module == null) {
+      synchronized (this) {
+        module = getChild(id);
+        if (module == null) {
+          module = new Node(this, id, null);
+          add(module);
         }
       }
-    };
+    }
+    return module;
   }
 
-  public synchronized void disconnect(Node target) {
-    Node mod = getModule(target);
-    if (mod != null) {
-      Node room = target.getParent();
-      room.remove(target);
-      if (room.getChildren().length == 0) {
-        room.getParent().remove(room);
+  /**
+   * @return true if the module is still part of this tree; a module
+   * removed while its lock was awaited must not be changed
+   */
+  protected boolean isAttached(Node module) {
+    return module.getId() != null && getChild(module.getId()) == module;
+  }
+
+  private static String moduleId(String path) {
+    return new SequenceEncoder.Decoder(path, '/').nextToken(null);
+  }
+
+  // a global order for pairs of module locks
+  private static final Object TIE_LOCK = new Object();
+
+  /**
+   * Runs an action while holding the locks of two modules, acquired in a
+   * consistent order.
+   */
+  protected void lockBoth(Node a, Node b, Runnable action) {
+    if (a == b) {
+      synchronized (a) {
+        action.run();
       }
-      if (mod.getChildren().length == 0) {
-        remove(mod);
+      return;
+    }
+
+    final int ha = System.identityHashCode(a);
+    final int hb = System.identityHashCode(b);
+    if (ha == hb) {
+      synchronized (TIE_LOCK) {
+        synchronized (a) {
+          synchronized (b) {
+            action.run();
+          }
+        }
+      }
+    }
+    else {
+      final Node first = ha < hb ? a : b;
+      final Node second = ha < hb ? b : a;
+      synchronized (first) {
+        synchronized (second) {
+          action.run();
+        }
+      }
+    }
+  }
+
+  public void disconnect(Node target) {
+    while (true) {
+      final Node mod = getModule(target);
+      if (mod == null) {
+        return;
+      }
+
+      synchronized (mod) {
+        // the target may have moved to another module meanwhile
+        if (getModule(target) != mod) {
+          continue;
+        }
+
+        Node room = target.getParent();
+        room.remove(target);
+        if (room.getChildren().length == 0) {
+          room.getParent().remove(room);
+        }
+        if (mod.getChildren().length == 0) {
+          synchronized (this) {
+            remove(mod);
+          }
+        }
+        sendContents(mod);
+        return;
       }
-      sendContents(mod);
     }
   }
 
-  protected synchronized void sendContents(Node module) {
+  protected void sendContents(Node module) {
     sendContents.markChanged(module);
   }
 
-  public synchronized void registerNode(String parentPath, Node newNode) {
-    Node newParent = Node.build(this, parentPath);
-    newParent.add(newNode);
-    Node module = getModule(newParent);
-    if (module != null) {
-      sendContents(module);
+  public void registerNode(String parentPath, Node newNode) {
+    while (true) {
+      final Node module = getOrCreateModule(moduleId(parentPath));
+      synchronized (module) {
+        if (!isAttached(module)) {
+          continue;
+        }
+
+        Node newParent = Node.build(this, parentPath);
+        newParent.add(newNode);
+        sendContents(module);
+        return;
+      }
     }
   }
 
@@ -133,20 +343,29 @@ public class ServerNode extends Node {
     return module;
   }
 
-  public synchronized void move(Node target, String newParentPath) {
-    Node oldMod = getModule(target);
-    Node newParent = Node.build(this, newParentPath);
-    newParent.add(target);
-    Node mod = getModule(newParent);
-    if (mod != null) {
-      sendContents(mod);
-    }
-    if (oldMod != mod && oldMod != null) {
-      sendContents(oldMod);
+  public void move(Node target, String newParentPath) {
+    final boolean[] done = new boolean[1];
+    while (!done[0]) {
+      final Node newMod = getOrCreateModule(moduleId(newParentPath));
+      final Node oldMod = getModule(target);
+
+      lockBoth(newMod, oldMod == null ? newMod : oldMod, () -> {
+        if (!isAttached(newMod) || getModule(target) != oldMod) {
+          return;
+        }
+
+        Node newParent = Node.build(this, newParentPath);
+        newParent.add(target);
+        sendContents(newMod);
+        if (oldMod != newMod && oldMod != null) {
+          sendContents(oldMod);
+        }
+        done[0] = true;
+      });
     }
   }
 
-  public synchronized void updateInfo(Node target) {
+  public void updateInfo(Node target) {
     Node mod = getModule(target);
     if (mod != null) {
       sendContents(mod);
@@ -162,7 +381,20 @@ public class ServerNode extends Node {
    * @param kickeeId
    *          Id of Player to be kicked
    */
-  public synchronized void kick(PlayerNode kicker, String kickeeId) {
+  public void kick(PlayerNode kicker, String kickeeId) {
+    final Node mod = getModule(kicker);
+    if (mod == null) {
+      return;
+    }
+
+    synchronized (mod) {
+      if (getModule(kicker) == mod) {
+        kickInModule(kicker, kickeeId);
+      }
+    }
+  }
+
+  private void kickInModule(PlayerNode kicker, String kickeeId) {
     // Check the kicker owns the room he is in
     final Node roomNode = kicker.getParent();
     String roomOwnerId;
@@ -186,7 +418,65 @@ public class ServerNode extends Node {
     move(kickeeNode, defaultRoomNode.getPath());
   }
 
-  private static class SendContentsTask extends TimerTask {
+  /**
+   * Sends the players of a module its current contents. Players who have
+   * declared {@link Protocol#DELTA_CAPABILITY} are sent what has changed
+   * since the last report, or everything if they need to resynchronize;
+   * others are sent a full {@link Protocol#LIST} and
+   * {@link Protocol#ROOM_INFO}. Each message is encoded once for all the
+   * players who receive it.
+   *
+   * @param module the module
+   * @param resync true to send everything to all players
+   */
+  protected void reportContents(Node module, boolean resync) {
+    logger.fine("Sending contents of " + module.getId()); //$NON-NLS-1$
+    final Node[] players = module.getLeafDescendants();
+    final Node[] rooms = module.getChildren();
+
+    if (players.length == 0) {
+      contents.remove(module.getId());
+      return;
+    }
+
+    final ModuleContents c =
+      contents.computeIfAbsent(module.getId(), k -> new ModuleContents());
+    final ContentsDelta delta = c.update(rooms);
+
+    EncodedLine deltaLine = null;
+    EncodedLine fullLine = null;
+    EncodedLine listLine = null;
+    EncodedLine roomInfoLine = null;
+    for (Node p : players) {
+      if (p instanceof PlayerNode && ((PlayerNode) p).isDeltaCapable()) {
+        if (((PlayerNode) p).takeResync() || resync) {
+          if (fullLine == null) {
+            fullLine = new EncodedLine(Protocol.encodeDeltaCommand(c.full()));
+          }
+          p.send(fullLine);
+        }
+        else if (delta != null) {
+          if (deltaLine == null) {
+            deltaLine = new EncodedLine(Protocol.encodeDeltaCommand(delta));
+            logger.finer(deltaLine.getMessage());
+          }
+          p.send(deltaLine);
+        }
+      }
+      else {
+        if (listLine == null) {
+          listLine = new EncodedLine(Protocol.encodeListCommand(players));
+          roomInfoLine = new EncodedLine(Protocol.encodeRoomsInfo(rooms));
+          logger.finer(listLine.getMessage());
+          logger.finer(roomInfoLine.getMessage());
+        }
+        p.send(listLine);
+        p.send(roomInfoLine);
+      }
+    }
+  }
+
+  private class SendContentsTask extends TimerTask {
     // FIXME: should modules be wrapped by Collections.synchronizedMap()?
     private Set<Node> modules = new HashSet<>();
 
@@ -203,15 +493,7 @@ public class ServerNode extends Node {
         s.addAll(modules);
       }
       for (Node module : s) {
-        logger.fine("Sending contents of " + module.getId()); //$NON-NLS-1$
-        Node[] players = module.getLeafDescendants();
-        Node[] rooms = module.getChildren();
-        String listCommand = Protocol.encodeListCommand(players);
-        module.send(listCommand);
-        logger.finer(listCommand);
-        String roomInfo = Protocol.encodeRoomsInfo(rooms);
-        module.send(roomInfo);
-        logger.finer(roomInfo);
+        reportContents(module, false);
       }
       synchronized (modules) {
         modules.clear();
@@ -17,24 +17,64 @@
  */
 package VASSAL.chat.node;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Reads and writes lines of UTF-8 text on a socket, with a thread for
+ * each direction.
+ *
+ * <p>Both directions may be switched to a deflate stream, kept for the
+ * life of the connection, by an exchange of {@link Protocol#DEFLATE} lines
+ * (see {@link #enableCompression}). Everything after the line which a side
+ * sends is compressed, and flushed with {@link Deflater#SYNC_FLUSH}
+ * whenever that side has nothing more queued.</p>
+ */
 public class SocketHandler {
+  private static final Logger logger =
+    Logger.getLogger(SocketHandler.class.getName());
+
+  /** The deflate level for compressed connections. */
+  protected static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+  /**
+   * The longest line which may be read, in bytes. A longer one closes the
+   * connection. Defaults to the system property
+   * <code>VASSAL.chat.maxLineLength</code>, in kilobytes.
+   */
+  public static final int MAX_LINE_LENGTH =
+    Integer.getInteger("VASSAL.chat.maxLineLength", 16384) * 1024;
+
   private Socket sock;
   private SocketWatcher handler;
-  private BufferedReader reader;
-  private BufferedWriter writer;
-  private BlockingQueue<String> writeQueue = new LinkedBlockingQueue<>();
+  private InputStream rawIn;
+  private InputStream reader;
+  private OutputStream rawOut;
+  private OutputStream writer;
+  private byte[] line = new byte[256];
+  private boolean skipLF = false;
+  private boolean firstLine = true;
+  private boolean inflating = false;
+  private volatile boolean acceptOffer = false;
+  private final AtomicBoolean offered = new AtomicBoolean();
+  private volatile EncodedLine deflateMarker;
+  private volatile boolean deflating = false;
+  private final OutboundQueue writeQueue;
+  private final AtomicBoolean evicted = new AtomicBoolean();
   private boolean isOpen = true;
   private Thread readThread = null;
   private Thread writeThread = null;
@@ -42,10 +82,29 @@ public class SocketHandler {
   private static final String SIGN_OFF = "!BYE"; //$NON-NLS-1$
 
   public SocketHandler(Socket sock, SocketWatcher handler) throws IOException {
+    this(sock, handler, new OutboundQueue());
+  }
+
+  /**
+   * @param sock the connection
+   * @param handler receives the lines read
+   * @param writeQueue the queue of lines to be written
+   */
+  public SocketHandler(Socket sock, SocketWatcher handler,
+                       OutboundQueue writeQueue) throws IOException {
     this.sock = sock;
     this.handler = handler;
-    reader = new BufferedReader(new InputStreamReader(sock.getInputStream(), StandardCharsets.UTF_8));
-    writer = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream(), StandardCharsets.UTF_8));
+    this.writeQueue = writeQueue;
+    reader = rawIn = new BufferedInputStream(sock.getInputStream());
+    writer = rawOut = new BufferedOutputStream(sock.getOutputStream());
+  }
+
+  /**
+   * For subclasses which do their own I/O, overriding all public methods.
+   */
+  protected SocketHandler(SocketWatcher handler) {
+    this.handler = handler;
+    this.writeQueue = new OutboundQueue();
   }
 
   public void start() {
@@ -63,8 +122,15 @@ public class SocketHandler {
       public void run() {
         String line;
         try {
-          while ((line = reader.readLine()) != null) {
-            if (SIGN_OFF.equals(line)) {
+          while ((line = readLine()) != null) {
+            if (isDeflateOffer(line)) {
+              reader = new BufferedInputStream(
+                new InflaterInputStream(rawIn, new Inflater(true)));
+              inflating = true;
+              enableCompression();
+              continue;
+            }
+            else if (SIGN_OFF.equals(line)) {
               break;
             }
             else if (line.length() > 0) {
@@ -101,11 +167,11 @@ public class SocketHandler {
     final Runnable r = new Runnable() {
       @Override
       public void run() {
-        String line;
+        EncodedLine line;
         try {
           while (true) {
             try {
-              line = writeQueue.poll(2, TimeUnit.MINUTES);
+              line = writeQueue.poll(TimeUnit.MINUTES.toMillis(2));
             }
             catch (InterruptedException e) {
               // FIXME: should we really ignore this?!
@@ -113,10 +179,14 @@ public class SocketHandler {
               continue;
             }
 
-            if (line != null) {
+            if (line == OutboundQueue.CLOSED) {
+              // evicted: nothing more will be sent
+              break;
+            }
+            else if (line != null) {
               // send the message we took off the queue
               writeNext(line);
-              if (SIGN_OFF.equals(line)) {
+              if (SIGN_OFF.equals(line.getMessage())) {
                 break;
               }
             }
@@ -144,23 +214,140 @@ public class SocketHandler {
     return t;
   }
 
-  private void writeNext(String line) throws IOException {
-    writer.write(line + '\n');
-    writer.flush();
+  private void writeNext(EncodedLine line) throws IOException {
+    line.writeTo(writer);
+    if (line == deflateMarker) {
+      writer.flush();
+      writer = new DeflaterOutputStream(
+        rawOut, new Deflater(COMPRESSION_LEVEL, true), 8192, true);
+      deflating = true;
+    }
+    // lines still queued go out with this one
+    else if (writeQueue.isEmpty()) {
+      writer.flush();
+    }
+  }
+
+  // reads a line as BufferedReader.readLine() would
+  private String readLine() throws IOException {
+    int length = 0;
+    while (true) {
+      final int b = reader.read();
+      if (b < 0) {
+        return length > 0 ? decode(length) : null;
+      }
+      else if (b == '\n' && skipLF) {
+        skipLF = false;
+      }
+      else if (b == '\n' || b == '\r') {
+        skipLF = b == '\r';
+        return decode(length);
+      }
+      else {
+        skipLF = false;
+        if (length == line.length) {
+          if (length >= MAX_LINE_LENGTH) {
+            throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+          }
+          line = Arrays.copyOf(line, Math.min(2 * line.length, MAX_LINE_LENGTH));
+        }
+        line[length++] = (byte) b;
+      }
+    }
+  }
+
+  private String decode(int length) {
+    return new String(line, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /*
+   * A DEFLATE line switches the input to compressed if this side has
+   * offered compression, or if it is the first line and this side accepts
+   * an offer. Otherwise it is an ordinary message.
+   */
+  private boolean isDeflateOffer(String msg) {
+    final boolean first = firstLine;
+    firstLine = false;
+    return !inflating && Protocol.DEFLATE.equals(msg) &&
+      (offered.get() || (first && acceptOffer));
+  }
+
+  /**
+   * Offers to compress this connection: sends a {@link Protocol#DEFLATE}
+   * line, after which everything written is compressed. The other side
+   * answers with its own DEFLATE line, after which everything it writes is
+   * compressed. Servers call this when a client declares
+   * {@link Protocol#DEFLATE_CAPABILITY}.
+   */
+  public void enableCompression() {
+    if (offered.compareAndSet(false, true)) {
+      deflateMarker = new EncodedLine(Protocol.DEFLATE);
+      writeLine(deflateMarker);
+    }
+  }
+
+  /**
+   * Accepts an offer of compression from the other side, if it is the
+   * first line received. Clients call this before starting, and then
+   * declare {@link Protocol#DEFLATE_CAPABILITY}.
+   */
+  public void acceptCompression() {
+    acceptOffer = true;
+  }
+
+  /**
+   * @return true if what is written is being compressed
+   */
+  public boolean isCompressing() {
+    return deflating;
   }
 
   public void writeLine(String pMessage) {
-    try {
-      writeQueue.put(pMessage);
+    writeLine(new EncodedLine(pMessage));
+  }
+
+  /**
+   * Queues a message which has already been encoded, such as one being
+   * sent to many connections.
+   *
+   * @param line the message
+   */
+  public void writeLine(EncodedLine line) {
+    if (!writeQueue.add(line)) {
+      evict();
     }
-    catch (InterruptedException e) {
-      // The queue can have Integer.MAX_VALUE elements, so if put() ever
-      // blocks and gets interrupted, everything is hosed anyway so it
-      // doesn't matter what we do here.
-      e.printStackTrace();
+  }
+
+  /*
+   * The client is not reading what is sent to it. The write thread may be
+   * blocked writing, holding the stream, so close the socket first.
+   */
+  private void evict() {
+    if (evicted.compareAndSet(false, true)) {
+      logger.warning("Closing connection to " + getInetAddress() + ", which is not keeping up"); //$NON-NLS-1$ //$NON-NLS-2$
+      try {
+        sock.close();
+      }
+      catch (IOException ignore) {
+      }
+      closeSocket();
     }
   }
 
+  /**
+   * @return the number of lines waiting to be written
+   */
+  public int getQueuedLines() {
+    return writeQueue.size();
+  }
+
+  /**
+   * @return the number of bytes waiting to be written
+   */
+  public long getQueuedBytes() {
+    return writeQueue.getBytes();
+  }
+
   public void close() {
     writeLine(SIGN_OFF);
   }
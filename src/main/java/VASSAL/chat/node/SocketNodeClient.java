@@ -62,9 +62,23 @@ public class SocketNodeClient extends NodeClient implements SocketWatcher {
   protected void initializeConnection() throws UnknownHostException, IOException {
     Socket s = new Socket(serverInfo.getHostName(), serverInfo.getPort());
     sender = new SocketHandler(s, this);
+    sender.acceptCompression();
     sender.start();
   }
 
+  @Override
+  protected String[] getCapabilities() {
+    return new String[]{
+      Protocol.DELTA_CAPABILITY, Protocol.DEFLATE_CAPABILITY
+    };
+  }
+
+  @Override
+  protected boolean isCompressing() {
+    final SocketHandler s = sender;
+    return s != null && s.isCompressing();
+  }
+
   @Override
   protected void closeConnection() {
     SocketHandler s = sender;
@@ -21,6 +21,7 @@ import VASSAL.build.GameModule;
 import VASSAL.build.module.GameState;
 import VASSAL.build.module.GlobalOptions;
 import VASSAL.build.module.map.HighlightLastMoved;
+import VASSAL.counters.BoundsTracker;
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Properties;
 
@@ -52,6 +53,9 @@ public class AddPiece extends Command {
       GameModule.getGameModule().getGameState().addPiece(target);
       target.setState(state);
       if (target.getMap() != null) {
+        final BoundsTracker bounds = new BoundsTracker();
+        bounds.addPiece(target);
+        bounds.repaint();
         HighlightLastMoved.setLastMoved(target);
         if (GlobalOptions.getInstance().centerOnOpponentsMove()
             && !Boolean.TRUE.equals(target.getProperty(Properties.INVISIBLE_TO_ME))) {
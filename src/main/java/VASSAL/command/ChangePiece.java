@@ -20,6 +20,7 @@ package VASSAL.command;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.GlobalOptions;
 import VASSAL.counters.BoundsTracker;
+import VASSAL.counters.FreeRotator;
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Properties;
 import VASSAL.counters.StateMergeable;
@@ -75,6 +76,7 @@ public class ChangePiece extends Command {
         target.setState(newState);
       }
       bounds.addPiece(target);
+      FreeRotator.prefetch(target);
       bounds.repaint();
       if (target.getMap() != null
         && GlobalOptions.getInstance().centerOnOpponentsMove()
@@ -712,6 +712,7 @@ public class ConfigureTree extends JTree implements PropertyChangeListener, Mous
       child.removeFrom(parent);
       parent.remove(child);
       ((DefaultTreeModel) getModel()).removeNodeFromParent(getTreeNode(child));
+      VASSAL.build.module.Map.invalidateBoardLayers();
       notifyStateChanged(true);
       return true;
     }
@@ -774,6 +775,7 @@ public class ConfigureTree extends JTree implements PropertyChangeListener, Mous
       c.addTo(parent);
     }
 
+    VASSAL.build.module.Map.invalidateBoardLayers();
     notifyStateChanged(true);
     return succeeded;
   }
@@ -67,6 +67,8 @@ public class EditPropertiesAction extends AbstractAction {
         @Override
         public void windowClosed(WindowEvent e) {
           openWindows.remove(target);
+          // the edit may have changed how a board or grid looks
+          VASSAL.build.module.Map.invalidateBoardLayers();
           if (tree != null && target instanceof ConfigureTree.Mutable) {
             tree.nodeUpdated(target);
           }
@@ -35,6 +35,7 @@ import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Arrays;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -51,7 +52,9 @@ import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.map.MapShader;
 import VASSAL.build.module.map.boardPicker.Board;
 import VASSAL.build.module.map.boardPicker.board.GeometricGrid;
+import VASSAL.build.module.map.boardPicker.board.HexGrid;
 import VASSAL.build.module.map.boardPicker.board.MapGrid;
+import VASSAL.build.module.map.boardPicker.board.SquareGrid;
 import VASSAL.command.ChangeTracker;
 import VASSAL.command.Command;
 import VASSAL.configure.BooleanConfigurer;
@@ -65,6 +68,7 @@ import VASSAL.i18n.Resources;
 import VASSAL.i18n.TranslatablePiece;
 import VASSAL.tools.NamedKeyStroke;
 import VASSAL.tools.SequenceEncoder;
+import VASSAL.tools.image.AreaMaskCache;
 
 /**
  * @author Scott Giese sgiese@sprintmail.com
@@ -188,25 +192,26 @@ public class AreaOfEffect extends Decorator implements TranslatablePiece, MapSha
       // The transparency is only drawn on a Map.View component. Only the
       // GamePiece is drawn within other windows (Counter Palette, etc.).
       if (obs instanceof Map.View && getMap() != null) {
-        Area a = getArea();      
-        if (a != null) {
-          final Graphics2D g2d = (Graphics2D) g;
+        final Graphics2D g2d = (Graphics2D) g;
 
-          final Color oldColor = g2d.getColor();
-          g2d.setColor(transparencyColor);
+        final Color oldColor = g2d.getColor();
+        g2d.setColor(transparencyColor);
 
-          final Composite oldComposite = g2d.getComposite();
-          g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, transparencyLevel));
+        final Composite oldComposite = g2d.getComposite();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, transparencyLevel));
 
-          if (zoom != 1.0) {
-            a = new Area(AffineTransform.getScaleInstance(zoom,zoom).createTransformedShape(a));
+        if (!drawMask(g2d, zoom)) {
+          Area a = getArea();
+          if (a != null) {
+            if (zoom != 1.0) {
+              a = new Area(AffineTransform.getScaleInstance(zoom,zoom).createTransformedShape(a));
+            }
+            g2d.fill(a);
           }
-          g2d.fill(a);
-
-
-          g2d.setColor(oldColor);
-          g2d.setComposite(oldComposite);
         }
+
+        g2d.setColor(oldColor);
+        g2d.setComposite(oldComposite);
       }
     }
 
@@ -214,6 +219,50 @@ public class AreaOfEffect extends Decorator implements TranslatablePiece, MapSha
     piece.draw(g, x, y, obs, zoom);
   }
 
+  /**
+   * Draws the area from a cached mask, when the area is the same shape
+   * wherever the piece is: a circle, or a range on a hex or square grid.
+   *
+   * @return <code>false</code> if the area must be drawn as a shape instead
+   */
+  protected boolean drawMask(Graphics2D g2d, double zoom) {
+    final Map map = getMap();
+    final Point mapPosition = getPosition();
+    final int myRadius = getRadius();
+
+    final Board board = map.findBoard(mapPosition);
+    final MapGrid grid = board == null ? null : board.getGrid();
+
+    final AreaMaskCache.Mask mask;
+    if (grid instanceof HexGrid || grid instanceof SquareGrid) {
+      final double mag = board.getMagnification();
+      mask = AreaMaskCache.getMask(
+        Arrays.asList(grid, myRadius, mag), zoom, transparencyColor,
+        () -> ((GeometricGrid) grid).getGridShape(new Point(0, 0), myRadius)
+               .createTransformedArea(AffineTransform.getScaleInstance(mag, mag))
+      );
+    }
+    else if (grid == null) {
+      mask = AreaMaskCache.getMask(
+        Arrays.asList(AreaOfEffect.class, myRadius), zoom, transparencyColor,
+        () -> new Area(new Ellipse2D.Double(-myRadius, -myRadius,
+                                            myRadius * 2, myRadius * 2))
+      );
+    }
+    else {
+      return false;
+    }
+
+    if (mask == null) {
+      return false;
+    }
+
+    g2d.drawImage(mask.image,
+                  (int) Math.round(mapPosition.x * zoom) + mask.x,
+                  (int) Math.round(mapPosition.y * zoom) + mask.y, null);
+    return true;
+  }
+
   protected Area getArea() {
     Area a;
     final Map map = getMap();
@@ -332,6 +381,22 @@ public class AreaOfEffect extends Decorator implements TranslatablePiece, MapSha
     return a;
   }
 
+  @Override
+  public Object getShadeKey(MapShader shader) {
+    Object innerKey = null;
+    final MapShader.ShadedPiece shaded = (MapShader.ShadedPiece) Decorator.getDecorator(piece,MapShader.ShadedPiece.class);
+    if (shaded != null) {
+      innerKey = shaded.getShadeKey(shader);
+      if (innerKey == null) {
+        return null;
+      }
+    }
+    // the resolved radius, or -1 if this trait adds nothing to the shade
+    final int r = (alwaysActive || active) &&
+      shader.getConfigureName().equals(mapShaderName) ? getRadius() : -1;
+    return Arrays.asList(innerKey, r);
+  }
+
   protected static class TraitEditor implements PieceEditor {
     protected JPanel panel;
     protected ColorConfigurer transparencyColorValue;
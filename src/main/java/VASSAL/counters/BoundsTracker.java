@@ -17,22 +17,40 @@
  */
 package VASSAL.counters;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.Rectangle;
+import java.util.HashMap;
 
 import VASSAL.build.module.Map;
+import VASSAL.build.module.map.MapShader;
+import VASSAL.build.module.properties.ChangePropertyCommand;
+import VASSAL.command.Command;
 
 /**
  * Records the bounding boxes of GamePieces.  Use addPiece() to
  * record the bounding box of a GamePiece at a certain time.  Use
  * repaint() to repaint the appropriate areas of the maps to which the
  * added pieces belonged.
+ *
+ * <p>The boxes recorded for each map are combined, so that changing
+ * a single piece repaints only the area around it. Pieces which shade
+ * the map (see {@link MapShader.ShadedPiece}) can affect any part of it,
+ * so they cause the whole map to be repainted, as do commands which
+ * change a property (see {@link #addCommand}). Targeted repainting may
+ * be disabled with the system property
+ * <code>VASSAL.dirtyRegions=false</code>.</p>
  */
 public class BoundsTracker {
-  private Set<Map> maps;
+  /** The margin, in map coordinates, added around each dirty region. */
+  protected static final int MARGIN = 2;
+
+  private static final boolean DIRTY_REGIONS = Boolean.parseBoolean(
+    System.getProperty("VASSAL.dirtyRegions", "true"));
+
+  // a null region means the whole map
+  private java.util.Map<Map,Rectangle> maps;
 
   public BoundsTracker() {
-    maps = new HashSet<>();
+    maps = new HashMap<>();
   }
 
   public void clear() {
@@ -40,14 +58,102 @@ public class BoundsTracker {
   }
 
   public void addPiece(GamePiece p) {
-    if (p.getMap() != null) {
-      maps.add(p.getMap());
+    final Map m = p.getMap();
+    if (m == null) {
+      return;
+    }
+
+    if (maps.containsKey(m) && maps.get(m) == null) {
+      return;
+    }
+
+    final Rectangle r = DIRTY_REGIONS ? regionOf(m, p) : null;
+    if (r == null) {
+      maps.put(m, null);
+    }
+    else {
+      final Rectangle old = maps.get(m);
+      if (old == null) {
+        maps.put(m, r);
+      }
+      else {
+        old.add(r);
+      }
+    }
+  }
+
+  /**
+   * @return the area of the map which must be repainted if the piece
+   * changes, or <code>null</code> if the whole map must be repainted
+   */
+  protected Rectangle regionOf(Map m, GamePiece p) {
+    // the layout of a whole stack may change when one of its pieces does
+    final GamePiece top = p.getParent() != null ? p.getParent() : p;
+
+    if (top instanceof Stack) {
+      for (GamePiece sp : ((Stack) top).asList()) {
+        if (isShaded(sp)) {
+          return null;
+        }
+      }
+    }
+    else if (isShaded(top)) {
+      return null;
     }
+
+    final Rectangle r = m.boundingBoxOf(top);
+    if (r == null) {
+      return null;
+    }
+
+    r.grow(MARGIN, MARGIN);
+    return r;
+  }
+
+  /**
+   * Notes a command produced by the tracked pieces. A command which changes
+   * a global or map property may change the look of any piece which
+   * follows that property, so the tracked maps are then repainted whole.
+   *
+   * @param c the command, or <code>null</code>
+   */
+  public void addCommand(Command c) {
+    if (changesProperty(c)) {
+      for (Map m : maps.keySet()) {
+        maps.put(m, null);
+      }
+    }
+  }
+
+  protected static boolean changesProperty(Command c) {
+    if (c == null) {
+      return false;
+    }
+    if (c instanceof ChangePropertyCommand) {
+      return true;
+    }
+    for (Command sub : c.getSubCommands()) {
+      if (changesProperty(sub)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  protected boolean isShaded(GamePiece p) {
+    return Decorator.getDecorator(
+      Decorator.getOutermost(p), MapShader.ShadedPiece.class) != null;
   }
 
   public void repaint() {
-    for (Map m : maps) {
-      m.repaint();
+    for (java.util.Map.Entry<Map,Rectangle> e : maps.entrySet()) {
+      if (e.getValue() == null) {
+        e.getKey().repaint();
+      }
+      else {
+        // Swing coalesces the regions repainted before the next paint
+        e.getKey().repaint(new Rectangle(e.getValue()));
+      }
     }
   }
 }
@@ -206,6 +206,7 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
   public void setState(String newState) {
     SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(newState, '\t');
     mySetState(st.nextToken());
+    invalidateParentLayout();
     try {
       piece.setState(st.nextToken());
     }
@@ -313,10 +314,26 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
   @Override
   public Command keyEvent(KeyStroke stroke) {
     Command c = myKeyEvent(stroke);
+    if (c != null) {
+      // the trait may now look different
+      invalidateParentLayout();
+    }
     return c == null ? piece.keyEvent(stroke)
       : c.append(piece.keyEvent(stroke));
   }
 
+  /**
+   * Notes that this trait may have changed its bounds or visibility other
+   * than through {@link #setState} or {@link #keyEvent}, so that the layout
+   * of its stack must be computed again.
+   */
+  protected void invalidateParentLayout() {
+    final Stack parent = getParent();
+    if (parent != null) {
+      parent.invalidateLayout();
+    }
+  }
+
   @Override
   public String getId() {
     return piece.getId();
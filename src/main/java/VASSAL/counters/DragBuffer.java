@@ -23,8 +23,6 @@ import java.awt.Point;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -32,11 +30,13 @@ import java.util.List;
 import javax.swing.JFrame;
 
 import VASSAL.build.module.Map;
+import VASSAL.tools.LinkedIdentityHashSet;
 
 public class DragBuffer {
   private final static DragBuffer theBuffer = new DragBuffer();
 
-  private final List<GamePiece> pieces = new ArrayList<>();
+  private final LinkedIdentityHashSet<GamePiece> pieces =
+    new LinkedIdentityHashSet<>();
   private MouseEvent lastRelease;
   private Component dropTarget;
   private MouseListener dropHandler;
@@ -144,7 +144,7 @@ public class DragBuffer {
    * this {@link DragBuffer}
    */
   public List<GamePiece> asList() {
-    return Collections.unmodifiableList(pieces);
+    return pieces.asList();
   }
 
   public PieceIterator getIterator() {
@@ -549,7 +549,11 @@ public class Embellishment extends Decorator implements TranslatablePiece {
       if (v <= 0) v = 1;
       if (v > nValues) v = nValues;
 
-      value = isActive() ? v : -v;
+      v = isActive() ? v : -v;
+      if (v != value) {
+        value = v;
+        invalidateParentLayout();
+      }
     }
     catch (NumberFormatException e) {
       reportDataError(this, Resources.getString("Error.non_number_error"), "followProperty["+propertyName+"]="+val, e);
@@ -20,6 +20,7 @@ package VASSAL.counters;
 import java.awt.AlphaComposite;
 import java.awt.Component;
 import java.awt.Cursor;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
@@ -38,6 +39,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -46,6 +49,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
 import VASSAL.build.GameModule;
 import VASSAL.build.module.Map;
@@ -62,9 +66,11 @@ import VASSAL.i18n.Resources;
 import VASSAL.i18n.TranslatablePiece;
 import VASSAL.tools.NamedKeyStroke;
 import VASSAL.tools.SequenceEncoder;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
 import VASSAL.tools.imageop.GamePieceOp;
 import VASSAL.tools.imageop.Op;
 import VASSAL.tools.imageop.RotateScaleOp;
+import VASSAL.tools.opcache.OpCache;
 
 /**
  * A Decorator that rotates a GamePiece to an arbitrary angle
@@ -114,6 +120,32 @@ public class FreeRotator extends Decorator
   protected GamePieceOp gpOp;
   protected java.util.Map<Double,RotateScaleOp> rotOp = new HashMap<>();
 
+  /*
+   * When the inner piece changes state, its rotated image is rendered
+   * again on a worker thread, and the previous image is drawn on the map
+   * until the new one is ready. Rendering may be kept on the event
+   * dispatch thread with -DVASSAL.piecePrefetch=false.
+   */
+  private static final boolean PREFETCH = Boolean.parseBoolean(
+    System.getProperty("VASSAL.piecePrefetch", "true"));
+
+  private static final ExecutorService prefetcher =
+    Executors.newFixedThreadPool(OpCache.THREADS,
+      new DaemonThreadFactory(FreeRotator.class.getSimpleName()));
+
+  // the image last drawn, and what it was drawn for
+  protected Image lastImage;
+  protected double lastImageAngle;
+  protected double lastImageZoom;
+  protected Dimension lastInnerSize;
+
+  // the piece op being rendered by the prefetcher, if any
+  protected GamePieceOp pendingOp;
+
+  // the appearance of the inner piece, for sharing rotated images
+  protected String imageKey;
+  protected GamePieceOp imageKeyOp;
+
   protected double tempAngle, startAngle;
   protected Point pivot;
   protected boolean drawGhost;
@@ -288,17 +320,29 @@ public class FreeRotator extends Decorator
       RotateScaleOp op;
 
       if (getGpOp() != null && getGpOp().isChanged()) {
+        if (canDrawStale(angle, zoom, obs)) {
+          prefetch();
+          final Rectangle r = boundingBox();
+          g.drawImage(lastImage,
+            x + (int) (zoom * r.x), y + (int) (zoom * r.y), obs);
+          return;
+        }
+
         gpOp = Op.piece(piece);
         bounds.clear();
         rotOp.clear();
-        op = Op.rotateScale(gpOp, angle, zoom);
+        op = getRotateOp(gpOp, angle, zoom);
         rotOp.put(angle, op);
       }
       else {
         op = rotOp.get(angle);
         if (op == null || op.getScale() != zoom) {
-          op = Op.rotateScale(gpOp, angle, zoom);
+          op = getRotateOp(gpOp, angle, zoom);
           rotOp.put(angle, op);
+          if (validAngles.length > 1) {
+            RotatedImagePool.precompute(getImageKey(gpOp), this::copyInner,
+                                        validAngles, zoom, prefetcher);
+          }
         }
       }
 
@@ -307,6 +351,160 @@ public class FreeRotator extends Decorator
       final Image img = op.getImage();
       if (img != null) {
         g.drawImage(img, x + (int) (zoom * r.x), y + (int) (zoom * r.y), obs);
+
+        lastImage = img;
+        lastImageAngle = angle;
+        lastImageZoom = zoom;
+        lastInnerSize = piece.boundingBox().getSize();
+      }
+    }
+  }
+
+  /**
+   * Gets the key identifying the appearance of the inner piece, as
+   * rendered by the given op.
+   */
+  protected String getImageKey(GamePieceOp gp) {
+    if (gp != imageKeyOp) {
+      imageKey = RotatedImagePool.imageKey(piece, gp);
+      imageKeyOp = gp;
+    }
+    return imageKey;
+  }
+
+  /**
+   * Gets the rotated image op from the pool shared by identical pieces.
+   */
+  protected RotateScaleOp getRotateOp(GamePieceOp gp, double angle,
+                                      double zoom) {
+    return RotatedImagePool.get(getImageKey(gp), this::copyInner,
+                                angle, zoom);
+  }
+
+  /**
+   * Copies the inner piece, so that its image may be rendered on any
+   * thread and by any piece which looks the same. The whole piece is
+   * copied, so that the copy sees the properties of the outer traits, and
+   * placed where this piece is, but not added to the map.
+   */
+  protected GamePiece copyInner() {
+    final GamePiece outer = Decorator.getOutermost(this);
+    final int i = rotators(outer).indexOf(this);
+    final GamePiece copy = PieceCloner.getInstance().clonePiece(outer);
+    final List<FreeRotator> copies = rotators(copy);
+    if (i >= 0 && i < copies.size() &&
+        copies.get(i).myGetType().equals(myGetType())) {
+      copy.setPosition(getPosition());
+      copy.setMap(getMap());
+      return copies.get(i).getInner();
+    }
+
+    final GamePiece inner = PieceCloner.getInstance().clonePiece(piece);
+    inner.setPosition(getPosition());
+    inner.setMap(getMap());
+    return inner;
+  }
+
+  private static List<FreeRotator> rotators(GamePiece p) {
+    final List<FreeRotator> l = new ArrayList<>();
+    while (p instanceof Decorator) {
+      if (p instanceof FreeRotator) {
+        l.add((FreeRotator) p);
+      }
+      p = p instanceof UsePrototype ?
+        ((UsePrototype) p).getExpandedInner() : ((Decorator) p).getInner();
+    }
+    return l;
+  }
+
+  /**
+   * The previous image may stand in for the current one on the map only,
+   * since only the map is repainted when the new image is ready, and only
+   * if the inner piece has not changed size, so that the image is placed
+   * as before.
+   */
+  protected boolean canDrawStale(double angle, double zoom, Component obs) {
+    return PREFETCH &&
+           lastImage != null &&
+           lastImageAngle == angle &&
+           lastImageZoom == zoom &&
+           obs instanceof Map.View &&
+           ((Map.View) obs).getMap() == getMap() &&
+           piece.boundingBox().getSize().equals(lastInnerSize);
+  }
+
+  /**
+   * Starts rendering the rotated image for the current state of the inner
+   * piece on a worker thread, unless it is already being rendered. The
+   * worker renders a copy of the piece made here, never the piece itself.
+   * Changes made while rendering are coalesced into one more rendering.
+   */
+  public void prefetch() {
+    if (!PREFETCH || pendingOp != null || lastImage == null ||
+        getAngle() != lastImageAngle ||
+        getGpOp() == null || !getGpOp().isChanged()) {
+      return;
+    }
+
+    final GamePieceOp gp = Op.piece(piece);
+    final double angle = lastImageAngle;
+    final RotateScaleOp rop = getRotateOp(gp, angle, lastImageZoom);
+    pendingOp = gp;
+
+    prefetcher.execute(() -> {
+      boolean ok;
+      try {
+        rop.getImage();
+        ok = true;
+      }
+      catch (RuntimeException e) {
+        ok = false;
+      }
+
+      final boolean done = ok;
+      SwingUtilities.invokeLater(() -> prefetched(gp, angle, rop, done));
+    });
+  }
+
+  protected void prefetched(GamePieceOp gp, double angle,
+                            RotateScaleOp rop, boolean ok) {
+    pendingOp = null;
+
+    if (ok && !gp.isChanged()) {
+      gpOp = gp;
+      bounds.clear();
+      rotOp.clear();
+      rotOp.put(angle, rop);
+    }
+    else {
+      prefetch();
+    }
+
+    final Map m = getMap();
+    if (m != null) {
+      final GamePiece outer = Decorator.getOutermost(this);
+      final GamePiece top = outer.getParent() != null ? outer.getParent() : outer;
+      final Rectangle r = m.boundingBoxOf(top);
+      if (r != null) {
+        m.repaint(r);
+      }
+    }
+  }
+
+  /**
+   * Starts rendering the rotated images of a piece which has changed.
+   *
+   * @param p the piece
+   */
+  public static void prefetch(GamePiece p) {
+    if (!PREFETCH) {
+      return;
+    }
+
+    for (GamePiece d = Decorator.getOutermost(p); d instanceof Decorator;
+         d = ((Decorator) d).getInner()) {
+      if (d instanceof FreeRotator) {
+        ((FreeRotator) d).prefetch();
       }
     }
   }
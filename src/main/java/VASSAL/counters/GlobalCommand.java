@@ -180,8 +180,10 @@ public class GlobalCommand {
       if (filter == null || filter.accept(p)) {
         tracker.addPiece(p);
         p.setProperty(Properties.SNAPSHOT, PieceCloner.getInstance().clonePiece(p));
-        command.append(p.keyEvent(stroke));
+        final Command c = p.keyEvent(stroke);
+        command.append(c);
         tracker.addPiece(p);
+        tracker.addCommand(c);
         selectedCount++;
       }
     }
@@ -26,16 +26,17 @@ import java.util.List;
 
 import VASSAL.command.Command;
 import VASSAL.command.NullCommand;
+import VASSAL.tools.LinkedIdentityHashSet;
 
 
 public class KeyBuffer {
   private static KeyBuffer theBuffer;
-  private List<GamePiece> pieces;
+  private LinkedIdentityHashSet<GamePiece> pieces;
   private BoundsTracker bounds;
   private Comparator<GamePiece> pieceSorter = new PieceSorter();
 
   private KeyBuffer() {
-    pieces = new ArrayList<>();
+    pieces = new LinkedIdentityHashSet<>();
     bounds = new BoundsTracker();
   }
 
@@ -52,10 +53,7 @@ public class KeyBuffer {
   }
 
   public void add(GamePiece p) {
-// FIXME: should we use a HashSet or LinkedHashSet instead to make contains()
-// checks faster? Is insertion order important?
-    if (p != null && !pieces.contains(p)) {
-      pieces.add(p);
+    if (p != null && pieces.add(p)) {
       p.setProperty(Properties.SELECTED, Boolean.TRUE);
     }
   }
@@ -95,7 +93,7 @@ public class KeyBuffer {
 
     // Copy contents into new list, because contents may change
     // as a result of key commands
-    ArrayList<GamePiece> targets = new ArrayList<>(pieces);
+    ArrayList<GamePiece> targets = new ArrayList<>(pieces.asList());
     // Reverse the order if this is a "Move Up" or "Move to Bottom" keystroke
     if (targets.size() > 0) {
       GamePiece top = targets.get(0);
@@ -113,16 +111,18 @@ public class KeyBuffer {
       comm = comm.append(c2);
       bounds.addPiece(p);
     }
+    bounds.addCommand(comm);
     bounds.repaint();
     return comm;
   }
 
   /**
    * @return an unmodifiable {@link List} of {@link GamePiece}s contained in
-   * this {@link KeyBuffer}
+   * this {@link KeyBuffer}, in the order in which they were selected or
+   * last sorted
    */
   public List<GamePiece> asList() {
-    return Collections.unmodifiableList(pieces);
+    return pieces.asList();
   }
 
   public Iterator<GamePiece> getPiecesIterator() {
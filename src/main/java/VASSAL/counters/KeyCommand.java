@@ -142,6 +142,7 @@ public class KeyCommand extends AbstractAction {
           GameModule.getGameModule().sendAndLog(c);
         }
         t.addPiece(outer);
+        t.addCommand(c);
         t.repaint();
       }
     }
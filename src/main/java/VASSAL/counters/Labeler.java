@@ -339,6 +339,8 @@ public class Labeler extends Decorator implements TranslatablePiece, Loopable {
       imagePainter.setSource(null);
       lastCachedLabel = null;
       position = null;
+      // the label may follow a property, so its size changes unannounced
+      invalidateParentLayout();
     }
 
     if (imagePainter.getSource() == null &&
@@ -0,0 +1,243 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import VASSAL.tools.imageop.GamePieceOp;
+import VASSAL.tools.imageop.Op;
+import VASSAL.tools.imageop.RotateScaleOp;
+
+/**
+ * A pool of rotated piece images shared by all {@link FreeRotator}s.
+ *
+ * <p>Pieces which look the same share one rotated image for each angle and
+ * zoom level. Two pieces look the same when their inner pieces have the
+ * same type, the same visible state and the same evaluated labels and
+ * layers; see {@link #imageKey}. Angles and
+ * zoom levels are quantized, so that nearly equal ones share an image.</p>
+ *
+ * <p>The pool holds ops rather than images; the images themselves are
+ * held, and bounded, by the image op cache. The ops render a detached
+ * copy of the first piece to request them, made on the event dispatch
+ * thread, rather than that piece itself. The copy never changes, so the
+ * ops render the same image whenever the cache evicts it, and may render
+ * it on any thread.</p>
+ *
+ * @since 3.3.2
+ */
+public class RotatedImagePool {
+
+  /** The maximum number of rotated images in the pool. */
+  protected static final int MAX_ENTRIES = 1024;
+
+  /** Angles are rounded to a multiple of this many degrees. */
+  protected static final double ANGLE_STEP = 0.25;
+
+  /** Zoom levels are rounded to a multiple of this. */
+  protected static final double ZOOM_STEP = 0.001;
+
+  private RotatedImagePool() {}
+
+  private static final class Key {
+    private final String image;
+    private final long angle;
+    private final long zoom;
+
+    private Key(String image, double angle, double zoom) {
+      this.image = image;
+      this.angle = Math.round(angle / ANGLE_STEP);
+      this.zoom = Math.round(zoom / ZOOM_STEP);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key k = (Key) o;
+      return angle == k.angle && zoom == k.zoom && image.equals(k.image);
+    }
+
+    @Override
+    public int hashCode() {
+      return (image.hashCode() * 31 + Long.hashCode(angle)) * 31 +
+             Long.hashCode(zoom);
+    }
+  }
+
+  private static final Map<Key,RotateScaleOp> pool =
+    new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key,RotateScaleOp> e) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  // ops rendering the detached copies, by image key
+  private static final Map<String,GamePieceOp> sources =
+    new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,GamePieceOp> e) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  // images and zoom levels for which all angles have been requested
+  private static final Map<Key,Boolean> precomputed =
+    new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key,Boolean> e) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  /**
+   * Gets the key identifying the appearance of a piece.
+   *
+   * <p>Labels and layers may be drawn from expressions and properties whose
+   * values are not part of the visible state, so the text of each label and
+   * the level of each layer, as drawn, are part of the key.</p>
+   *
+   * @param inner the piece to be rotated
+   * @param gp the op rendering <code>inner</code>
+   * @return the key
+   */
+  public static String imageKey(GamePiece inner, GamePieceOp gp) {
+    final StringBuilder key = new StringBuilder(inner.getType())
+      .append('\0').append(gp.getState());
+
+    for (GamePiece p = inner; p instanceof Decorator;
+         p = ((Decorator) p).getInner()) {
+      Object drawn = null;
+      if (p instanceof Labeler) {
+        drawn = ((Labeler) p).getLocalizedLabel();
+      }
+      else if (p instanceof Embellishment) {
+        drawn = p.getProperty(((Embellishment) p).name + Embellishment.LEVEL);
+      }
+      else if (p instanceof Embellishment0) {
+        drawn = p.getProperty(((Embellishment0) p).name + Embellishment0.LEVEL);
+      }
+
+      if (drawn != null) {
+        key.append('\0').append(drawn);
+      }
+    }
+
+    return key.toString();
+  }
+
+  /**
+   * Rounds an angle to the precision of the pool.
+   *
+   * @param angle the angle, in degrees
+   * @return the rounded angle
+   */
+  public static double quantizeAngle(double angle) {
+    return Math.round(angle / ANGLE_STEP) * ANGLE_STEP;
+  }
+
+  /**
+   * Gets the rotated image op for a piece image. This must be called on
+   * the event dispatch thread, where the piece may be copied.
+   *
+   * @param imageKey the key identifying the appearance of the piece
+   * @param copy supplies a detached copy of the piece, used if the pool
+   *    has no op rendering that appearance
+   * @param angle the angle, in degrees
+   * @param zoom the zoom level
+   * @return the op
+   */
+  public static synchronized RotateScaleOp get(String imageKey,
+                                               Supplier<GamePiece> copy,
+                                               double angle,
+                                               double zoom) {
+    final Key key = new Key(imageKey, angle, zoom);
+    RotateScaleOp op = pool.get(key);
+    if (op == null) {
+      GamePieceOp src = sources.get(imageKey);
+      if (src == null) {
+        src = Op.piece(copy.get());
+        sources.put(imageKey, src);
+      }
+      op = Op.rotateScale(src, quantizeAngle(angle), zoom);
+      pool.put(key, op);
+    }
+    return op;
+  }
+
+  /**
+   * Renders a piece image at each of the given angles in the background,
+   * unless that has been done already at this zoom level.
+   *
+   * This must be called on the event dispatch thread.
+   *
+   * @param imageKey the key identifying the appearance of the piece
+   * @param copy supplies a detached copy of the piece
+   * @param angles the angles, in degrees
+   * @param zoom the zoom level
+   * @param ex the executor on which to render the images
+   */
+  public static void precompute(String imageKey, Supplier<GamePiece> copy,
+                                double[] angles, double zoom, Executor ex) {
+    final List<RotateScaleOp> ops = new ArrayList<>(angles.length);
+
+    synchronized (RotatedImagePool.class) {
+      final Key key = new Key(imageKey, 0.0, zoom);
+      if (precomputed.containsKey(key)) {
+        return;
+      }
+      precomputed.put(key, Boolean.TRUE);
+
+      for (double angle : angles) {
+        ops.add(get(imageKey, copy, angle, zoom));
+      }
+    }
+
+    // the ops render only the detached copy, so need not be on the EDT
+    ex.execute(() -> {
+      for (RotateScaleOp op : ops) {
+        try {
+          op.getImage();
+        }
+        catch (RuntimeException re) {
+          // the image will be rendered when it is drawn
+        }
+      }
+    });
+  }
+
+  /** Empties the pool. */
+  public static synchronized void clear() {
+    pool.clear();
+    sources.clear();
+    precomputed.clear();
+  }
+}
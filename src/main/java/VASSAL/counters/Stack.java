@@ -54,6 +54,9 @@ public class Stack implements GamePiece, StateMergeable {
   private String id;
   private boolean expanded = false;
 
+  // incremented whenever the layout of this stack may have changed
+  private int layoutVersion = 0;
+
   protected Map map;
   private static StackMetrics defaultMetrics;
 
@@ -144,6 +147,7 @@ public class Stack implements GamePiece, StateMergeable {
         contents[i] = contents[i + 1];
       }
       expanded = expanded && pieceCount > 1;
+      invalidateLayout();
     }
   }
 
@@ -176,11 +180,31 @@ public class Stack implements GamePiece, StateMergeable {
 
     contents[index] = p;
     pieceCount++;
+    invalidateLayout();
   }
 
   public void removeAll() {
     pieceCount = 0;
     expanded = false;
+    invalidateLayout();
+  }
+
+  /**
+   * Notes that the layout of this stack may have changed, because its
+   * contents, their order or their appearance have changed.
+   *
+   * @see StackMetrics#getContents
+   */
+  public void invalidateLayout() {
+    ++layoutVersion;
+  }
+
+  /**
+   * @return a number which changes whenever the layout of this stack may
+   * have changed
+   */
+  public int getLayoutVersion() {
+    return layoutVersion;
   }
 
   public int indexOf(GamePiece p) {
@@ -461,6 +485,7 @@ public class Stack implements GamePiece, StateMergeable {
 
   public void setExpanded(boolean b) {
     expanded = b && getPieceCount() > 1;
+    invalidateLayout();
   }
 
   @Override
@@ -479,6 +504,7 @@ public class Stack implements GamePiece, StateMergeable {
     final String mapId = st.nextToken();
     setPosition(new Point(st.nextInt(0), st.nextInt(0)));
     pieceCount = 0;
+    invalidateLayout();
 
     final GameState gs = GameModule.getGameModule().getGameState();
     while (st.hasMoreTokens()) {
@@ -60,6 +60,7 @@ import VASSAL.build.module.metadata.ModuleMetaData;
 import VASSAL.configure.DirectoryConfigurer;
 import VASSAL.preferences.Prefs;
 import VASSAL.preferences.ReadOnlyPrefs;
+import VASSAL.tools.DataArchive;
 import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.ThrowableUtils;
 import VASSAL.tools.WarningDialog;
@@ -98,11 +99,21 @@ public abstract class AbstractLaunchAction extends AbstractAction {
   protected static final int FAILSAFE_INITIAL_HEAP = 64;
   protected static final int FAILSAFE_MAXIMUM_HEAP = 128;
 
+  //
+  // tile cache size budget, in MB
+  //
+  protected static final int DEFAULT_TILE_CACHE_LIMIT = 4096;
+  protected static final long TILE_CACHE_LIMIT;
+
   static {
     // Determine how much physical RAM this machine has
     // Assume 4GB if we can't determine how much RAM there is
     final long physMemoryBytes = MemoryUtils.getPhysicalMemory();
     PHYS_MEMORY = physMemoryBytes < 0 ? 4096 : (int)(physMemoryBytes >> 20);
+
+    // The tile cache budget may be overridden by -DVASSAL.tileCacheLimit
+    TILE_CACHE_LIMIT = ((long) Integer.getInteger(
+      "VASSAL.tileCacheLimit", DEFAULT_TILE_CACHE_LIMIT)) << 20;
   }
 
   protected final Window window;
@@ -237,6 +248,32 @@ e.printStackTrace();
     fc.addChoosableFileFilter(new ModuleFileFilter());
   }
 
+  /**
+   * Gets the paths of the images in a module and its extensions.
+   *
+   * @param module the module file
+   * @param exts the extension files
+   * @return the image paths, as used as names in the tile index
+   *
+   * @throws IOException if an archive cannot be read
+   */
+  protected Set<String> getImagePaths(File module, List<File> exts)
+                                                           throws IOException {
+    final Set<String> ipaths = new HashSet<>();
+    final List<File> archives = new ArrayList<>();
+    archives.add(module);
+    archives.addAll(exts);
+
+    for (File f : archives) {
+      try (DataArchive archive = new DataArchive(f.getAbsolutePath())) {
+        for (String iname : archive.getImageNameSet()) {
+          ipaths.add(DataArchive.IMAGE_DIR + iname);
+        }
+      }
+    }
+    return ipaths;
+  }
+
   protected class LaunchTask extends SwingWorker<Void,Void> {
     protected final int id = nextId.getAndIncrement();
 
@@ -263,14 +300,23 @@ e.printStackTrace();
         final String hstr =
           DigestUtils.sha1Hex(meta.getName() + "_" + meta.getVersion());
 
-        final File cdir = new File(Info.getConfDir(), "tiles/" + hstr);
+        // tiles are shared by all modules, keyed by image content
+        final File cdir = new File(Info.getConfDir(), "tiles");
+
+        // the module and its extensions share an index
+        final ExtensionsManager mgr = new ExtensionsManager(lr.module);
+        final List<File> exts = mgr.getActiveExtensions();
+        final Set<String> ipaths = getImagePaths(lr.module, exts);
 
         final TilingHandler th = new TilingHandler(
           aname,
           cdir,
+          hstr,
           new Dimension(256, 256),
           PHYS_MEMORY,
-          nextId.getAndIncrement()
+          TILE_CACHE_LIMIT,
+          nextId.getAndIncrement(),
+          ipaths
         );
 
         try {
@@ -282,14 +328,16 @@ e.printStackTrace();
         }
 
         // slice tiles for extensions
-        final ExtensionsManager mgr = new ExtensionsManager(lr.module);
-        for (File ext : mgr.getActiveExtensions()) {
+        for (File ext : exts) {
           final TilingHandler eth = new TilingHandler(
             ext.getAbsolutePath(),
             cdir,
+            hstr,
             new Dimension(256, 256),
             PHYS_MEMORY,
-            nextId.getAndIncrement()
+            TILE_CACHE_LIMIT,
+            nextId.getAndIncrement(),
+            ipaths
           );
 
           try {
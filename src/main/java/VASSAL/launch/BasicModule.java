@@ -54,6 +54,7 @@ import VASSAL.chat.ChatServerFactory;
 import VASSAL.chat.DynamicClient;
 import VASSAL.chat.DynamicClientFactory;
 import VASSAL.chat.HybridClient;
+import VASSAL.chat.SynchSnapshot;
 import VASSAL.chat.jabber.JabberClientFactory;
 import VASSAL.chat.node.NodeClientFactory;
 import VASSAL.chat.peer2peer.P2PClientFactory;
@@ -190,6 +191,7 @@ public class BasicModule extends GameModule {
     Prefs.getGlobalPrefs().addOption(Resources.getString("Chat.server"), config); //$NON-NLS-1$
     serverControls = new ChatServerControls();
     serverControls.addTo(this);
+    new SynchSnapshot().addTo(this);
   }
 
   protected void initLogger() {
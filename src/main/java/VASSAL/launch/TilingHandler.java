@@ -33,9 +33,15 @@ import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -47,10 +53,11 @@ import org.slf4j.LoggerFactory;
 import VASSAL.Info;
 import VASSAL.tools.DataArchive;
 import VASSAL.tools.image.ImageUtils;
-import VASSAL.tools.image.tilecache.ImageTileDiskCache;
+import VASSAL.tools.image.tilecache.ContentAddressedTileCache;
+import VASSAL.tools.image.tilecache.TileCacheCollector;
+import VASSAL.tools.image.tilecache.TileIndex;
 import VASSAL.tools.image.tilecache.TileUtils;
 import VASSAL.tools.io.FileArchive;
-import VASSAL.tools.io.FileStore;
 import VASSAL.tools.io.IOUtils;
 import VASSAL.tools.io.InputOutputStreamPump;
 import VASSAL.tools.io.InputStreamPump;
@@ -73,38 +80,74 @@ public class TilingHandler {
 
   protected final String aname;
   protected final File cdir;
+  protected final String ikey;
   protected final Dimension tdim;
   protected final int maxheap_limit;
+  protected final long cache_limit;
   protected final int pid;
+  protected final Set<String> ipaths;
+
+  protected final TileCacheCollector collector;
 
   /**
    * Creates a {@code TilingHandler}.
    *
    * @param aname the path to the ZIP archive
-   * @param cdir the tile cache diretory
+   * @param cdir the tile cache diretory, shared by all modules
+   * @param ikey the name of the tile index for the module
+   * @param tdim the tile size
+   * @param mhlim the maximum heap for the tiling process, in MB
+   * @param climit the size budget for the tile cache, in bytes
+   * @param pid the id of the child process
+   */
+  public TilingHandler(String aname, File cdir, String ikey,
+                       Dimension tdim, int mhlim, long climit, int pid) {
+    this(aname, cdir, ikey, tdim, mhlim, climit, pid, null);
+  }
+
+  /**
+   * Creates a {@code TilingHandler} which also removes from the index the
+   * images which no longer exist.
+   *
+   * @param aname the path to the ZIP archive
+   * @param cdir the tile cache diretory, shared by all modules
+   * @param ikey the name of the tile index for the module
    * @param tdim the tile size
+   * @param mhlim the maximum heap for the tiling process, in MB
+   * @param climit the size budget for the tile cache, in bytes
    * @param pid the id of the child process
+   * @param ipaths the paths of the images in the module and all of its
+   * extensions which share the index, or {@code null} to keep every image
    */
-  public TilingHandler(String aname, File cdir,
-                       Dimension tdim, int mhlim, int pid) {
+  public TilingHandler(String aname, File cdir, String ikey,
+                       Dimension tdim, int mhlim, long climit, int pid,
+                       Set<String> ipaths) {
     this.aname = aname;
     this.cdir = cdir;
+    this.ikey = ikey;
     this.tdim = tdim;
     this.maxheap_limit = mhlim;
+    this.cache_limit = climit;
     this.pid = pid;
+    this.ipaths = ipaths;
+
+    collector = new TileCacheCollector(cdir);
   }
 
-  protected boolean isFresh(FileArchive archive,
-                            FileStore tcache, String ipath)
+  protected boolean isFresh(FileArchive archive, String ipath, long itime)
                                                            throws IOException {
-    // look at the first 1:1 tile
-    final String tpath = TileUtils.tileName(ipath, 0, 0, 1);
-
-    // check whether the image is older than the tile
+    // check whether the image is older than the index
     final long imtime = archive.getMTime(ipath);
 
     return imtime > 0 && // time in archive might be goofy
-           imtime <= tcache.getMTime(tpath);
+           imtime <= itime;
+  }
+
+  protected String getContentHash(DataArchive archive, String ipath)
+                                                           throws IOException {
+    try (InputStream in = archive.getInputStream(ipath)) {
+      return TileUtils.contentHash(in);
+    }
   }
 
   protected Dimension getImageSize(DataArchive archive, String ipath)
@@ -117,10 +160,17 @@ public class TilingHandler {
 
   protected Pair<Integer,Integer> findImages(
     DataArchive archive,
-    FileStore tcache,
+    TileIndex index,
+    long itime,
     List<String> multi,
+    Map<String,Dimension> sizes,
     List<Pair<String,IOException>> failed) throws IOException
   {
+    // forget images which are gone, so their tile sets can be collected
+    if (ipaths != null && index.retain(ipaths)) {
+      logger.info("Removed missing images from tile index {}", ikey);
+    }
+
     // build a list of all multi-tile images and count tiles
     final Set<String> images = archive.getImageNameSet();
 
@@ -129,15 +179,29 @@ public class TilingHandler {
 
     final FileArchive fa = archive.getArchive();
 
+    // content hashes queued for tiling; identical images are tiled once
+    final Set<String> queued = new HashSet<>();
+
     for (String iname : images) {
       final String ipath = DataArchive.IMAGE_DIR + iname;
 
-      // skip images with fresh tiles
-      if (isFresh(fa, tcache, ipath)) continue;
+      // skip unchanged images with existing tiles
+      final String ohash = index.get(ipath);
+      if (ohash != null && isFresh(fa, ipath, itime) &&
+          collector.exists(ohash)) continue;
 
       final Dimension idim;
+      final String chash;
       try {
         idim = getImageSize(archive, ipath);
+
+        // only multi-tile images are tiled and indexed
+        if (TileUtils.tileCountAtScale(idim, tdim, 1) <= 1) {
+          index.remove(ipath);
+          continue;
+        }
+
+        chash = getContentHash(archive, ipath);
       }
       catch (IOException e) {
         // skip images we can't read
@@ -145,14 +209,15 @@ public class TilingHandler {
         continue;
       }
 
-      // count the tiles at all sizes if we have more than one tile at 1:1
-      final int t = TileUtils.tileCountAtScale(idim, tdim, 1) > 1 ?
-                    TileUtils.tileCount(idim, tdim) : 0;
+      index.put(ipath, chash);
 
-      if (t == 0) continue;
+      // skip images whose tiles are shared with another image or module
+      if (collector.exists(chash) || !queued.add(chash)) continue;
 
-      tcount += t;
+      // count the tiles at all sizes
+      tcount += TileUtils.tileCount(idim, tdim);
       multi.add(ipath);
+      sizes.put(ipath, idim);
 
       // check whether this image has the most pixels
       if (idim.width * idim.height > maxpix) {
@@ -163,7 +228,8 @@ public class TilingHandler {
     return new Pair<>(tcount, maxpix);
   }
 
-  protected void runSlicer(List<String> multi, final int tcount, int maxheap)
+  protected void runSlicer(List<String> multi, TileIndex index,
+                           final int tcount, int maxheap)
                                    throws CancellationException, IOException {
 
     final InetAddress lo = InetAddress.getByName(null);
@@ -203,12 +269,13 @@ public class TilingHandler {
       args.toArray(new String[0])
     );
 
-    // write the image paths to child's stdin, one per line
+    // write the image paths and content hashes to child's stdin,
+    // one image per line
     PrintWriter stdin = null;
     try {
       stdin = new PrintWriter(proc.stdin);
       for (String m : multi) {
-        stdin.println(m);
+        stdin.println(m + '\t' + index.get(m));
       }
     }
     finally {
@@ -314,8 +381,60 @@ public class TilingHandler {
     }
   }
 
-  protected void cleanup() throws IOException {
-    FileUtils.forceDelete(cdir);
+  /**
+   * Locks the tile sets of the images to slice. Images whose tile sets
+   * another launch is slicing, or has since completed, are not sliced.
+   *
+   * @param multi the images to slice, from which those not to slice are
+   * removed
+   * @param index the tile index
+   * @param sizes the image sizes
+   * @param locks receives the locks taken
+   * @return the number of tiles no longer to be sliced
+   *
+   * @throws IOException if a lock file cannot be opened
+   */
+  protected int lockSets(List<String> multi, TileIndex index,
+                         Map<String,Dimension> sizes, List<FileLock> locks)
+                                                           throws IOException {
+    int dropped = 0;
+    for (Iterator<String> i = multi.iterator(); i.hasNext(); ) {
+      final String m = i.next();
+      final String chash = index.get(m);
+
+      final FileLock lock = collector.lockSet(chash);
+      if (lock != null) {
+        if (!collector.exists(chash)) {
+          locks.add(lock);
+          continue;
+        }
+        IOUtils.closeQuietly(lock.channel());
+      }
+      else {
+        logger.info("Tiles for {} are being sliced by another launch", m);
+      }
+
+      dropped += TileUtils.tileCount(sizes.get(m), tdim);
+      i.remove();
+    }
+    return dropped;
+  }
+
+  protected void cleanup(List<String> multi, TileIndex index,
+                         Map<String,Dimension> sizes) {
+    // remove the tiles of any partially sliced images
+    for (String m : multi) {
+      collector.discard(index.get(m), sizes.get(m), tdim);
+    }
+  }
+
+  protected void updateIndex(File ifile, TileIndex index) throws IOException {
+    // writing the index marks the module as recently used
+    index.write(ifile);
+    collector.touch(index.hashes());
+
+    // keep the cache within its budget
+    collector.collect(cache_limit, Collections.singleton(ikey));
   }
 
   /**
@@ -325,41 +444,65 @@ public class TilingHandler {
    */
   public void sliceTiles() throws CancellationException, IOException {
     final List<String> multi = new ArrayList<>();
+    final Map<String,Dimension> sizes = new HashMap<>();
     final List<Pair<String,IOException>> failed =
       new ArrayList<>();
 
+    final File ifile = ContentAddressedTileCache.indexFile(cdir, ikey);
+    final TileIndex index = TileIndex.read(ifile);
+
     Pair<Integer,Integer> s;
     try (DataArchive archive = new DataArchive(aname)) {
-      final FileStore tcache = new ImageTileDiskCache(cdir.getAbsolutePath());
-      s = findImages(archive, tcache, multi, failed);
+      s = findImages(
+        archive, index, ifile.lastModified(), multi, sizes, failed
+      );
     }
 
-    // nothing to do if no images need tiling
-    if (multi.isEmpty()) {
-      logger.info("No images to tile.");
-      return;
-    }
+    // hold the locks of the tile sets to slice until they are recorded
+    // or discarded, so that no other launch slices or discards them
+    final List<FileLock> locks = new ArrayList<>();
+    try {
+      final int tcount = s.first - lockSets(multi, index, sizes, locks);
+
+      // nothing to do if no images need tiling
+      if (multi.isEmpty()) {
+        logger.info("No images to tile.");
+        updateIndex(ifile, index);
+        return;
+      }
 
-    // ensure that the tile directories exist
-    makeHashDirs();
+      // ensure that the tile directories exist
+      makeHashDirs();
 
-    final int tcount = s.first;
-    final int max_data_mbytes = (4*s.second) >> 20;
+      final int max_data_mbytes = (4*s.second) >> 20;
 
-    // fix the max heap
+      // fix the max heap
 
-    // This was determined empirically.
-    final int maxheap_estimated = (int) (1.66*max_data_mbytes + 150);
+      // This was determined empirically.
+      final int maxheap_estimated = (int) (1.66*max_data_mbytes + 150);
 
-    final int maxheap = Math.min(maxheap_estimated, maxheap_limit);
+      final int maxheap = Math.min(maxheap_estimated, maxheap_limit);
 
-    // slice, and cleanup on failure
-    try {
-      runSlicer(multi, s.first, maxheap);
+      // slice, and cleanup on failure
+      try {
+        runSlicer(multi, index, tcount, maxheap);
+      }
+      catch (CancellationException | IOException e) {
+        cleanup(multi, index, sizes);
+        throw e;
+      }
+
+      // record the completed tile sets
+      for (String m : multi) {
+        collector.record(index.get(m), sizes.get(m), tdim);
+      }
+
+      updateIndex(ifile, index);
     }
-    catch (CancellationException | IOException e) {
-      cleanup();
-      throw e;
+    finally {
+      for (FileLock l : locks) {
+        IOUtils.closeQuietly(l.channel());
+      }
     }
   }
 }
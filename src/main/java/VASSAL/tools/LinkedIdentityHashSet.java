@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link java.util.Set} which compares its elements by identity and
+ * iterates over them in the order in which they were added.
+ *
+ * <p>Adding, removing, and testing membership take constant time. Removed
+ * elements leave a hole in the ordering, which is closed up once holes
+ * make up half of it, or when the list view is read by position. Closing
+ * up holes does not disturb iterators in progress.</p>
+ *
+ * <p>Unlike other sets, the ordering may be changed with
+ * {@link #sort}. This class does not permit <code>null</code> elements
+ * and is not synchronized. The set must not be modified while it is
+ * being iterated over, except through the iterator's own
+ * <code>remove</code> method; iterators throw
+ * {@link ConcurrentModificationException} on a best-effort basis if it
+ * is.</p>
+ *
+ * @param <E> the type of elements in this set
+ * @since 3.3.2
+ */
+public class LinkedIdentityHashSet<E> extends AbstractSet<E> {
+
+  // the position of each element in the ordering
+  private final Map<E,Integer> index = new IdentityHashMap<>();
+
+  // the ordering, with null in place of removed elements
+  private final List<E> order = new ArrayList<>();
+  private int holes = 0;
+
+  // counts changes to the elements or their ordering, for iterators
+  private int modCount = 0;
+
+  // counts closings up of holes, which move elements in the ordering
+  private int compactions = 0;
+
+  private final List<E> view = new AbstractList<>() {
+    @Override
+    public E get(int i) {
+      compact();
+      return order.get(i);
+    }
+
+    @Override
+    public int size() {
+      return index.size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      final Iterator<E> i = LinkedIdentityHashSet.this.iterator();
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return i.hasNext();
+        }
+
+        @Override
+        public E next() {
+          return i.next();
+        }
+      };
+    }
+  };
+
+  @Override
+  public boolean add(E e) {
+    if (e == null) throw new NullPointerException();
+    if (index.containsKey(e)) {
+      return false;
+    }
+
+    index.put(e, order.size());
+    order.add(e);
+    ++modCount;
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    final Integer i = index.remove(o);
+    if (i == null) {
+      return false;
+    }
+
+    hole(i);
+    ++modCount;
+    if (holes > order.size() / 2) {
+      compact();
+    }
+    return true;
+  }
+
+  private void hole(int i) {
+    if (i == order.size() - 1) {
+      order.remove(i);
+    }
+    else {
+      order.set(i, null);
+      ++holes;
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return index.containsKey(o);
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public void clear() {
+    index.clear();
+    order.clear();
+    holes = 0;
+    ++modCount;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<>() {
+      private int next = 0;
+      private int last = -1;
+      // the number of elements passed which are still in the set
+      private int passed = 0;
+      private int expectedModCount = modCount;
+      private int expectedCompactions = compactions;
+
+      private void check() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+
+        // after the holes are closed up, the elements passed are first
+        if (compactions != expectedCompactions) {
+          next = passed;
+          if (last >= 0) {
+            last = passed - 1;
+          }
+          expectedCompactions = compactions;
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        check();
+        while (next < order.size() && order.get(next) == null) {
+          ++next;
+        }
+        return next < order.size();
+      }
+
+      @Override
+      public E next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        last = next++;
+        ++passed;
+        return order.get(last);
+      }
+
+      @Override
+      public void remove() {
+        check();
+        if (last < 0) throw new IllegalStateException();
+        index.remove(order.get(last));
+        // leave a hole even at the end, as next already points past it
+        order.set(last, null);
+        ++holes;
+        --passed;
+        last = -1;
+        expectedModCount = ++modCount;
+      }
+    };
+  }
+
+  /**
+   * Sorts the elements of this set.
+   *
+   * @param comp the comparator determining the new ordering
+   */
+  public void sort(Comparator<? super E> comp) {
+    compact();
+    order.sort(comp);
+    reindex();
+    ++modCount;
+  }
+
+  /**
+   * @return an unmodifiable {@link List} view of the elements of this set,
+   * in order. The view reflects later changes to the set, and its
+   * iterator is fail-fast as the set's is.
+   */
+  public List<E> asList() {
+    return view;
+  }
+
+  private void compact() {
+    if (holes == 0) {
+      return;
+    }
+
+    order.removeIf(e -> e == null);
+    holes = 0;
+    ++compactions;
+    reindex();
+  }
+
+  private void reindex() {
+    for (int i = 0; i < order.size(); ++i) {
+      index.put(order.get(i), i);
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.concurrent;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link ConcurrentMap} which holds its values strongly up to a total
+ * weight, evicting the least recently used values when the weight is
+ * exceeded. Evicted values may optionally be passed to a second-tier map
+ * (e.g., a {@link ConcurrentSoftHashMap}), from which they are promoted
+ * back on access.
+ *
+ * <p>Values are weighed when inserted and when {@link #reweigh} is called.
+ * Values of weight zero are never evicted, which permits placeholders for
+ * values still being computed to be held until they are weighed.</p>
+ *
+ * <p>All operations synchronize on the map. This implementation does not
+ * permit <code>null</code> keys or values.</p>
+ *
+ * @since 3.3.2
+ */
+public class WeightedLRUMap<K,V> extends AbstractMap<K,V>
+                                 implements ConcurrentMap<K,V> {
+
+  private static final class Node<V> {
+    private final V value;
+    private long weight;
+
+    private Node(V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private final LinkedHashMap<K,Node<V>> map =
+    new LinkedHashMap<>(16, 0.75f, true);
+
+  private final ToLongFunction<? super V> weigher;
+  private final ConcurrentMap<K,V> overflow;
+
+  private long capacity;
+  private long weight;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a {@code WeightedLRUMap}.
+   *
+   * @param capacity the maximum total weight of the values held
+   * @param weigher the function which weighs values
+   * @param overflow the map to receive evicted values, or {@code null}
+   *    to discard them
+   */
+  public WeightedLRUMap(long capacity,
+                        ToLongFunction<? super V> weigher,
+                        ConcurrentMap<K,V> overflow) {
+    if (capacity < 0) throw new IllegalArgumentException();
+    if (weigher == null) throw new IllegalArgumentException();
+
+    this.capacity = capacity;
+    this.weigher = weigher;
+    this.overflow = overflow;
+  }
+
+  private long weigh(V value) {
+    final long w = weigher.applyAsLong(value);
+    if (w < 0) throw new IllegalStateException("negative weight: " + w);
+    return w;
+  }
+
+  private Node<V> lookup(Object key) {
+    Node<V> n = map.get(key);
+    if (n == null && overflow != null) {
+      // promote the value from the second tier, if it is still there
+      @SuppressWarnings("unchecked")
+      final K k = (K) key;
+      final V v = overflow.remove(k);
+      if (v != null) {
+        n = insert(k, v);
+      }
+    }
+    return n;
+  }
+
+  private Node<V> insert(K key, V value) {
+    final Node<V> n = new Node<>(value, weigh(value));
+    final Node<V> old = map.put(key, n);
+    if (old != null) weight -= old.weight;
+    weight += n.weight;
+    evict();
+    return n;
+  }
+
+  private V unlink(Object key) {
+    final Node<V> n = map.remove(key);
+    if (n == null) return null;
+    weight -= n.weight;
+    return n.value;
+  }
+
+  private void evict() {
+    if (weight <= capacity) return;
+
+    final Iterator<Map.Entry<K,Node<V>>> i = map.entrySet().iterator();
+    while (weight > capacity && i.hasNext()) {
+      final Map.Entry<K,Node<V>> e = i.next();
+      final Node<V> n = e.getValue();
+      if (n.weight == 0) continue;
+
+      i.remove();
+      weight -= n.weight;
+      ++evictions;
+
+      if (overflow != null) overflow.put(e.getKey(), n.value);
+    }
+  }
+
+  /**
+   * Weighs again the value for the given key, evicting other values if
+   * the total weight now exceeds the capacity.
+   *
+   * @param key the key
+   */
+  public synchronized void reweigh(K key) {
+    final Node<V> n = map.get(key);
+    if (n == null) return;
+
+    final long w = weigh(n.value);
+    weight += w - n.weight;
+    n.weight = w;
+    evict();
+  }
+
+  /**
+   * Sets the maximum total weight of values held by this map.
+   *
+   * @param capacity the capacity
+   */
+  public synchronized void setCapacity(long capacity) {
+    if (capacity < 0) throw new IllegalArgumentException();
+    this.capacity = capacity;
+    evict();
+  }
+
+  /** @return the maximum total weight of values held by this map */
+  public synchronized long getCapacity() {
+    return capacity;
+  }
+
+  /** @return the total weight of values held by this map */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /** @return the number of lookups which found a value */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** @return the number of lookups which found no value */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** @return the number of values evicted to stay within capacity */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized boolean containsKey(Object key) {
+    return map.containsKey(key) ||
+           (overflow != null && overflow.containsKey(key));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V get(Object key) {
+    final Node<V> n = lookup(key);
+    if (n == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return n.value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V put(K key, V value) {
+    if (value == null) throw new NullPointerException();
+
+    V old = unlink(key);
+    if (overflow != null) {
+      final V ov = overflow.remove(key);
+      if (old == null) old = ov;
+    }
+
+    insert(key, value);
+    return old;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V putIfAbsent(K key, V value) {
+    if (value == null) throw new NullPointerException();
+
+    final Node<V> n = lookup(key);
+    if (n != null) return n.value;
+
+    insert(key, value);
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V remove(Object key) {
+    final V old = unlink(key);
+    final V ov = overflow == null ? null : overflow.remove(key);
+    return old != null ? old : ov;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized boolean remove(Object key, Object value) {
+    final Node<V> n = lookup(key);
+    if (n == null || !n.value.equals(value)) return false;
+
+    unlink(key);
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized boolean replace(K key, V oldValue, V newValue) {
+    if (newValue == null) throw new NullPointerException();
+
+    final Node<V> n = lookup(key);
+    if (n == null || !n.value.equals(oldValue)) return false;
+
+    insert(key, newValue);
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V replace(K key, V value) {
+    if (value == null) throw new NullPointerException();
+
+    final Node<V> n = lookup(key);
+    if (n == null) return null;
+
+    insert(key, value);
+    return n.value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    weight = 0;
+    if (overflow != null) overflow.clear();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned set is a snapshot of the first-tier entries, and is
+   * not backed by this map.</p>
+   */
+  @Override
+  public synchronized Set<Map.Entry<K,V>> entrySet() {
+    final Map<K,V> copy = new HashMap<>();
+    for (Map.Entry<K,Node<V>> e : map.entrySet()) {
+      copy.put(e.getKey(), e.getValue().value);
+    }
+    return copy.entrySet();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import VASSAL.tools.concurrent.WeightedLRUMap;
+
+/**
+ * A cache of filled {@link Area}s rendered to images.
+ *
+ * <p>Overlays such as areas of effect are the same shape wherever they
+ * are drawn, but filling a complex <code>Area</code> means rasterizing
+ * its geometry on every paint. Instead, the shape is rendered once per
+ * scale and color, centered on the origin, and the resulting image is
+ * drawn wherever the overlay is needed.</p>
+ *
+ * <p>The cache may be disabled with the system property
+ * <code>VASSAL.areaMasks=false</code>. Its size, in MB, is set by
+ * <code>VASSAL.areaMaskCacheSize</code>.</p>
+ *
+ * @since 3.3.2
+ */
+public class AreaMaskCache {
+
+  /** The maximum total size of the masks retained, in bytes. */
+  protected static final long CAPACITY =
+    ((long) Integer.getInteger("VASSAL.areaMaskCacheSize", 64)) << 20;
+
+  /** The approximate cost in bytes of a cache entry, excluding images. */
+  private static final long ENTRY_WEIGHT = 64;
+
+  /** Masks larger than this many pixels are not cached. */
+  protected static final long MAX_PIXELS = 2048L * 2048L;
+
+  private static final boolean ENABLED = Boolean.parseBoolean(
+    System.getProperty("VASSAL.areaMasks", "true"));
+
+  /** A shape rendered at some scale. */
+  public static class Mask {
+    /** The rendered shape. */
+    public final BufferedImage image;
+
+    /** The offset of the image from the origin of the shape. */
+    public final int x;
+    public final int y;
+
+    protected Mask(BufferedImage image, int x, int y) {
+      this.image = image;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  // Stands for masks which were too large, to avoid measuring the shape
+  // again.
+  private static final Mask NONE = new Mask(null, 0, 0);
+
+  private static final class Key {
+    private final Object shape;
+    private final double scale;
+    private final int rgb;
+
+    private Key(Object shape, double scale, int rgb) {
+      this.shape = shape;
+      this.scale = scale;
+      this.rgb = rgb;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key k = (Key) o;
+      return scale == k.scale && rgb == k.rgb && shape.equals(k.shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(shape, scale, rgb);
+    }
+  }
+
+  private static final WeightedLRUMap<Key,Mask> masks =
+    new WeightedLRUMap<>(CAPACITY, AreaMaskCache::weigh, null);
+
+  /** Weighs a mask by the size of its image raster. */
+  private static long weigh(Mask m) {
+    if (m.image == null) return ENTRY_WEIGHT;
+    return ENTRY_WEIGHT + (long) m.image.getWidth() * m.image.getHeight() *
+      m.image.getColorModel().getPixelSize() / 8;
+  }
+
+  /**
+   * Gets the mask for a shape.
+   *
+   * @param shape a key identifying the shape, which must implement
+   *    <code>equals</code> and <code>hashCode</code>
+   * @param scale the scale at which to render the shape
+   * @param color the color with which to fill the shape
+   * @param area supplies the shape, at scale 1.0 and relative to the origin,
+   *    if it must be rendered
+   * @return the mask, or <code>null</code> if masks are disabled or the
+   *    shape is too large to cache
+   */
+  public static synchronized Mask getMask(Object shape, double scale,
+                                          Color color, Supplier<Area> area) {
+    if (!ENABLED) return null;
+
+    final Key key = new Key(shape, scale, color.getRGB());
+    Mask m = masks.get(key);
+    if (m == null) {
+      m = render(area.get(), scale, color);
+      masks.put(key, m == null ? NONE : m);
+    }
+    return m == NONE ? null : m;
+  }
+
+  /** Clears all masks. */
+  public static synchronized void clearAll() {
+    masks.clear();
+  }
+
+  protected static Mask render(Area area, double scale, Color color) {
+    final Area a = scale == 1.0 ? area :
+      area.createTransformedArea(AffineTransform.getScaleInstance(scale, scale));
+
+    final Rectangle r = a.getBounds();
+    if (r.isEmpty() || (long) r.width * r.height > MAX_PIXELS) {
+      return null;
+    }
+
+    final BufferedImage img =
+      ImageUtils.createCompatibleTranslucentImage(r.width, r.height);
+    final Graphics2D g = img.createGraphics();
+    g.translate(-r.x, -r.y);
+    g.setColor(color);
+    g.fill(a);
+    g.dispose();
+
+    return new Mask(img, r.x, r.y);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A PNG encoder which writes an image a band of rows at a time, so that
+ * the whole image need never be in memory.
+ *
+ * <p>Images are written as 8-bit RGBA, each row with the Sub filter.
+ * Rows must be written in order, top to bottom; the image is complete
+ * once all of its rows have been written and the writer is closed.</p>
+ *
+ * @since 3.3.2
+ */
+public class PNGStreamWriter implements Closeable {
+
+  /** The maximum length of the data in one IDAT chunk. */
+  protected static final int IDAT_SIZE = 1 << 16;
+
+  protected final DataOutputStream out;
+  protected final int width;
+  protected final int height;
+
+  protected final ByteArrayOutputStream idat = new ByteArrayOutputStream();
+  protected final Deflater deflater = new Deflater();
+  protected final DeflaterOutputStream zout =
+    new DeflaterOutputStream(idat, deflater, IDAT_SIZE);
+
+  // the raw and filtered bytes of one row, including the filter type byte
+  private final byte[] raw;
+  private final byte[] filtered;
+  private final int[] argb;
+
+  private int rows = 0;
+
+  /**
+   * Creates a {@code PNGStreamWriter} and writes the PNG header.
+   *
+   * @param out the stream to which to write
+   * @param width the width of the image
+   * @param height the height of the image
+   *
+   * @throws IOException if the header cannot be written
+   */
+  public PNGStreamWriter(OutputStream out, int width, int height)
+                                                           throws IOException {
+    if (width < 1 || height < 1) throw new IllegalArgumentException();
+
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+
+    raw = new byte[1 + 4*width];
+    filtered = new byte[1 + 4*width];
+    filtered[0] = 1;  // Sub
+    argb = new int[width];
+
+    this.out.writeLong(PNGDecoder.sig);
+
+    final ByteArrayOutputStream hdr = new ByteArrayOutputStream(13);
+    final DataOutputStream h = new DataOutputStream(hdr);
+    h.writeInt(width);
+    h.writeInt(height);
+    h.writeByte(8);  // bit depth
+    h.writeByte(6);  // color type: RGBA
+    h.writeByte(0);  // compression: deflate
+    h.writeByte(0);  // filter method: adaptive
+    h.writeByte(0);  // interlace: none
+    writeChunk(PNGDecoder.IHDR, hdr.toByteArray(), hdr.size());
+  }
+
+  /**
+   * Writes the next rows of the image.
+   *
+   * @param img the image holding the rows, which must be
+   *    <code>TYPE_INT_ARGB</code> or otherwise readable by
+   *    {@link BufferedImage#getRGB}
+   * @param x the column of <code>img</code> at which the rows begin
+   * @param y the row of <code>img</code> at which the rows begin
+   * @param n the number of rows to write
+   *
+   * @throws IOException if the rows cannot be written
+   */
+  public void writeRows(BufferedImage img, int x, int y, int n)
+                                                           throws IOException {
+    if (rows + n > height) {
+      throw new IllegalStateException("too many rows");
+    }
+
+    for (int r = 0; r < n; ++r) {
+      img.getRGB(x, y + r, width, 1, argb, 0, width);
+
+      for (int i = 0, j = 1; i < width; ++i, j += 4) {
+        final int p = argb[i];
+        raw[j]   = (byte) (p >>> 16);
+        raw[j+1] = (byte) (p >>> 8);
+        raw[j+2] = (byte) p;
+        raw[j+3] = (byte) (p >>> 24);
+      }
+
+      // Sub filter: each byte less the corresponding byte of the pixel
+      // to its left
+      System.arraycopy(raw, 1, filtered, 1, 4);
+      for (int j = 5; j < raw.length; ++j) {
+        filtered[j] = (byte) (raw[j] - raw[j-4]);
+      }
+
+      zout.write(filtered);
+      flushIDAT(false);
+    }
+
+    rows += n;
+  }
+
+  /** @return the number of rows written so far */
+  public int getRowsWritten() {
+    return rows;
+  }
+
+  /**
+   * Finishes the image and closes the underlying stream.
+   *
+   * @throws IOException if the image is incomplete or cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (rows != height) {
+        throw new IOException(
+          "image has " + rows + " rows written, expected " + height);
+      }
+
+      zout.finish();
+      flushIDAT(true);
+      writeChunk(PNGDecoder.IEND, new byte[0], 0);
+      out.flush();
+    }
+    finally {
+      deflater.end();
+      out.close();
+    }
+  }
+
+  protected void flushIDAT(boolean all) throws IOException {
+    if (idat.size() >= IDAT_SIZE || (all && idat.size() > 0)) {
+      writeChunk(PNGDecoder.IDAT, idat.toByteArray(), idat.size());
+      idat.reset();
+    }
+  }
+
+  protected void writeChunk(int type, byte[] data, int len)
+                                                           throws IOException {
+    out.writeInt(len);
+    out.writeInt(type);
+    out.write(data, 0, len);
+
+    final CRC32 crc = new CRC32();
+    crc.update(type >>> 24);
+    crc.update(type >>> 16);
+    crc.update(type >>> 8);
+    crc.update(type);
+    crc.update(data, 0, len);
+    out.writeInt((int) crc.getValue());
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import VASSAL.tools.io.IOUtils;
+
+/**
+ * An on-disk tile cache in which tiles are keyed by the content hash of
+ * their source image rather than by the image name. The cache directory
+ * is shared by all modules; each module has an {@link TileIndex} which
+ * maps its image names to content hashes.
+ *
+ * The layout of the cache directory is:
+ * <ul>
+ *   <li>{@code index/<key>}: the index for a module and its extensions</li>
+ *   <li>{@code lock/<key>}: locked by each process using an index</li>
+ *   <li>{@code lock/sets/<hash>}: locked while a tile set is sliced</li>
+ *   <li>{@code sets/<hash>}: the manifest for a completed tile set</li>
+ *   <li>{@code x/xy/<sha>}: the tiles, named as by
+ *       {@link TileUtils#tileName} with the content hash as image name</li>
+ * </ul>
+ *
+ * @since 3.3.2
+ */
+public class ContentAddressedTileCache extends ImageTileDiskCache {
+  private static final Logger logger =
+    LoggerFactory.getLogger(ContentAddressedTileCache.class);
+
+  /** The subdirectory holding the per-module indices. */
+  public static final String INDEX_DIR = "index";
+
+  /** The subdirectory holding the per-module index locks. */
+  public static final String LOCK_DIR = "lock";
+
+  /** The subdirectory holding the tile set manifests. */
+  public static final String SETS_DIR = "sets";
+
+  protected final TileIndex index;
+
+  // held for the life of the process, so that the index is not dropped
+  // by a collector running in another process
+  protected final FileChannel lock;
+
+  /**
+   * Creates a {@code ContentAddressedTileCache}, locking its index against
+   * collection.
+   *
+   * @param cpath path to the root directory of the cache
+   * @param key the name of the index to use
+   *
+   * @throws IOException if the index cannot be read
+   */
+  public ContentAddressedTileCache(String cpath, String key)
+                                                           throws IOException {
+    this(cpath, key, lockIndex(new File(cpath), key));
+  }
+
+  private ContentAddressedTileCache(String cpath, String key, FileChannel lock)
+                                                           throws IOException {
+    super(cpath);
+    this.lock = lock;
+    index = TileIndex.read(indexFile(new File(cpath), key));
+  }
+
+  /**
+   * Creates a {@code ContentAddressedTileCache}.
+   *
+   * @param cpath path to the root directory of the cache
+   * @param index the index mapping image names to content hashes
+   */
+  public ContentAddressedTileCache(String cpath, TileIndex index) {
+    super(cpath);
+    this.index = index;
+    lock = null;
+  }
+
+  /**
+   * Takes a shared lock on an index. A collector will not drop an index
+   * while any process holds such a lock.
+   *
+   * @param root the root directory of the cache
+   * @param key the name of the index
+   * @return the locked channel, or {@code null} if the lock failed
+   */
+  protected static FileChannel lockIndex(File root, String key) {
+    final File lf = lockFile(root, key);
+    FileChannel ch = null;
+    try {
+      FileUtils.forceMkdir(lf.getParentFile());
+      ch = FileChannel.open(lf.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+      ch.lock(0, Long.MAX_VALUE, true);
+      return ch;
+    }
+    catch (IOException | OverlappingFileLockException e) {
+      // without the lock the index is protected only by its age
+      logger.warn("Unable to lock tile index {}", key, e);
+      IOUtils.closeQuietly(ch);
+      return null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String tilePath(String name, int tileX, int tileY, double scale) {
+    // unindexed images have no tiles; the default path will not exist
+    final String chash = index.get(name);
+    return super.tilePath(chash == null ? name : chash, tileX, tileY, scale);
+  }
+
+  /**
+   * Gets the index file for a module.
+   *
+   * @param root the root directory of the cache
+   * @param key the name of the index
+   * @return the index file
+   */
+  public static File indexFile(File root, String key) {
+    return new File(new File(root, INDEX_DIR), key);
+  }
+
+  /**
+   * Gets the lock file for a module index.
+   *
+   * @param root the root directory of the cache
+   * @param key the name of the index
+   * @return the lock file
+   */
+  public static File lockFile(File root, String key) {
+    return new File(new File(root, LOCK_DIR), key);
+  }
+
+  /**
+   * Gets the lock file for a tile set.
+   *
+   * @param root the root directory of the cache
+   * @param chash the content hash of the source image
+   * @return the lock file
+   */
+  public static File setLockFile(File root, String chash) {
+    return new File(new File(new File(root, LOCK_DIR), SETS_DIR), chash);
+  }
+
+  /**
+   * Gets the manifest file for a tile set.
+   *
+   * @param root the root directory of the cache
+   * @param chash the content hash of the source image
+   * @return the manifest file
+   */
+  public static File manifestFile(File root, String chash) {
+    return new File(new File(root, SETS_DIR), chash);
+  }
+}
@@ -63,7 +63,39 @@ public class FileArchiveImageTiler {
     Callback<Void> doneListener
   ) throws IOException
   {
-    for (String ipath : ipaths) {
+    run(
+      fa, tpath, tw, th, ipaths, ipaths, exec,
+      loader, slicer, imageListener, tileListener, doneListener
+    );
+  }
+
+  /**
+   * Tile image contained in an archive.
+   *
+   * @param fa the file archive
+   * @param tpath path to the output directory
+   * @param tw tile width, in pixels
+   * @param th tile height, in pixels
+   * @param ipaths paths within the archive to images to be tiled
+   * @param inames the names under which to store the tiles for each image
+   */
+  public void run(
+    FileArchive fa,
+    final String tpath,
+    int tw,
+    int th,
+    String[] ipaths,
+    String[] inames,
+    ExecutorService exec,
+    ImageLoader loader,
+    TileSlicer slicer,
+    Callback<String> imageListener,
+    Callback<Void> tileListener,
+    Callback<Void> doneListener
+  ) throws IOException
+  {
+    for (int i = 0; i < ipaths.length; ++i) {
+      final String ipath = ipaths[i];
       logger.info("Tiling {}", ipath);
       imageListener.receive(ipath);
 
@@ -79,7 +111,7 @@ public class FileArchiveImageTiler {
         continue;
       }
 
-      slicer.slice(src, ipath, tpath, tw, th, exec, tileListener);
+      slicer.slice(src, inames[i], tpath, tw, th, exec, tileListener);
     }
 
     exec.shutdown();
@@ -50,6 +50,20 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     this.cpath = cpath;
   }
 
+  /**
+   * Gets the path of a tile file.
+   *
+   * @param name the image name
+   * @param tileX the X coordinate of the tile
+   * @param tileY the Y coordinate of the tile
+   * @param scale the scale of the tile
+   * @return the path of the tile file
+   */
+  protected String tilePath(String name, int tileX, int tileY, double scale) {
+    return cpath + '/' +
+      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale));
+  }
+
   /** {@inheritDoc} */
   @Override
   public BufferedImage getTile(
@@ -58,8 +72,7 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    return TileUtils.read(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
+    return TileUtils.read(tilePath(name, tileX, tileY, scale));
   }
 
   /** {@inheritDoc} */
@@ -70,8 +83,7 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    return TileUtils.size(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
+    return TileUtils.size(tilePath(name, tileX, tileY, scale));
   }
 
   /** {@inheritDoc} */
@@ -82,8 +94,7 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    final File f = new File(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
+    final File f = new File(tilePath(name, tileX, tileY, scale));
     return f.exists() && f.isFile();
   }
 
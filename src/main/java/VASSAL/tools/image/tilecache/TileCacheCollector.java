@@ -0,0 +1,449 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records tile sets in a {@link ContentAddressedTileCache} and removes
+ * least recently used tile sets when the cache exceeds its size budget.
+ *
+ * A tile set is referenced while some module index maps an image to it.
+ * Only unreferenced tile sets are removed; if that does not suffice, the
+ * least recently used module indices are dropped, which in turn may leave
+ * more tile sets unreferenced. Indices which were used recently or which
+ * are locked by a process which has the module open are never dropped.
+ *
+ * Tiles which belong to no recorded tile set, such as those left by a
+ * slicer which crashed, are removed once they are older than the minimum
+ * age, at most once per that age.
+ *
+ * @since 3.3.2
+ */
+public class TileCacheCollector {
+  private static final Logger logger =
+    LoggerFactory.getLogger(TileCacheCollector.class);
+
+  /**
+   * Indices used and unrecorded tiles written more recently than this,
+   * in ms, are not removed.
+   */
+  protected static final long MIN_AGE =
+    Long.getLong("VASSAL.tileCacheMinAge", 60) * 60 * 1000;
+
+  /** The file whose time is that of the last search for stray tiles. */
+  protected static final String SWEEP_FILE = "swept";
+
+  protected final File root;
+
+  /**
+   * Creates a {@code TileCacheCollector}.
+   *
+   * @param root the root directory of the cache
+   */
+  public TileCacheCollector(File root) {
+    this.root = root;
+  }
+
+  /**
+   * Checks whether a complete tile set exists for an image.
+   *
+   * @param chash the content hash of the image
+   * @return {@code true} if the tile set exists
+   */
+  public boolean exists(String chash) {
+    return ContentAddressedTileCache.manifestFile(root, chash).isFile();
+  }
+
+  /**
+   * Records a completed tile set. Until a tile set is recorded, its tiles
+   * are not considered to be present.
+   *
+   * @param chash the content hash of the image
+   * @param idim the image dimensions
+   * @param tdim the tile dimensions
+   *
+   * @throws IOException if the manifest cannot be written
+   */
+  public void record(String chash, Dimension idim, Dimension tdim)
+                                                           throws IOException {
+    long bytes = 0;
+    for (String tn : TileUtils.tileNames(chash, idim.width, idim.height,
+                                         tdim.width, tdim.height)) {
+      bytes += new File(root, tn).length();
+    }
+
+    final Properties p = new Properties();
+    p.setProperty("width", String.valueOf(idim.width));
+    p.setProperty("height", String.valueOf(idim.height));
+    p.setProperty("tileWidth", String.valueOf(tdim.width));
+    p.setProperty("tileHeight", String.valueOf(tdim.height));
+    p.setProperty("bytes", String.valueOf(bytes));
+
+    final File mf = ContentAddressedTileCache.manifestFile(root, chash);
+    FileUtils.forceMkdir(mf.getParentFile());
+
+    try (OutputStream out = new FileOutputStream(mf)) {
+      p.store(out, null);
+    }
+  }
+
+  /**
+   * Marks tile sets as recently used.
+   *
+   * @param hashes the content hashes of the tile sets
+   */
+  public void touch(Collection<String> hashes) {
+    final long now = System.currentTimeMillis();
+    for (String chash : hashes) {
+      final File mf = ContentAddressedTileCache.manifestFile(root, chash);
+      if (mf.isFile()) {
+        mf.setLastModified(now);
+      }
+    }
+  }
+
+  /**
+   * Deletes the tiles of a possibly incomplete tile set.
+   *
+   * @param chash the content hash of the image
+   * @param idim the image dimensions
+   * @param tdim the tile dimensions
+   */
+  public void discard(String chash, Dimension idim, Dimension tdim) {
+    // the caller holds the lock for the tile set
+    for (String tn : TileUtils.tileNames(chash, idim.width, idim.height,
+                                         tdim.width, tdim.height)) {
+      FileUtils.deleteQuietly(new File(root, tn));
+    }
+    FileUtils.deleteQuietly(
+      ContentAddressedTileCache.manifestFile(root, chash));
+  }
+
+  /**
+   * Locks a tile set, so that no other launch slices or discards it. The
+   * lock is released by closing its channel.
+   *
+   * @param chash the content hash of the image
+   * @return the lock, or {@code null} if another launch holds it
+   *
+   * @throws IOException if the lock file cannot be opened
+   */
+  public FileLock lockSet(String chash) throws IOException {
+    final File lf = ContentAddressedTileCache.setLockFile(root, chash);
+    FileUtils.forceMkdir(lf.getParentFile());
+
+    final FileChannel ch = FileChannel.open(lf.toPath(),
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      final FileLock lock = ch.tryLock();
+      if (lock == null) ch.close();
+      return lock;
+    }
+    catch (OverlappingFileLockException e) {
+      // another launch in this process holds it
+      ch.close();
+      return null;
+    }
+    catch (IOException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  protected static class TileSet {
+    public final String chash;
+    public final File manifest;
+    public final long bytes;
+    public final long lastUsed;
+    public final Properties props;
+    public int refs;
+
+    public TileSet(String chash, File manifest, long bytes, long lastUsed,
+                   Properties props) {
+      this.chash = chash;
+      this.manifest = manifest;
+      this.bytes = bytes;
+      this.lastUsed = lastUsed;
+      this.props = props;
+    }
+  }
+
+  /**
+   * Removes least recently used tile sets until the cache is no larger
+   * than the given budget.
+   *
+   * @param limit the size budget, in bytes
+   * @param pinned the names of indices which must not be dropped
+   * @return the number of bytes freed
+   *
+   * @throws IOException if the cache cannot be read
+   */
+  public long collect(long limit, Collection<String> pinned)
+                                                           throws IOException {
+    removeLegacyDirs();
+
+    // read the tile set manifests
+    final Map<String,TileSet> sets = new HashMap<>();
+    long total = 0;
+
+    final File[] mfiles = new File(root,
+      ContentAddressedTileCache.SETS_DIR).listFiles();
+    if (mfiles == null) return 0;
+
+    for (File mf : mfiles) {
+      final Properties p = new Properties();
+      try (InputStream in = new FileInputStream(mf)) {
+        p.load(in);
+      }
+
+      final TileSet ts = new TileSet(
+        mf.getName(), mf,
+        Long.parseLong(p.getProperty("bytes", "0")),
+        mf.lastModified(),
+        p
+      );
+
+      sets.put(ts.chash, ts);
+      total += ts.bytes;
+    }
+
+    final long now = System.currentTimeMillis();
+
+    final File swept = new File(root, SWEEP_FILE);
+    if (now - swept.lastModified() >= MIN_AGE) {
+      removeStrays(sets.values(), now);
+      FileUtils.touch(swept);
+    }
+
+    if (total <= limit) return 0;
+
+    // count references from the indices
+    final List<File> indices = new ArrayList<>();
+    final Map<File,TileIndex> contents = new HashMap<>();
+
+    final File[] ifiles = new File(root,
+      ContentAddressedTileCache.INDEX_DIR).listFiles();
+    if (ifiles != null) {
+      for (File f : ifiles) {
+        final TileIndex index = TileIndex.read(f);
+        for (String chash : index.hashes()) {
+          final TileSet ts = sets.get(chash);
+          if (ts != null) ++ts.refs;
+        }
+
+        // indices in use by another process may yet be locked
+        if (!pinned.contains(f.getName()) &&
+            now - f.lastModified() >= MIN_AGE) {
+          indices.add(f);
+          contents.put(f, index);
+        }
+      }
+    }
+
+    indices.sort(Comparator.comparingLong(File::lastModified));
+
+    final List<TileSet> lru = new ArrayList<>(sets.values());
+    lru.sort(Comparator.comparingLong(ts -> ts.lastUsed));
+
+    final long before = total;
+
+    while (true) {
+      // remove unreferenced tile sets, least recently used first
+      for (TileSet ts : lru) {
+        if (total <= limit) break;
+        if (ts.refs > 0 || !sets.containsKey(ts.chash)) continue;
+
+        if (remove(ts)) {
+          sets.remove(ts.chash);
+          total -= ts.bytes;
+        }
+      }
+
+      if (total <= limit || indices.isEmpty()) break;
+
+      // drop the least recently used index to release its tile sets
+      final File f = indices.remove(0);
+      if (!drop(f)) continue;
+
+      for (String chash : contents.get(f).hashes()) {
+        final TileSet ts = sets.get(chash);
+        if (ts != null) --ts.refs;
+      }
+    }
+
+    logger.info("Freed {} bytes from tile cache", before - total);
+    return before - total;
+  }
+
+  /**
+   * Deletes an index, unless a process using it holds its lock.
+   *
+   * @param f the index file
+   * @return {@code true} if the index was deleted
+   */
+  protected boolean drop(File f) {
+    final File lf = ContentAddressedTileCache.lockFile(root, f.getName());
+    try {
+      FileUtils.forceMkdir(lf.getParentFile());
+      try (FileChannel ch = FileChannel.open(lf.toPath(),
+             StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        // the lock is released when the channel is closed
+        final FileLock lock = ch.tryLock();
+        if (lock == null) {
+          logger.info("Keeping tile index {} in use", f.getName());
+          return false;
+        }
+
+        logger.info("Dropping tile index {}", f.getName());
+        FileUtils.deleteQuietly(f);
+        return true;
+      }
+    }
+    catch (OverlappingFileLockException e) {
+      // the module is open in this process
+      return false;
+    }
+    catch (IOException e) {
+      logger.warn("Unable to lock tile index {}", f.getName(), e);
+      return false;
+    }
+  }
+
+  protected boolean remove(TileSet ts) throws IOException {
+    final Properties p = new Properties();
+    try (InputStream in = new FileInputStream(ts.manifest)) {
+      p.load(in);
+    }
+
+    final int iw = Integer.parseInt(p.getProperty("width"));
+    final int ih = Integer.parseInt(p.getProperty("height"));
+    final int tw = Integer.parseInt(p.getProperty("tileWidth"));
+    final int th = Integer.parseInt(p.getProperty("tileHeight"));
+
+    // remove the manifest first, so that a partial removal is not
+    // mistaken for a complete tile set
+    if (!ts.manifest.delete()) return false;
+
+    for (String tn : TileUtils.tileNames(ts.chash, iw, ih, tw, th)) {
+      FileUtils.deleteQuietly(new File(root, tn));
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes tiles which belong to none of the given tile sets, and stale
+   * tile set locks, if they are older than the minimum age. Younger ones
+   * may belong to a tile set still being sliced.
+   *
+   * @param sets the recorded tile sets
+   * @param now the current time
+   */
+  protected void removeStrays(Collection<TileSet> sets, long now) {
+    final Set<String> known = new HashSet<>();
+    for (TileSet ts : sets) {
+      final Properties p = ts.props;
+      final int iw = Integer.parseInt(p.getProperty("width", "0"));
+      final int ih = Integer.parseInt(p.getProperty("height", "0"));
+      final int tw = Integer.parseInt(p.getProperty("tileWidth", "1"));
+      final int th = Integer.parseInt(p.getProperty("tileHeight", "1"));
+      for (String tn : TileUtils.tileNames(ts.chash, iw, ih, tw, th)) {
+        known.add(tn.substring(tn.lastIndexOf('/') + 1));
+      }
+    }
+
+    int count = 0;
+    final File[] dirs = root.listFiles();
+    if (dirs != null) {
+      for (File d : dirs) {
+        if (!d.isDirectory() || !d.getName().matches("[0-9a-f]")) continue;
+
+        final File[] subdirs = d.listFiles();
+        if (subdirs == null) continue;
+
+        for (File sd : subdirs) {
+          final File[] tiles = sd.listFiles();
+          if (tiles == null) continue;
+
+          for (File t : tiles) {
+            if (!known.contains(t.getName()) &&
+                now - t.lastModified() >= MIN_AGE && t.delete()) {
+              ++count;
+            }
+          }
+        }
+      }
+    }
+
+    if (count > 0) {
+      logger.info("Removed {} stray tiles", count);
+    }
+
+    final File[] locks = new File(new File(root,
+      ContentAddressedTileCache.LOCK_DIR),
+      ContentAddressedTileCache.SETS_DIR).listFiles();
+    if (locks != null) {
+      for (File lf : locks) {
+        if (now - lf.lastModified() >= MIN_AGE) {
+          FileUtils.deleteQuietly(lf);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes per-module tile directories left by earlier versions, which
+   * keyed tiles by module name and version.
+   */
+  protected void removeLegacyDirs() {
+    final File[] files = root.listFiles();
+    if (files == null) return;
+
+    for (File f : files) {
+      if (f.isDirectory() && f.getName().matches("[0-9a-f]{40}")) {
+        logger.info("Removing legacy tile directory {}", f.getName());
+        FileUtils.deleteQuietly(f);
+      }
+    }
+  }
+}
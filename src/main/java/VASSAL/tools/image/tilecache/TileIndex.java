@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A map from image names to the content hashes of the images. Each module
+ * (together with its extensions) has its own index, while the tile sets
+ * named by the content hashes are shared by all modules.
+ *
+ * @since 3.3.2
+ */
+public class TileIndex {
+
+  protected final Properties map = new Properties();
+
+  /**
+   * Gets the content hash for an image.
+   *
+   * @param iname the image name
+   * @return the content hash, or {@code null} if the image is not indexed
+   */
+  public synchronized String get(String iname) {
+    return map.getProperty(iname);
+  }
+
+  /**
+   * Sets the content hash for an image.
+   *
+   * @param iname the image name
+   * @param chash the content hash
+   */
+  public synchronized void put(String iname, String chash) {
+    map.setProperty(iname, chash);
+  }
+
+  /**
+   * Removes an image from the index.
+   *
+   * @param iname the image name
+   */
+  public synchronized void remove(String iname) {
+    map.remove(iname);
+  }
+
+  /**
+   * Removes from the index all images not in the given collection.
+   *
+   * @param inames the names of the images to keep
+   * @return {@code true} if any image was removed
+   */
+  public synchronized boolean retain(Collection<String> inames) {
+    return map.keySet().retainAll(inames);
+  }
+
+  /**
+   * @return the set of content hashes referenced by this index
+   */
+  public synchronized Set<String> hashes() {
+    final Set<String> hashes = new HashSet<>();
+    for (Object v : map.values()) {
+      hashes.add((String) v);
+    }
+    return hashes;
+  }
+
+  /**
+   * Reads an index file. A missing file produces an empty index.
+   *
+   * @param f the index file
+   * @return the index
+   *
+   * @throws IOException if the read fails
+   */
+  public static TileIndex read(File f) throws IOException {
+    final TileIndex index = new TileIndex();
+    try (InputStream in = new FileInputStream(f)) {
+      index.map.load(in);
+    }
+    catch (FileNotFoundException e) {
+      // no index yet
+    }
+    return index;
+  }
+
+  /**
+   * Writes this index to a file.
+   *
+   * @param f the index file
+   *
+   * @throws IOException if the write fails
+   */
+  public synchronized void write(File f) throws IOException {
+    final File dir = f.getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("cannot create " + dir);
+    }
+
+    try (OutputStream out = new FileOutputStream(f)) {
+      map.store(out, null);
+    }
+  }
+}
@@ -33,7 +33,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -398,4 +400,45 @@ public class TileUtils {
 
     return sha.substring(0, 1) + '/' + sha.substring(0, 2) + '/' + sha;
   }
+
+  /**
+   * Gets the names of all tile files for an image, summed over all
+   * sizes from 1:1 to the vanishing point.
+   *
+   * @param iname the image name
+   * @param iw the image width
+   * @param ih the image height
+   * @param tw the tile width
+   * @param th the tile height
+   * @return the names of the tile files
+   */
+  public static List<String> tileNames(String iname,
+                                       int iw, int ih, int tw, int th) {
+    final List<String> names = new ArrayList<>();
+    for (int div = 1; iw/div > 0 && ih/div > 0; div <<= 1) {
+      final int cols = (int) Math.ceil((double) (iw/div) / tw);
+      final int rows = (int) Math.ceil((double) (ih/div) / th);
+
+      for (int tx = 0; tx < cols; ++tx) {
+        for (int ty = 0; ty < rows; ++ty) {
+          names.add(tileName(iname, tx, ty, div));
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Calculates the content hash of an image. Tiles are keyed by the
+   * content hash of their source image, so that identical images in
+   * different modules, module versions, or extensions share tiles.
+   *
+   * @param in a stream containing the image data
+   * @return the hex-encoded SHA-1 of the image data
+   *
+   * @throws IOException if the read fails
+   */
+  public static String contentHash(InputStream in) throws IOException {
+    return DigestUtils.sha1Hex(in);
+  }
 }
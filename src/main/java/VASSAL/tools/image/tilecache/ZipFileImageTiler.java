@@ -82,14 +82,24 @@ public class ZipFileImageTiler {
       final int tw = Integer.parseInt(args[2]);
       final int th = Integer.parseInt(args[3]);
 
-      // Get the image paths from stdin, one per line
+      // Get the image paths from stdin, one per line, each optionally
+      // followed by a tab and the name under which to store its tiles
       final List<String> pl = new ArrayList<>();
+      final List<String> nl = new ArrayList<>();
       BufferedReader stdin = null;
       try {
         stdin = new BufferedReader(new InputStreamReader(System.in));
         String s;
         while ((s = stdin.readLine()) != null) {
-          pl.add(s);
+          final int tab = s.indexOf('\t');
+          if (tab < 0) {
+            pl.add(s);
+            nl.add(s);
+          }
+          else {
+            pl.add(s.substring(0, tab));
+            nl.add(s.substring(tab + 1));
+          }
         }
       }
       catch (IOException e) {
@@ -100,6 +110,7 @@ public class ZipFileImageTiler {
       }
 
       final String[] ipaths = pl.toArray(new String[0]);
+      final String[] inames = nl.toArray(new String[0]);
 
       // TODO: Determine what the optimal number of threads is.
       final Runtime runtime = Runtime.getRuntime();
@@ -171,7 +182,7 @@ public class ZipFileImageTiler {
         try (FileArchive fa = new ZipArchive(zpath)) {
           // Tile the images
           tiler.run(
-            fa, tpath, tw, th, ipaths, exec,
+            fa, tpath, tw, th, ipaths, inames, exec,
             loader, slicer, imageL, tileL, doneL
           );
         }
@@ -104,6 +104,14 @@ public abstract class AbstractOpImpl
     return getFuture(obs);
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public Future<BufferedImage> getFutureImage(ImageOpObserver obs,
+                                              int priority)
+                                                    throws ExecutionException {
+    return getFuture(obs, priority);
+  }
+
   /**
    * A utility method for retrieving the size of the computed
    * <code>Image</code> from the cache if the <code>Image</code>
@@ -191,6 +199,12 @@ public abstract class AbstractOpImpl
   public abstract Future<BufferedImage> getFutureTile(
     int tileX, int tileY, ImageOpObserver obs) throws ExecutionException;
 
+  /** {@inheritDoc} */
+  @Override
+  public abstract Future<BufferedImage> getFutureTile(
+    int tileX, int tileY, ImageOpObserver obs, int priority)
+                                                     throws ExecutionException;
+
   /** {@inheritDoc} */
   @Override
   public ImageOp getTileOp(Point p) {
@@ -122,6 +122,26 @@ public abstract class AbstractTileOpImpl extends AbstractOpImpl {
     return getFutureImage(obs);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @return <code>getFutureImage(obs, priority)</code>, because there is
+   * only one tile
+   * @throws IndexOutOfBoundsException
+   *    If <code>tileX != 0</code> or <code>tileY != 0</code>.
+   */
+  @Override
+  public Future<BufferedImage> getFutureTile(
+    int tileX, int tileY, ImageOpObserver obs, int priority)
+                                                     throws ExecutionException
+  {
+    // we are but a single humble tile
+    if (tileX != 0 || tileY != 0)
+      throw new IndexOutOfBoundsException();
+
+    return getFutureImage(obs, priority);
+  }
+
   @Override
   public ImageOp getTileOp(int tileX, int tileY) {
     // we are but a single humble tile
@@ -150,6 +150,24 @@ public abstract class AbstractTiledOpImpl extends AbstractOpImpl {
     return getTileOp(tileX, tileY).getFutureImage(obs);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IndexOutOfBoundsException unless {@code 0 <= tileX < numXTiles}
+   * and {@code 0 <= tileY < numYTiles}.
+   */
+  @Override
+  public Future<BufferedImage> getFutureTile(
+    int tileX, int tileY, ImageOpObserver obs, int priority)
+                                                     throws ExecutionException
+  {
+    if (tileX < 0 || tileX >= numXTiles ||
+        tileY < 0 || tileY >= numYTiles)
+      throw new IndexOutOfBoundsException();
+
+    return getTileOp(tileX, tileY).getFutureImage(obs, priority);
+  }
+
   /**
    * {@inheritDoc}
    *
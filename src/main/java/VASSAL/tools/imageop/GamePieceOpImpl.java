@@ -78,6 +78,16 @@ public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
     return super.getFuture(obs);
   }
 
+  @Override
+  public Future<BufferedImage> getFuture(OpObserver<BufferedImage> obs,
+                                         int priority)
+                                                  throws ExecutionException {
+    // GamePieceOpImpl CANNOT be called asynchronously becuase it cannot
+    // reliably report on its dependencies.
+    if (obs != null) throw new UnsupportedOperationException();
+    return super.getFuture(obs, priority);
+  }
+
   @Override
   public List<Op<?>> getSources() {
     return Collections.emptyList();
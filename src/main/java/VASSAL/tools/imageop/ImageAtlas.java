@@ -0,0 +1,279 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.imageop;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import VASSAL.tools.image.ImageUtils;
+
+/**
+ * A sprite atlas for small, frequently drawn images, such as piece images.
+ *
+ * <p>Each image drawn more than once is copied into a shared page, and
+ * thereafter drawn from that page. Java2D keeps an accelerated copy of each
+ * managed image it draws, so drawing hundreds of pieces from a few large
+ * pages is much cheaper than drawing each from its own image.</p>
+ *
+ * <p>There is one atlas per scale, so that the pages for a zoom level are
+ * dropped together when that zoom level is no longer used. Images are
+ * tracked by identity and forgotten when they are garbage collected; when
+ * the pages of an atlas are full, the page least recently drawn from is
+ * emptied and filled again.</p>
+ *
+ * <p>The atlas may be disabled with the system property
+ * <code>VASSAL.imageAtlas=false</code>.</p>
+ *
+ * @since 3.3.2
+ */
+public class ImageAtlas {
+
+  /** The width and height of a page. */
+  protected static final int PAGE_SIZE = 1024;
+
+  /** The maximum number of pages per atlas. */
+  protected static final int MAX_PAGES = 4;
+
+  /** Images larger than this in either dimension are not packed. */
+  protected static final int MAX_SPRITE_SIZE = 256;
+
+  /** The number of draws after which an image is packed. */
+  protected static final int PACK_THRESHOLD = 2;
+
+  /** The number of atlases (i.e., scales) retained. */
+  protected static final int MAX_ATLASES = 3;
+
+  // padding keeps neighboring sprites from bleeding under interpolation
+  private static final int PAD = 1;
+
+  private static final boolean ENABLED = Boolean.parseBoolean(
+    System.getProperty("VASSAL.imageAtlas", "true"));
+
+  private static final Map<Double,ImageAtlas> atlases =
+    new LinkedHashMap<>(MAX_ATLASES, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Double,ImageAtlas> e) {
+        return size() > MAX_ATLASES;
+      }
+    };
+
+  /**
+   * Gets the atlas for a scale.
+   *
+   * @param scale the scale at which the images were rendered
+   * @return the atlas for <code>scale</code>
+   */
+  public static synchronized ImageAtlas forScale(double scale) {
+    return atlases.computeIfAbsent(scale, s -> new ImageAtlas());
+  }
+
+  /**
+   * Draws an image, from the atlas for the given scale if possible.
+   *
+   * @param g the graphics context
+   * @param img the image to draw
+   * @param x the x coordinate at which to draw
+   * @param y the y coordinate at which to draw
+   * @param scale the scale at which the image was rendered
+   * @param obs the observer to be notified of image updates
+   */
+  public static void drawImage(Graphics g, BufferedImage img, int x, int y,
+                               double scale, ImageObserver obs) {
+    if (!ENABLED || img.getWidth() > MAX_SPRITE_SIZE ||
+                    img.getHeight() > MAX_SPRITE_SIZE) {
+      g.drawImage(img, x, y, obs);
+    }
+    else {
+      forScale(scale).draw(g, img, x, y, obs);
+    }
+  }
+
+  /** Clears all atlases. */
+  public static synchronized void clearAll() {
+    atlases.clear();
+  }
+
+  /** A sprite's place in a page. Never changed once made. */
+  protected static final class Slot {
+    protected final Page page;
+    protected final BufferedImage image;
+    protected final int x;
+    protected final int y;
+
+    protected Slot(Page page, int x, int y) {
+      this.page = page;
+      this.image = page.image;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  protected static class Sprite {
+    protected int uses;
+    protected Slot slot;
+  }
+
+  protected static class Page {
+    protected BufferedImage image;
+    protected long lastUsed;
+
+    // the shelf currently being filled
+    protected int shelfX;
+    protected int shelfY;
+    protected int shelfHeight;
+
+    protected Page() {
+      clear();
+    }
+
+    /**
+     * Empties the page. A new image is made, since the old one may still
+     * be being drawn from.
+     */
+    protected void clear() {
+      image = ImageUtils.createCompatibleTranslucentImage(PAGE_SIZE, PAGE_SIZE);
+      shelfX = shelfY = shelfHeight = 0;
+    }
+  }
+
+  protected final Map<BufferedImage,Sprite> sprites = new WeakHashMap<>();
+  protected final List<Page> pages = new ArrayList<>();
+
+  // the page being filled
+  private Page current;
+
+  // counts lookups, to find the least recently used page
+  private long clock;
+
+  /**
+   * Draws an image from this atlas, packing it into a page once it has
+   * been drawn often enough.
+   *
+   * @param g the graphics context
+   * @param img the image to draw
+   * @param x the x coordinate at which to draw
+   * @param y the y coordinate at which to draw
+   * @param obs the observer to be notified of image updates
+   */
+  public void draw(Graphics g, BufferedImage img, int x, int y,
+                   ImageObserver obs) {
+    final Slot s = lookup(img);
+    if (s == null) {
+      g.drawImage(img, x, y, obs);
+    }
+    else {
+      final int w = img.getWidth();
+      final int h = img.getHeight();
+      g.drawImage(s.image, x, y, x + w, y + h,
+                  s.x, s.y, s.x + w, s.y + h, obs);
+    }
+  }
+
+  /**
+   * Counts a use of an image, packing it if it has been used often enough.
+   *
+   * @param img the image
+   * @return where the image is in this atlas, or <code>null</code> if it
+   * is not in this atlas
+   */
+  protected synchronized Slot lookup(BufferedImage img) {
+    Sprite s = sprites.get(img);
+    if (s == null) {
+      s = new Sprite();
+      sprites.put(img, s);
+    }
+
+    if (s.slot == null && ++s.uses >= PACK_THRESHOLD) {
+      pack(img, s);
+    }
+
+    if (s.slot != null) {
+      s.slot.page.lastUsed = ++clock;
+    }
+    return s.slot;
+  }
+
+  protected void pack(BufferedImage img, Sprite s) {
+    final int w = img.getWidth() + 2*PAD;
+    final int h = img.getHeight() + 2*PAD;
+
+    Page p = current;
+
+    // start a new shelf if this one is too narrow
+    if (p != null && p.shelfX + w > PAGE_SIZE) {
+      p.shelfX = 0;
+      p.shelfY += p.shelfHeight;
+      p.shelfHeight = 0;
+    }
+
+    // start a new page if this one is full
+    if (p == null || p.shelfY + h > PAGE_SIZE) {
+      p = nextPage();
+      current = p;
+    }
+
+    final Graphics2D g = p.image.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.drawImage(img, p.shelfX + PAD, p.shelfY + PAD, null);
+    g.dispose();
+
+    s.slot = new Slot(p, p.shelfX + PAD, p.shelfY + PAD);
+
+    p.shelfX += w;
+    p.shelfHeight = Math.max(p.shelfHeight, h);
+  }
+
+  /*
+   * Adds a page, or if there are enough already, empties the one least
+   * recently drawn from. Its sprites are packed again as they are drawn.
+   */
+  private Page nextPage() {
+    if (pages.size() < MAX_PAGES) {
+      final Page p = new Page();
+      pages.add(p);
+      return p;
+    }
+
+    Page lru = pages.get(0);
+    for (Page p : pages) {
+      if (p.lastUsed < lru.lastUsed) {
+        lru = p;
+      }
+    }
+
+    for (Sprite o : sprites.values()) {
+      if (o.slot != null && o.slot.page == lru) {
+        o.slot = null;
+        o.uses = 0;
+      }
+    }
+    lru.clear();
+    return lru;
+  }
+}
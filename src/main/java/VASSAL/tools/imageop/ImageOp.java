@@ -140,6 +140,21 @@ public interface ImageOp extends VASSAL.tools.opcache.Op<BufferedImage> {
   public Future<BufferedImage> getFutureImage(ImageOpObserver obs)
     throws ExecutionException;
 
+  /**
+   * Submits a request for the <code>BufferedImage</code> produced by this
+   * operation, and returns a reference to that request. This is the same
+   * as {@link #getFutureImage(ImageOpObserver)}, except that asynchronous
+   * requests are scheduled according to <code>priority</code>.
+   *
+   * @param obs the observer to be notified on completion
+   * @param priority the priority hint; lower values run sooner
+   * @return a <code>Future</code> for the resulting <code>BufferedImage</code>
+   * @throws ExecutionException if the operation failed
+   */
+  public Future<BufferedImage> getFutureImage(ImageOpObserver obs,
+                                              int priority)
+    throws ExecutionException;
+
   /**
    * Returns the size of the <code>BufferedImage</code> which would be returned
    * by {@link #getImage}. The size is cached so that it need not be
@@ -325,6 +340,25 @@ public interface ImageOp extends VASSAL.tools.opcache.Op<BufferedImage> {
   public Future<BufferedImage> getFutureTile(
     int tileX, int tileY, ImageOpObserver obs) throws ExecutionException;
 
+  /**
+   * Submits a request for tile <code>(tileX,tileY)</code>, and returns a
+   * reference to that request. This is the same as
+   * {@link #getFutureTile(int,int,ImageOpObserver)}, except that
+   * asynchronous requests are scheduled according to <code>priority</code>.
+   * Callers painting a viewport should pass lower values for tiles nearer
+   * to the center of the viewport.
+   *
+   * @param tileX the x position of the requested tile
+   * @param tileY the y position of the requested tile
+   * @param obs the observer to be notified on completion
+   * @param priority the priority hint; lower values run sooner
+   * @return a <code>Future</code> for the resulting <code>BufferedImage</code>
+   * @throws ExecutionException if the operation failed
+   */
+  public Future<BufferedImage> getFutureTile(
+    int tileX, int tileY, ImageOpObserver obs, int priority)
+                                                     throws ExecutionException;
+
   /**
    * Returns an <code>ImageOp</code> which can produce the requested tile.
    *
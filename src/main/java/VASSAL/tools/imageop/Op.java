@@ -106,6 +106,7 @@ public class Op {
 
   public static void clearCache() {
     AbstractOpImpl.clearCache();
+    ImageAtlas.clearAll();
   }
 
   public static boolean handleException(Exception e) {
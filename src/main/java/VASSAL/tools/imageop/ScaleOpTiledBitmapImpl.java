@@ -39,6 +39,13 @@ import VASSAL.tools.image.ImageUtils;
  * An {@link ImageOp} which scales its source and cobbles scaled tiles
  * from the tile cache.
  *
+ * <p>At inverse powers of two, tiles are read directly from the tile
+ * cache. At other scales below 1:1, tiles are resampled from the nearest
+ * larger pyramid level in the tile cache, so the cost of a tile is bounded
+ * by the number of pixels displayed rather than the size of the source.
+ * Since the pyramid levels are already filtered, the final resample uses
+ * a cheap, short filter.</p>
+ *
  * @since 3.2.0
  * @author Joel Uckelman
  */
@@ -54,6 +61,34 @@ public class ScaleOpTiledBitmapImpl extends ScaleOpBitmapImpl {
     super(sop, scale, hints);
   }
 
+  /** The pyramid level from which tiles are resampled, when downscaling. */
+  private volatile ImageOp pyramidOp;
+
+  /**
+   * Returns the scale of the smallest pyramid level which is no smaller
+   * than the given scale.
+   *
+   * @param scale a scale less than 1
+   * @return the inverse power of two no smaller than <code>scale</code>
+   */
+  static double pyramidScale(double scale) {
+    return 1.0 / Integer.highestOneBit((int) (1.0/scale));
+  }
+
+  /**
+   * Returns the op for the pyramid level from which tiles at this scale
+   * are resampled. The op is shared by all tiles at this scale.
+   *
+   * @return the op for the pyramid level
+   */
+  protected ImageOp getPyramidOp() {
+    ImageOp op = pyramidOp;
+    if (op == null) {
+      op = pyramidOp = new ScaleOpTiledBitmapImpl(sop, pyramidScale(scale));
+    }
+    return op;
+  }
+
   @Override
   protected ImageOp createTileOp(int tileX, int tileY) {
     final double iscale = 1.0/scale;
@@ -87,8 +122,10 @@ public class ScaleOpTiledBitmapImpl extends ScaleOpBitmapImpl {
 
     private final int hash;
 
+    // Downscaling is always from a pyramid level at most twice the
+    // destination size, so a short filter suffices.
     private static final GeneralFilter.Filter downFilter =
-      new GeneralFilter.Lanczos3Filter();
+      new GeneralFilter.HermiteFilter();
 
     private static final GeneralFilter.Filter upFilter =
       new GeneralFilter.MitchellFilter();
@@ -125,10 +162,7 @@ public class ScaleOpTiledBitmapImpl extends ScaleOpBitmapImpl {
       }
       else {
         // cobble this tile from pyramid tiles at the lub size
-        final double nscale =
-          1.0/(1 << (int) Math.floor(Math.log(1.0/scale)/Math.log(2)));
-
-        rsop = new ScaleOpTiledBitmapImpl(rop.sop, nscale);
+        rsop = rop.getPyramidOp();
       }
 
       sd = rsop.getSize();
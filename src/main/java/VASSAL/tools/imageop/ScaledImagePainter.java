@@ -57,7 +57,7 @@ public class ScaledImagePainter {
 
     if (img == null) return;
 
-    g.drawImage(img, x, y, obs);
+    ImageAtlas.drawImage(g, img, x, y, scale, obs);
   }
 
   public ImageOp getSource() {
@@ -91,6 +91,23 @@ public abstract class AbstractOpImpl<V> implements Op<V> {
     return cache.getFuture(newKey(), obs);
   }
 
+  /**
+   * Submits a request for the result of this operation, with a hint
+   * as to how urgently the result is needed.
+   *
+   * @param obs the observer to be notified on completion
+   * @param priority the priority hint; lower values run sooner
+   * @return a <code>Future</code> for the result
+   *
+   * @throws ExecutionException if the operation failed
+   *
+   * @see OpCache#getFuture(OpCache.Key,OpObserver,int)
+   */
+  public Future<V> getFuture(OpObserver<V> obs, int priority)
+                                                    throws ExecutionException {
+    return cache.getFuture(newKey(), obs, priority);
+  }
+
   private static final ConcurrentMap<Op<?>,OpCache.Key<?>> kcache =
     new ConcurrentHashMap<>();
 
@@ -18,32 +18,50 @@
 
 package VASSAL.tools.opcache;
 
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.SwingWorker;
 
 import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.concurrent.ConcurrentSoftHashMap;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
+import VASSAL.tools.concurrent.WeightedLRUMap;
 
 /**
  * A memory-sensitive cache for {@link Op}s and their results.
  *
+ * <p>Results are held in a least-recently-used cache bounded by the
+ * total size of the cached images. Results evicted from it are kept
+ * in a second tier of soft references, if enabled, until the garbage
+ * collector reclaims them. The capacity may be set with the system
+ * property <code>VASSAL.opcacheSize</code> (in MB; by default, one
+ * quarter of the maximum heap), and the soft tier disabled by setting
+ * <code>VASSAL.opcacheSoftTier</code> to <code>false</code>.</p>
+ *
  * @since 3.1.0
  * @author Joel Uckelman
  */
 public class OpCache {
 
+  /**
+   * The priority of requests made without a priority hint. Requests with
+   * lower priority values are executed first.
+   */
+  public static final int DEFAULT_PRIORITY = 0;
+
   /**
    * A cache key for <code>OpCache</code>.
    */
@@ -95,8 +113,51 @@ public class OpCache {
     }
   }
 
-  protected final ConcurrentMap<Key<?>,Future<?>> cache =
-    new ConcurrentSoftHashMap<>();
+  /** The approximate cost in bytes of a cache entry, excluding images. */
+  private static final long ENTRY_WEIGHT = 64;
+
+  /**
+   * The default capacity of the cache, in bytes: a quarter of the maximum
+   * heap, unless set in MB by -DVASSAL.opcacheSize.
+   */
+  public static final long DEFAULT_CAPACITY = ((long) Integer.getInteger(
+    "VASSAL.opcacheSize",
+    // maxMemory() is Long.MAX_VALUE when the heap is unlimited
+    (int) Math.min(Runtime.getRuntime().maxMemory() >> 22,
+                   Integer.MAX_VALUE))) << 20;
+
+  private static final boolean SOFT_TIER = Boolean.parseBoolean(
+    System.getProperty("VASSAL.opcacheSoftTier", "true"));
+
+  protected final WeightedLRUMap<Key<?>,Future<?>> cache =
+    new WeightedLRUMap<>(
+      DEFAULT_CAPACITY,
+      OpCache::weigh,
+      SOFT_TIER ? new ConcurrentSoftHashMap<>() : null
+    );
+
+  /**
+   * Weighs a cached result by the size of its image raster. Incomplete
+   * requests weigh nothing, so are never evicted.
+   */
+  private static long weigh(Future<?> fut) {
+    if (!fut.isDone()) return 0;
+    if (fut == failure) return ENTRY_WEIGHT;
+
+    try {
+      final Object val = fut.get();
+      if (val instanceof BufferedImage) {
+        final BufferedImage img = (BufferedImage) val;
+        return ENTRY_WEIGHT + (long) img.getWidth() * img.getHeight() *
+          img.getColorModel().getPixelSize() / 8;
+      }
+    }
+    catch (CancellationException | ExecutionException | InterruptedException e) {
+      // failed results cost only their entry
+    }
+
+    return ENTRY_WEIGHT;
+  }
 
   /**
    * A request for execution of an {@link Op} which will be completed
@@ -190,12 +251,18 @@ public class OpCache {
     private final Key<V> key;
     private final OpObserver<V> obs;
 
-    public Request(Key<V> key, OpObserver<V> obs) {
+    // ordering in the request queue; set only while not queued
+    private volatile int priority;
+    private volatile long seq;
+
+    public Request(Key<V> key, OpObserver<V> obs, int priority) {
       if (key == null) throw new IllegalArgumentException();
       if (obs == null) throw new IllegalArgumentException();
 
       this.key = key;
       this.obs = obs;
+      this.priority = priority;
+      this.seq = nextSeq.getAndIncrement();
     }
 
     @Override
@@ -205,6 +272,9 @@ public class OpCache {
 
     @Override
     protected void done() {
+      // charge the result to the cache now that it has a size
+      cache.reweigh(key);
+
       try {
         final V val = get();
         if (obs != null) obs.succeeded(key.op, val);
@@ -258,7 +328,7 @@ public class OpCache {
                                                          InterruptedException,
                                                          ExecutionException
   {
-    Future<V> fut = getFuture(key, obs);
+    final Future<V> fut = getFuture(key, obs);
 
     // We block on the op when there is no observer, and
     // return right away if the op is already done.
@@ -297,9 +367,35 @@ public class OpCache {
    *
    * @throws ExecutionException if the request is synchronous and fails
    */
-  @SuppressWarnings("unchecked")
   public <V> Future<V> getFuture(Key<V> key, OpObserver<V> obs)
                                                     throws ExecutionException
+  {
+    return getFuture(key, obs, DEFAULT_PRIORITY);
+  }
+
+  /**
+   * Gets a {@link Future} from the cache. If <code>obs == null</code>, then
+   * the {@link Op} associated with <code>key</code> will be executed
+   * synchronously, and asynchronously otherwise.
+   *
+   * <p>Asynchronous requests are executed in order of <code>priority</code>,
+   * lowest first, and most recently requested first among requests of
+   * equal priority. Re-requesting a queued request moves it to the front
+   * of its priority, so requests which are no longer being asked for
+   * (e.g., for tiles scrolled out of view) fall behind current ones.</p>
+   *
+   * @param key the <code>Key</code> for which to retrieve a
+   *    <code>Future</code>
+   * @param obs the <code>OpObserver</code> to notify when the value is
+   *    available
+   * @param priority the priority hint for an asynchronous request
+   * @return the <code>Future</code> associated with <code>key</code>
+   *
+   * @throws ExecutionException if the request is synchronous and fails
+   */
+  @SuppressWarnings("unchecked")
+  public <V> Future<V> getFuture(Key<V> key, OpObserver<V> obs, int priority)
+                                                    throws ExecutionException
   {
     // The code in this method was inspired by the article at
     // http://www.javaspecialists.eu/archive/Issue125.html.
@@ -326,11 +422,14 @@ public class OpCache {
             res.set(val);
           }
 
+          // charge the result to the cache now that it has a size
+          cache.reweigh(key);
+
           fut = res;
         }
       }
       else {
-        final Request<V> req = new Request<>(key, obs);
+        final Request<V> req = new Request<>(key, obs, priority);
         fut = (Future<V>) cache.putIfAbsent(key, req);
         if (fut == null) {
           threadPool.submit(req);
@@ -338,28 +437,61 @@ public class OpCache {
         }
       }
     }
-    else {
+    else if (fut instanceof Request) {
       // Are we a synchronous request in the queue being re-requested?
-      if (obs == null && fut instanceof Runnable) {
+      if (obs == null) {
         if (requestQueue.remove(fut)) {
           // Then run on this thread to prevent deadlock.
           ((Runnable) fut).run();
         }
       }
+      else {
+        reprioritize((Request<V>) fut, priority);
+      }
     }
 
     return fut;
   }
 
-/////
-// FIXME: finalize this...
+  /**
+   * Moves a queued request to the front of the given priority.
+   */
+  private <V> void reprioritize(Request<V> req, int priority) {
+    // A request which is no longer queued is running or done.
+    if (requestQueue.remove(req)) {
+      req.priority = Math.min(req.priority, priority);
+      req.seq = nextSeq.getAndIncrement();
+      requestQueue.add(req);
+    }
+  }
+
+  /** The number of threads used for asynchronous requests. */
+  public static final int THREADS = Math.max(2, Integer.getInteger(
+    "VASSAL.opcacheThreads", Runtime.getRuntime().availableProcessors()));
+
+  private final AtomicLong nextSeq = new AtomicLong();
+
+  /**
+   * Orders requests by priority, then last-in-first-out.
+   */
+  private static final Comparator<Runnable> requestOrder = (a, b) -> {
+    final Request<?> ra = (Request<?>) a;
+    final Request<?> rb = (Request<?>) b;
+
+    if (ra.priority != rb.priority) {
+      return ra.priority < rb.priority ? -1 : 1;
+    }
+
+    return Long.compare(rb.seq, ra.seq);
+  };
+
   private final BlockingQueue<Runnable> requestQueue =
-    new LinkedBlockingQueue<>();
+    new PriorityBlockingQueue<>(64, requestOrder);
 
   private static class Ex extends ThreadPoolExecutor {
-    public Ex(int corePoolSize, int maximumPoolSize, long keepAliveTime,
-              TimeUnit unit, BlockingQueue<Runnable> workQueue) {
-      super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+    public Ex(int poolSize, BlockingQueue<Runnable> workQueue) {
+      super(poolSize, poolSize, 60, TimeUnit.SECONDS, workQueue,
+            new DaemonThreadFactory(OpCache.class.getSimpleName()));
     }
 
     public <V> Future<V> submit(SwingWorker<V,?> req) {
@@ -368,9 +500,7 @@ public class OpCache {
     }
   }
 
-  private final Ex threadPool =
-    new Ex(2, 2, 60, TimeUnit.SECONDS, requestQueue);
-/////
+  private final Ex threadPool = new Ex(THREADS, requestQueue);
 
   /**
    * Gets a value from the cache, if it is already calculated.
@@ -395,4 +525,38 @@ public class OpCache {
 // FIXME: should cancel all pending requests?
     cache.clear();
   }
+
+  /**
+   * Sets the maximum total size of the results held strongly by the cache.
+   *
+   * @param capacity the capacity, in bytes
+   */
+  public void setCapacity(long capacity) {
+    cache.setCapacity(capacity);
+  }
+
+  /** @return the maximum total size of the cached results, in bytes */
+  public long getCapacity() {
+    return cache.getCapacity();
+  }
+
+  /** @return the total size of the cached results, in bytes */
+  public long getWeight() {
+    return cache.getWeight();
+  }
+
+  /** @return the number of lookups which found a cached result */
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  /** @return the number of lookups which found no cached result */
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+
+  /** @return the number of results evicted to stay within capacity */
+  public long getEvictionCount() {
+    return cache.getEvictionCount();
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+import org.junit.Test;
+
+import VASSAL.counters.BasicPiece;
+import VASSAL.counters.Stack;
+
+import static org.junit.Assert.*;
+
+public class StackMetricsTest {
+
+  private static class SidedMetrics extends StackMetrics {
+    private String side;
+
+    @Override
+    protected String getSide() {
+      return side;
+    }
+  }
+
+  private static class SizedPiece extends BasicPiece {
+    private Rectangle bounds;
+
+    SizedPiece(Rectangle bounds) {
+      this.bounds = bounds;
+    }
+
+    @Override
+    public Rectangle boundingBox() {
+      return new Rectangle(bounds);
+    }
+
+    @Override
+    public Shape getShape() {
+      return new Rectangle(bounds);
+    }
+
+    // no module to fall back on
+    @Override
+    public Object getProperty(Object key) {
+      return null;
+    }
+  }
+
+  private static SizedPiece piece(Rectangle bounds) {
+    return new SizedPiece(bounds);
+  }
+
+  private static Stack stack(SizedPiece... pieces) {
+    final Stack s = new Stack();
+    for (SizedPiece p : pieces) {
+      s.add(p);
+    }
+    return s;
+  }
+
+  @Test
+  public void testUnchangedStackReusesLayout() {
+    final StackMetrics metrics = new SidedMetrics();
+    final Stack s = stack(piece(new Rectangle(-10, -10, 20, 20)),
+                          piece(new Rectangle(-10, -10, 20, 20)));
+    final StackMetrics.Layout layout = metrics.getLayout(s);
+    assertSame(layout, metrics.getLayout(s));
+  }
+
+  @Test
+  public void testInvalidatedStackRecomputesLayout() {
+    final StackMetrics metrics = new SidedMetrics();
+    final SizedPiece top = piece(new Rectangle(-10, -10, 20, 20));
+    final Stack s = stack(piece(new Rectangle(-10, -10, 20, 20)), top);
+    final StackMetrics.Layout layout = metrics.getLayout(s);
+
+    // the members are not examined until the stack is told of a change
+    final Rectangle grown = new Rectangle(-20, -20, 40, 40);
+    top.bounds = grown;
+    assertSame(layout, metrics.getLayout(s));
+
+    s.invalidateLayout();
+    final StackMetrics.Layout relaid = metrics.getLayout(s);
+    assertNotSame(layout, relaid);
+    assertEquals(grown.width, relaid.boundingBoxes[1].width);
+    assertEquals(grown.height, relaid.boundingBoxes[1].height);
+    assertSame(relaid, metrics.getLayout(s));
+  }
+
+  @Test
+  public void testChangedSideRecomputesLayout() {
+    final SidedMetrics metrics = new SidedMetrics();
+    metrics.side = "Allies"; //$NON-NLS-1$
+    final Stack s = stack(piece(new Rectangle(-10, -10, 20, 20)));
+    final StackMetrics.Layout layout = metrics.getLayout(s);
+
+    metrics.side = "Axis"; //$NON-NLS-1$
+    final StackMetrics.Layout relaid = metrics.getLayout(s);
+    assertNotSame(layout, relaid);
+    assertSame(relaid, metrics.getLayout(s));
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import VASSAL.build.module.Chatter;
+import VASSAL.command.Command;
+import VASSAL.command.CommandEncoder;
+import VASSAL.command.NullCommand;
+import VASSAL.command.PlayAudioClipCommand;
+import VASSAL.tools.SequenceEncoder;
+
+import static org.junit.Assert.*;
+
+public class SynchSnapshotTest {
+
+  private static final String PIECES = "pieces-at-A1-B2-C3-D4-E5-F6"; //$NON-NLS-1$
+  private static final String CHAT = "chat:"; //$NON-NLS-1$
+
+  private static class Step extends Command {
+    private final String name;
+    private final boolean loggable;
+
+    Step(String name, boolean loggable) {
+      this.name = name;
+      this.loggable = loggable;
+    }
+
+    @Override
+    protected void executeCommand() {
+    }
+
+    @Override
+    protected Command myUndoCommand() {
+      return null;
+    }
+
+    @Override
+    public boolean isLoggable() {
+      return loggable;
+    }
+  }
+
+  private final AtomicInteger restores = new AtomicInteger();
+  private final AtomicInteger encodes = new AtomicInteger();
+  private SynchSnapshot snapshot;
+
+  // encodes compound commands as a comma-separated sequence, like a module
+  private final CommandEncoder encoder = new CommandEncoder() {
+    @Override
+    public Command decode(String command) {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(command, ',');
+      final String s = st.nextToken();
+      final Command c = s.isEmpty() ? new NullCommand() :
+        s.startsWith(CHAT) ? new Chatter.DisplayText(null, s.substring(CHAT.length())) :
+        new Step(s, true);
+      while (st.hasMoreTokens()) {
+        c.append(decode(st.nextToken()));
+      }
+      return c;
+    }
+
+    @Override
+    public String encode(Command c) {
+      encodes.incrementAndGet();
+      String s = snapshot.encode(c);
+      if (s == null) {
+        s = c instanceof NullCommand ? "" : //$NON-NLS-1$
+          c instanceof Chatter.DisplayText ? CHAT + ((Chatter.DisplayText) c).getMessage() :
+          ((Step) c).name;
+      }
+      final SequenceEncoder se = new SequenceEncoder(s, ',');
+      for (Command sub : c.getSubCommands()) {
+        se.append(encode(sub));
+      }
+      return se.getValue();
+    }
+  };
+
+  private SynchSnapshot create() {
+    snapshot = new SynchSnapshot(encoder, () -> {
+      final int n = restores.incrementAndGet();
+      return new Step("game" + n, true).append(new Step(PIECES, true)); //$NON-NLS-1$
+    });
+    return snapshot;
+  }
+
+  private static String value(Command c) {
+    return ((SynchSnapshot.Encoded) c).getValue();
+  }
+
+  @Test
+  public void testJoinsShareOneEncoding() {
+    final SynchSnapshot s = create();
+    final String first = value(s.getSynchCommand());
+    assertEquals("game1," + PIECES, first); //$NON-NLS-1$
+    assertSame(first, value(s.getSynchCommand()));
+    assertEquals(1, restores.get());
+  }
+
+  @Test
+  public void testCommandsSinceSnapshotFollowIt() {
+    final SynchSnapshot s = create();
+    s.getSynchCommand();
+    s.executed(new Step("move1", true)); //$NON-NLS-1$
+    s.executed(new Step("move2", true)); //$NON-NLS-1$
+
+    final SequenceEncoder.Decoder st =
+      new SequenceEncoder.Decoder(value(s.getSynchCommand()), ',');
+    assertEquals("game1," + PIECES, st.nextToken()); //$NON-NLS-1$
+    assertEquals("move1", st.nextToken()); //$NON-NLS-1$
+    assertEquals("move2", st.nextToken()); //$NON-NLS-1$
+    assertFalse(st.hasMoreTokens());
+    assertEquals(1, restores.get());
+  }
+
+  @Test
+  public void testNothingKeptWithoutSnapshot() {
+    final SynchSnapshot s = create();
+    s.executed(new Step("move1", true)); //$NON-NLS-1$
+    assertEquals(0, encodes.get());
+    assertEquals("game1," + PIECES, value(s.getSynchCommand())); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testSnapshotDiscarded() {
+    final SynchSnapshot s = create();
+    s.getSynchCommand();
+
+    // a command which is not logged may not be safe to replay
+    s.executed(new Step("sides", false)); //$NON-NLS-1$
+    assertEquals("game2," + PIECES, value(s.getSynchCommand())); //$NON-NLS-1$
+
+    s.setup(false);
+    assertEquals("game3," + PIECES, value(s.getSynchCommand())); //$NON-NLS-1$
+
+    // requests to synchronize are not part of the game
+    s.executed(new SynchCommand(null, null));
+    assertEquals(3, restores.get());
+
+    // a tail longer than half the snapshot costs more than encoding again
+    s.executed(new Step("a-long-command-longer-than-half-the-game", true)); //$NON-NLS-1$
+    assertEquals("game4," + PIECES, value(s.getSynchCommand())); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testMessagesAreNotReplayed() {
+    final SynchSnapshot s = create();
+    s.getSynchCommand();
+
+    s.executed(new Chatter.DisplayText(null, "hello")); //$NON-NLS-1$
+    s.executed(new NullCommand().append(new PlayAudioClipCommand("bell"))); //$NON-NLS-1$
+
+    final Command move = new Step("move1", true) //$NON-NLS-1$
+      .append(new Chatter.DisplayText(null, "moved")); //$NON-NLS-1$
+    s.executed(move);
+
+    final SequenceEncoder.Decoder st =
+      new SequenceEncoder.Decoder(value(s.getSynchCommand()), ',');
+    assertEquals("game1," + PIECES, st.nextToken()); //$NON-NLS-1$
+    assertEquals("move1", st.nextToken()); //$NON-NLS-1$
+    assertFalse(st.hasMoreTokens());
+
+    // the command itself, which is still being sent, is left alone
+    assertEquals(1, move.getSubCommands().length);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import VASSAL.tools.ArgsParser;
+
+/**
+ * Runs a cluster of node servers on this machine, each in a process of its
+ * own, and puts load on it with a {@link LoadGenerator} whose players of
+ * each room are spread over all the servers.
+ *
+ * <p>Usage: <code>ClusterHarness [-instances 3] [-port 5050]
+ * [-peerPort 6050] [-io nio]</code>, followed by any options of
+ * {@link LoadGenerator} other than <code>host</code> and
+ * <code>port</code>. The servers listen for players on consecutive ports
+ * from <code>port</code>, and for each other on consecutive ports from
+ * <code>peerPort</code>; their output goes to this process's.</p>
+ *
+ * @since 3.3.2
+ */
+public class ClusterHarness {
+
+  public static void main(String[] args) throws Exception {
+    final Properties p = new ArgsParser(args).getProperties();
+    final int instances = Integer.parseInt(p.getProperty("instances", "3")); //$NON-NLS-1$ //$NON-NLS-2$
+    final int port = Integer.parseInt(p.getProperty("port", "5050")); //$NON-NLS-1$ //$NON-NLS-2$
+    final int peerPort = Integer.parseInt(p.getProperty("peerPort", "6050")); //$NON-NLS-1$ //$NON-NLS-2$
+
+    final String java = System.getProperty("java.home") + File.separator + //$NON-NLS-1$
+      "bin" + File.separator + "java"; //$NON-NLS-1$ //$NON-NLS-2$
+    final List<Process> servers = new ArrayList<>();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      for (Process s : servers) {
+        s.destroy();
+      }
+    }));
+
+    final int[] ports = new int[instances];
+    for (int i = 0; i < instances; ++i) {
+      ports[i] = port + i;
+
+      final StringBuilder peers = new StringBuilder();
+      for (int j = 0; j < instances; ++j) {
+        if (j != i) {
+          if (peers.length() > 0) {
+            peers.append(',');
+          }
+          peers.append("localhost:").append(peerPort + j); //$NON-NLS-1$
+        }
+      }
+
+      final List<String> cmd = new ArrayList<>();
+      cmd.add(java);
+      cmd.add("-cp"); //$NON-NLS-1$
+      cmd.add(System.getProperty("java.class.path")); //$NON-NLS-1$
+      cmd.add(Server.class.getName());
+      cmd.add("-port"); //$NON-NLS-1$
+      cmd.add(String.valueOf(ports[i]));
+      cmd.add("-peerPort"); //$NON-NLS-1$
+      cmd.add(String.valueOf(peerPort + i));
+      cmd.add("-peers"); //$NON-NLS-1$
+      cmd.add(peers.toString());
+      cmd.add("-name"); //$NON-NLS-1$
+      cmd.add("localhost:" + (peerPort + i)); //$NON-NLS-1$
+      cmd.add("-URL"); //$NON-NLS-1$
+      cmd.add("null"); //$NON-NLS-1$
+      if (p.getProperty("io") != null) { //$NON-NLS-1$
+        cmd.add("-io"); //$NON-NLS-1$
+        cmd.add(p.getProperty("io")); //$NON-NLS-1$
+      }
+      servers.add(new ProcessBuilder(cmd).inheritIO().start());
+    }
+
+    try {
+      for (int pt : ports) {
+        awaitPort(pt);
+      }
+      // give every server time to dial the others at least once more
+      Thread.sleep(PeerServer.RETRY_INTERVAL + 1000L);
+
+      new LoadGenerator().run(
+        "localhost", ports, //$NON-NLS-1$
+        Integer.parseInt(p.getProperty("clients", "1000")), //$NON-NLS-1$ //$NON-NLS-2$
+        Integer.parseInt(p.getProperty("rooms", "50")), //$NON-NLS-1$ //$NON-NLS-2$
+        Integer.parseInt(p.getProperty("messages", "20")), //$NON-NLS-1$ //$NON-NLS-2$
+        Long.parseLong(p.getProperty("interval", "100")) //$NON-NLS-1$ //$NON-NLS-2$
+      );
+    }
+    finally {
+      System.exit(0);
+    }
+  }
+
+  private static void awaitPort(int port) throws InterruptedException {
+    for (int i = 0; i < 300; ++i) {
+      try (Socket s = new Socket("localhost", port)) { //$NON-NLS-1$
+        return;
+      }
+      catch (IOException e) {
+        Thread.sleep(100L);
+      }
+    }
+    throw new IllegalStateException("No server on port " + port); //$NON-NLS-1$
+  }
+}
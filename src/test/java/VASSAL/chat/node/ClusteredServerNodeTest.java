@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import VASSAL.tools.PropertiesEncoder;
+
+import static org.junit.Assert.*;
+
+public class ClusteredServerNodeTest {
+
+  private static final String MSG = "MSG"; //$NON-NLS-1$
+
+  // a player's client, keeping the test messages it receives
+  private static class Client implements SocketWatcher {
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private volatile String list = ""; //$NON-NLS-1$
+    private SocketHandler handler;
+
+    @Override
+    public void handleMessage(String msg) {
+      if (msg.startsWith(MSG)) {
+        received.add(msg);
+      }
+      else if (msg.startsWith(Protocol.LIST)) {
+        list = msg;
+      }
+    }
+
+    @Override
+    public void socketClosed(SocketHandler handler) {
+    }
+
+    String next() throws InterruptedException {
+      return received.poll(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private static Client connect(ServerSocket ss, AsynchronousServerNode server,
+                                String id, String path) throws Exception {
+    final Client c = new Client();
+    c.handler = new SocketHandler(new Socket("localhost", ss.getLocalPort()), c); //$NON-NLS-1$
+    new PlayerNode(ss.accept(), server);
+    c.handler.start();
+    final Properties info = new Properties();
+    info.setProperty("id", id); //$NON-NLS-1$
+    c.handler.writeLine(Protocol.encodeRegisterCommand(
+      id, path, new PropertiesEncoder(info).getStringValue()));
+    return c;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 500 && !condition.getAsBoolean(); ++i) {
+      Thread.sleep(10L);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  @Test
+  public void testPlayersAndMessagesCrossServers() throws Exception {
+    final ClusteredServerNode a = new ClusteredServerNode(null, "a"); //$NON-NLS-1$
+    final ClusteredServerNode b = new ClusteredServerNode(null, "b"); //$NON-NLS-1$
+
+    try (ServerSocket peers = new ServerSocket(0);
+         ServerSocket players = new ServerSocket(0)) {
+      new PeerLink(new Socket("localhost", peers.getLocalPort()), a, true); //$NON-NLS-1$
+      new PeerLink(peers.accept(), b, false);
+      await(() -> a.isLinked("b") && b.isLinked("a")); //$NON-NLS-1$ //$NON-NLS-2$
+
+      final Client a1 = connect(players, a, "a1", "mod/Main"); //$NON-NLS-1$ //$NON-NLS-2$
+      final Client b1 = connect(players, b, "b1", "mod/Main"); //$NON-NLS-1$ //$NON-NLS-2$
+      await(() -> a.getDescendant("mod/Main/b1") instanceof RemotePlayerNode && //$NON-NLS-1$
+                  b.getDescendant("mod/Main/a1") instanceof RemotePlayerNode); //$NON-NLS-1$
+
+      // each player is listed to the other
+      await(() -> a1.list.contains("b1") && b1.list.contains("a1")); //$NON-NLS-1$ //$NON-NLS-2$
+
+      a1.handler.writeLine(Protocol.encodeForwardCommand("mod/Main/~a1", MSG + 1)); //$NON-NLS-1$
+      assertEquals(MSG + 1, b1.next());
+      b1.handler.writeLine(Protocol.encodeForwardCommand("mod/Main", MSG + 2)); //$NON-NLS-1$
+      assertEquals(MSG + 2, a1.next());
+      assertEquals(MSG + 2, b1.next());
+      assertNull(a1.received.poll());
+
+      // moving and leaving are seen on the other server
+      b1.handler.writeLine(Protocol.encodeJoinCommand("mod/Other")); //$NON-NLS-1$
+      await(() -> a.getDescendant("mod/Other/b1") != null && //$NON-NLS-1$
+                  a.getDescendant("mod/Main/b1") == null); //$NON-NLS-1$
+
+      b1.handler.close();
+      await(() -> a.getDescendant("mod/Other") == null); //$NON-NLS-1$
+      assertNotNull(a.getDescendant("mod/Main/a1")); //$NON-NLS-1$
+      a1.handler.close();
+    }
+  }
+
+  @Test
+  public void testKickedRemotePlayerIsMovedByItsServer() throws Exception {
+    final ClusteredServerNode a = new ClusteredServerNode(null, "a"); //$NON-NLS-1$
+    final ClusteredServerNode b = new ClusteredServerNode(null, "b"); //$NON-NLS-1$
+
+    try (ServerSocket peers = new ServerSocket(0);
+         ServerSocket players = new ServerSocket(0)) {
+      new PeerLink(new Socket("localhost", peers.getLocalPort()), a, true); //$NON-NLS-1$
+      new PeerLink(peers.accept(), b, false);
+      await(() -> a.isLinked("b") && b.isLinked("a")); //$NON-NLS-1$ //$NON-NLS-2$
+
+      final Client a1 = connect(players, a, "a1", "mod/Main"); //$NON-NLS-1$ //$NON-NLS-2$
+      final Client b1 = connect(players, b, "b1", "mod/Main"); //$NON-NLS-1$ //$NON-NLS-2$
+      await(() -> a.getDescendant("mod/Main/b1") != null); //$NON-NLS-1$
+
+      final Node remote = a.getDescendant("mod/Main/b1"); //$NON-NLS-1$
+      a.move(remote, "mod/Elsewhere"); //$NON-NLS-1$
+      await(() -> b.getDescendant("mod/Elsewhere/b1") instanceof PlayerNode && //$NON-NLS-1$
+                  a.getDescendant("mod/Elsewhere/b1") == remote); //$NON-NLS-1$
+
+      a1.handler.close();
+      b1.handler.close();
+    }
+  }
+
+  @Test
+  public void testLinksAreAcceptedOnlyFromListedPeers() throws Exception {
+    final InetAddress loopback = InetAddress.getByName("127.0.0.1"); //$NON-NLS-1$
+    assertTrue(PeerServer.isListed(loopback,
+      PeerServer.parsePeers("elsewhere.invalid:6050, 127.0.0.1:6051"))); //$NON-NLS-1$
+    assertFalse(PeerServer.isListed(loopback,
+      PeerServer.parsePeers("10.1.2.3:6050"))); //$NON-NLS-1$
+    assertFalse(PeerServer.isListed(loopback, PeerServer.parsePeers(""))); //$NON-NLS-1$
+  }
+}
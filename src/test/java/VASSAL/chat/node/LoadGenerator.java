@@ -0,0 +1,184 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import VASSAL.tools.ArgsParser;
+import VASSAL.tools.PropertiesEncoder;
+
+/**
+ * Puts load on a node server: opens many connections, spreads them over
+ * rooms, has each one forward messages to its room, and reports how long
+ * the messages took to arrive.
+ *
+ * <p>Usage: <code>LoadGenerator [-host localhost] [-port 5050]
+ * [-clients 1000] [-rooms 50] [-messages 20] [-interval 100]</code>, where
+ * <code>interval</code> is the time in milliseconds between rounds in
+ * which every client sends one message. <code>port</code> may be a
+ * comma-separated list, to spread the players of each room over the
+ * servers of a cluster.</p>
+ *
+ * <p>The clients share one clock, so latency is measured from sending to
+ * each delivery, including the sender's own copy.</p>
+ *
+ * @since 3.3.2
+ */
+public class LoadGenerator {
+
+  private static final String MODULE = "load"; //$NON-NLS-1$
+  private static final String PREFIX = "LOAD\t"; //$NON-NLS-1$
+
+  // latencies in microseconds, in power-of-two buckets
+  private final AtomicLongArray buckets = new AtomicLongArray(64);
+  private final LongAdder received = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  private class Client implements SocketWatcher {
+    private SocketHandler handler;
+
+    @Override
+    public void handleMessage(String msg) {
+      if (msg.startsWith(PREFIX)) {
+        final long sent = Long.parseLong(msg.substring(PREFIX.length()));
+        record((System.nanoTime() - sent) / 1000L);
+      }
+    }
+
+    @Override
+    public void socketClosed(SocketHandler handler) {
+    }
+  }
+
+  private void record(long micros) {
+    buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(micros));
+    received.increment();
+    total.add(micros);
+    max.accumulateAndGet(micros, Math::max);
+  }
+
+  // the upper bound of the bucket holding the given fraction of deliveries
+  private long percentile(double fraction) {
+    final long target = (long) Math.ceil(fraction * received.sum());
+    long seen = 0;
+    for (int i = 0; i < buckets.length(); ++i) {
+      seen += buckets.get(i);
+      if (seen >= target) {
+        return 1L << i;
+      }
+    }
+    return max.get();
+  }
+
+  public void run(String host, int[] ports, int clients, int rooms,
+                  int messages, long interval)
+                                   throws IOException, InterruptedException {
+    final NioEventLoop[] loops =
+      new NioEventLoop[Runtime.getRuntime().availableProcessors()];
+    for (int i = 0; i < loops.length; ++i) {
+      loops[i] = new NioEventLoop("load " + i); //$NON-NLS-1$
+      loops[i].start();
+    }
+
+    final Client[] c = new Client[clients];
+    final int[] roomSize = new int[rooms];
+    for (int i = 0; i < clients; ++i) {
+      c[i] = new Client();
+      final SocketChannel ch =
+        SocketChannel.open(new InetSocketAddress(host, ports[(i / rooms) % ports.length]));
+      c[i].handler = new NioSocketHandler(ch, loops[i % loops.length], c[i]);
+      c[i].handler.start();
+      final Properties info = new Properties();
+      info.setProperty("id", "load" + i); //$NON-NLS-1$ //$NON-NLS-2$
+      c[i].handler.writeLine(Protocol.encodeRegisterCommand(
+        "load" + i, MODULE + "/room" + (i % rooms), //$NON-NLS-1$ //$NON-NLS-2$
+        new PropertiesEncoder(info).getStringValue()));
+      ++roomSize[i % rooms];
+    }
+    System.err.println("Connected " + clients + " clients"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    // let the server register everyone before sending
+    Thread.sleep(2000L);
+
+    long expected = 0;
+    for (int s : roomSize) {
+      expected += (long) s * s * messages;
+    }
+
+    final long start = System.nanoTime();
+    for (int m = 0; m < messages; ++m) {
+      for (int i = 0; i < clients; ++i) {
+        c[i].handler.writeLine(Protocol.encodeForwardCommand(
+          MODULE + "/room" + (i % rooms), PREFIX + System.nanoTime())); //$NON-NLS-1$
+      }
+      Thread.sleep(interval);
+    }
+
+    // wait for stragglers, giving up after ten seconds without progress
+    long last = -1;
+    long lastProgress = System.currentTimeMillis();
+    while (received.sum() < expected &&
+           System.currentTimeMillis() - lastProgress < 10000L) {
+      if (received.sum() != last) {
+        last = received.sum();
+        lastProgress = System.currentTimeMillis();
+      }
+      Thread.sleep(10L);
+    }
+    final double secs = (System.nanoTime() - start) / 1e9;
+
+    final long n = received.sum();
+    System.out.printf("clients %d, rooms %d, messages sent %d%n", //$NON-NLS-1$
+      clients, rooms, (long) clients * messages);
+    System.out.printf("deliveries %d of %d in %.1f s (%.0f/s)%n", //$NON-NLS-1$
+      n, expected, secs, n / secs);
+    if (n > 0) {
+      System.out.printf(
+        "latency us: mean %d, p50 <%d, p90 <%d, p99 <%d, max %d%n", //$NON-NLS-1$
+        total.sum() / n, percentile(0.5), percentile(0.9),
+        percentile(0.99), max.get());
+    }
+
+    for (Client cl : c) {
+      cl.handler.close();
+    }
+    Thread.sleep(1000L);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final Properties p = new ArgsParser(args).getProperties();
+    final String[] ports = p.getProperty("port", "5050").split(","); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    new LoadGenerator().run(
+      p.getProperty("host", "localhost"), //$NON-NLS-1$ //$NON-NLS-2$
+      Arrays.stream(ports).mapToInt(Integer::parseInt).toArray(),
+      Integer.parseInt(p.getProperty("clients", "1000")), //$NON-NLS-1$ //$NON-NLS-2$
+      Integer.parseInt(p.getProperty("rooms", "50")), //$NON-NLS-1$ //$NON-NLS-2$
+      Integer.parseInt(p.getProperty("messages", "20")), //$NON-NLS-1$ //$NON-NLS-2$
+      Long.parseLong(p.getProperty("interval", "100")) //$NON-NLS-1$ //$NON-NLS-2$
+    );
+  }
+}
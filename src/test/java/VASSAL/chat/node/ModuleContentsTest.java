@@ -0,0 +1,156 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ModuleContentsTest {
+
+  private static class Player extends Node {
+    Player(String id, String info) {
+      super(null, id, info);
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return true;
+    }
+
+    @Override
+    public void send(String msg) {
+    }
+  }
+
+  // room/id=info and room=info, in a form which is easy to compare; as in
+  // a LIST, rooms without players are left out
+  private static Map<String,String> describe(Node module) {
+    final Map<String,String> m = new TreeMap<>();
+    if (module != null) {
+      for (Node room : module.getChildren()) {
+        if (room.getChildren().length > 0 &&
+            room.getInfo() != null && room.getInfo().length() > 0) {
+          m.put(room.getId(), room.getInfo());
+        }
+        for (Node p : room.getChildren()) {
+          m.put(room.getId() + "/" + p.getId(), p.getInfo());
+        }
+      }
+    }
+    return m;
+  }
+
+  // sends a delta through the protocol and applies it to the client's copy
+  private static void send(ContentsDelta delta, Node client) {
+    if (delta != null) {
+      Protocol.decodeDeltaCommand(Protocol.encodeDeltaCommand(delta)).apply(client);
+    }
+  }
+
+  @Test
+  public void testMoveIsOneEvent() {
+    final ServerNode server = new ServerNode();
+    final Player a = new Player("a", "info=a");
+    server.registerNode("mod/Main", a);
+    server.registerNode("mod/Main", new Player("b", "info=b"));
+
+    final ModuleContents contents = new ModuleContents();
+    final Node module = server.getChild("mod");
+    final ContentsDelta first = contents.update(module.getChildren());
+    assertEquals(1, first.getSeq());
+    assertEquals(2, first.getEvents().size());
+    assertNull(contents.update(module.getChildren()));
+
+    server.move(a, "mod/room");
+    final ContentsDelta moved = contents.update(module.getChildren());
+    assertEquals(2, moved.getSeq());
+    assertEquals(1, moved.getEvents().size());
+    assertArrayEquals(new String[]{ContentsDelta.MOVED, "Main/a", "room"},
+                      moved.getEvents().get(0));
+  }
+
+  /**
+   * Players join, leave, move, and change their info, and rooms change
+   * theirs. A client applying each delta, or a full delta at any point,
+   * must end up with what the server has.
+   */
+  @Test
+  public void testDeltasReproduceContents() {
+    final ServerNode server = new ServerNode();
+    final ModuleContents contents = new ModuleContents();
+    final Random rnd = new Random(42);
+    final List<Player> players = new ArrayList<>();
+    final Node client = new Node(null, "mod", null);
+
+    for (int step = 0; step < 2000; ++step) {
+      final int op = rnd.nextInt(6);
+      final String room = rnd.nextInt(4) == 0 ? "Main" : "room" + rnd.nextInt(5);
+      if (players.isEmpty() || op == 0) {
+        // ids may repeat, as when a player connects twice
+        final Player p = new Player("p" + rnd.nextInt(30), "n=" + step);
+        server.registerNode("mod/" + room, p);
+        players.add(p);
+      }
+      else {
+        final Player p = players.get(rnd.nextInt(players.size()));
+        if (op == 1) {
+          server.disconnect(p);
+          players.remove(p);
+        }
+        else if (op == 2 || op == 3) {
+          server.move(p, "mod/" + room);
+        }
+        else if (op == 4) {
+          p.setInfo("n=" + step);
+        }
+        else {
+          p.getParent().setInfo("owner=" + p.getId() + "|n=" + step);
+        }
+      }
+
+      final Node module = server.getChild("mod");
+      // several changes may go into one delta
+      if (rnd.nextInt(3) == 0) {
+        continue;
+      }
+
+      send(contents.update(module == null ? new Node[0] : module.getChildren()), client);
+      assertEquals("step " + step, describe(module), describe(client));
+
+      final Node fresh = new Node(null, "mod", null);
+      send(contents.full(), fresh);
+      assertEquals("step " + step, describe(module), describe(fresh));
+    }
+  }
+
+  @Test
+  public void testCapabilities() {
+    assertArrayEquals(new String[]{Protocol.DELTA_CAPABILITY, "x"},
+      Protocol.decodeCapabilitiesCommand(
+        Protocol.encodeCapabilitiesCommand(Protocol.DELTA_CAPABILITY, "x")));
+    assertNull(Protocol.decodeCapabilitiesCommand(Protocol.encodeResyncRequest()));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+  private static EncodedLine line(String s) {
+    return new EncodedLine(s);
+  }
+
+  @Test
+  public void testListAndRoomInfoAreCoalesced() {
+    final OutboundQueue q = new OutboundQueue(1000, 1000);
+    assertTrue(q.add(line("FWD1")));
+    assertTrue(q.add(line(Protocol.LIST + "a")));
+    assertTrue(q.add(line(Protocol.ROOM_INFO + "a")));
+    assertTrue(q.add(line("FWD2")));
+    assertTrue(q.add(line(Protocol.LIST + "bb")));
+    assertTrue(q.add(line(Protocol.ROOM_INFO + "bb")));
+
+    assertEquals(4, q.size());
+    assertEquals("FWD1", q.poll().getMessage());
+    assertEquals(Protocol.LIST + "bb", q.poll().getMessage());
+
+    // once taken, a LIST is no longer replaced
+    assertTrue(q.add(line(Protocol.LIST + "c")));
+    assertEquals(Protocol.ROOM_INFO + "bb", q.poll().getMessage());
+    assertEquals("FWD2", q.poll().getMessage());
+    assertEquals(Protocol.LIST + "c", q.poll().getMessage());
+    assertNull(q.poll());
+    assertEquals(0, q.getBytes());
+  }
+
+  @Test
+  public void testOverBudgetForGracePeriodIsStalled() {
+    final OutboundQueue q = new OutboundQueue(100, 1000);
+    final long now = System.currentTimeMillis();
+    for (int i = 0; i < 20; ++i) {
+      assertTrue(q.add(line("0123456789")));
+    }
+    assertEquals(220, q.getBytes());
+    assertFalse(q.isStalled(now));
+
+    // catching up ends the grace period
+    while (q.getBytes() > 100) {
+      q.poll();
+    }
+    assertFalse(q.isStalled(now + 5000));
+
+    for (int i = 0; i < 10; ++i) {
+      assertTrue(q.add(line("0123456789")));
+    }
+    final long later = System.currentTimeMillis();
+    assertFalse(q.isStalled(later + 500));
+    final long evictions = OutboundQueue.getEvictions();
+    assertTrue(q.isStalled(later + 5000));
+    assertEquals(evictions + 1, OutboundQueue.getEvictions());
+
+    // nothing more is queued for an evicted connection
+    assertFalse(q.add(line("x")));
+    assertTrue(q.isEmpty());
+  }
+
+  @Test
+  public void testHardLimit() {
+    final OutboundQueue q = new OutboundQueue(100, 60000);
+    int added = 0;
+    while (q.add(line("0123456789"))) {
+      ++added;
+    }
+    assertEquals(36, added);
+    assertEquals(0, q.getBytes());
+  }
+
+  @Test
+  public void testUnboundedIsNeverStalled() {
+    final OutboundQueue q = OutboundQueue.unbounded();
+    for (int i = 0; i < 100000; ++i) {
+      assertTrue(q.add(line("0123456789")));
+    }
+    assertFalse(q.isStalled(System.currentTimeMillis() + 3600000));
+    assertEquals(100000, q.size());
+  }
+
+  @Test
+  public void testEvictionEndsPolling() throws Exception {
+    final OutboundQueue q = new OutboundQueue(100, 60000);
+    final EncodedLine[] polled = new EncodedLine[1];
+    final Thread writer = new Thread(() -> {
+      try {
+        polled[0] = q.poll(60000);
+      }
+      catch (InterruptedException e) {
+        // fails below
+      }
+    });
+    writer.start();
+
+    while (q.add(line("0123456789"))) {
+      // fill until evicted
+    }
+    writer.join(5000);
+    assertFalse(writer.isAlive());
+
+    // either a line taken before the eviction, or the end
+    assertNotNull(polled[0]);
+    assertSame(OutboundQueue.CLOSED, q.poll(60000));
+  }
+}
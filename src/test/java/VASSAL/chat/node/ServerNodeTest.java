@@ -0,0 +1,216 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ServerNodeTest {
+
+  private static final String MSG = "MSG"; //$NON-NLS-1$
+
+  // a player which counts the test messages it receives
+  private static class CountingNode extends Node {
+    private final AtomicInteger received = new AtomicInteger();
+
+    CountingNode(String id) {
+      super(null, id, null);
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return true;
+    }
+
+    @Override
+    public void send(String msg) {
+      if (msg.startsWith(MSG)) {
+        received.incrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  public void testRouting() {
+    final ServerNode server = new ServerNode();
+    final CountingNode a = new CountingNode("a");
+    final CountingNode b = new CountingNode("b");
+    final CountingNode c = new CountingNode("c");
+    server.registerNode("mod/room1", a);
+    server.registerNode("mod/room1", b);
+    server.registerNode("mod/room2", c);
+
+    server.forward("mod/room1", MSG);
+    server.forward("mod/*/~a", MSG);
+    server.forward("mod/room2/c", MSG);
+
+    assertEquals(1, a.received.get());
+    assertEquals(2, b.received.get());
+    assertEquals(2, c.received.get());
+
+    server.move(a, "mod/room2");
+    server.forward("mod/room2", MSG);
+    assertEquals(2, a.received.get());
+
+    server.disconnect(b);
+    assertNull(server.getDescendant("mod/room1"));
+    server.disconnect(a);
+    server.disconnect(c);
+    assertNull(server.getChild("mod"));
+  }
+
+  @Test
+  public void testRecipientsCachedUntilModuleChanges() {
+    final ServerNode server = new ServerNode();
+    final CountingNode a = new CountingNode("a");
+    final CountingNode b = new CountingNode("b");
+    server.registerNode("mod/room1", a);
+    server.registerNode("other/room1", b);
+
+    final MsgSender s = server.getMsgSender("mod/room1");
+    assertSame(s, server.getMsgSender("mod/room1"));
+
+    // changes elsewhere leave the module's recipients alone
+    server.registerNode("other/room2", new CountingNode("x"));
+    assertSame(s, server.getMsgSender("mod/room1"));
+
+    // a player joining the room is a recipient from then on
+    final CountingNode c = new CountingNode("c");
+    server.registerNode("mod/room1", c);
+    server.forward("mod/room1", MSG);
+    assertEquals(1, a.received.get());
+    assertEquals(1, c.received.get());
+
+    // so is one in a module which was removed and created again
+    server.disconnect(a);
+    server.disconnect(c);
+    server.registerNode("mod/room1", a);
+    server.forward("mod/room1", MSG);
+    server.forward("~other", MSG);
+    assertEquals(3, a.received.get());
+    assertEquals(0, b.received.get());
+    assertEquals(1, c.received.get());
+  }
+
+  @Test
+  public void testMetrics() {
+    final ServerNode server = new ServerNode();
+    server.registerNode("mod/room1", new CountingNode("a"));
+    server.registerNode("mod/room1", new CountingNode("b"));
+
+    server.forward("mod/room1", MSG);
+    server.forward("mod/room1", MSG);
+    server.forward("*", MSG);
+
+    final ServerMetrics m = server.getMetrics();
+    assertEquals(3, m.getMessagesIn());
+    assertEquals(6, m.getMessagesOut());
+    assertEquals(6 * (MSG.length() + 1), m.getBytesOut());
+    assertEquals(3 * (MSG.length() + 1), m.getUncompressedBytesIn());
+    assertEquals(3, m.getRecipientLookups());
+    assertEquals(1, m.getRecipientCacheHits());
+    assertEquals(2, m.getPlayers());
+  }
+
+  /**
+   * Forwards messages to stable rooms in several modules while other
+   * players join, move between rooms and modules, and leave, creating and
+   * removing rooms and modules. No message to a stable player may be lost,
+   * and nothing may deadlock.
+   */
+  @Test(timeout = 60000)
+  public void testConcurrentForwardAndChurn() throws Exception {
+    final ServerNode server = new ServerNode();
+    final int modules = 4;
+    final int perRoom = 5;
+    final int messages = 2000;
+
+    final List<CountingNode> stable = new ArrayList<>();
+    for (int m = 0; m < modules; ++m) {
+      for (int i = 0; i < perRoom; ++i) {
+        final CountingNode n = new CountingNode("s" + m + "-" + i);
+        server.registerNode("mod" + m + "/Main", n);
+        stable.add(n);
+      }
+    }
+
+    final ExecutorService ex = Executors.newFixedThreadPool(3 * modules);
+    final CountDownLatch go = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+
+    for (int m = 0; m < modules; ++m) {
+      final int mod = m;
+
+      // senders
+      for (int t = 0; t < 2; ++t) {
+        futures.add(ex.submit(() -> {
+          go.await();
+          for (int i = 0; i < messages; ++i) {
+            server.forward("mod" + mod + "/Main", MSG);
+          }
+          return null;
+        }));
+      }
+
+      // churn
+      futures.add(ex.submit(() -> {
+        go.await();
+        for (int i = 0; i < messages / 4; ++i) {
+          final CountingNode n = new CountingNode("c" + mod + "-" + i);
+          server.registerNode("mod" + mod + "/Main", n);
+          server.move(n, "mod" + mod + "/room" + (i % 3));
+          server.move(n, "churn" + (i % 2) + "/room");
+          server.forward("churn" + (i % 2) + "/*", MSG);
+          server.disconnect(n);
+        }
+        return null;
+      }));
+    }
+
+    go.countDown();
+    for (Future<?> f : futures) {
+      f.get(50, TimeUnit.SECONDS);
+    }
+    ex.shutdown();
+
+    for (CountingNode n : stable) {
+      assertEquals(n.getId(), 2 * messages, n.received.get());
+    }
+
+    // the churn modules are gone, the stable ones have only their Main room
+    for (int i = 0; i < 2; ++i) {
+      assertNull(server.getChild("churn" + i));
+    }
+    for (int m = 0; m < modules; ++m) {
+      final Node main = server.getDescendant("mod" + m + "/Main");
+      assertNotNull(main);
+      assertEquals(perRoom, main.getChildren().length);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SocketHandlerTest {
+
+  private static class Watcher implements SocketWatcher {
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    private SocketHandler handler;
+    private boolean compress;
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public void handleMessage(String msg) {
+      if (compress) {
+        compress = false;
+        handler.enableCompression();
+      }
+      lines.add(msg);
+    }
+
+    @Override
+    public void socketClosed(SocketHandler handler) {
+      closed.countDown();
+    }
+
+    String next() throws InterruptedException {
+      return lines.poll(5, TimeUnit.SECONDS);
+    }
+  }
+
+  // sends lines both ways; the server offers compression on the first line
+  private static void exchange(SocketHandler server, Watcher serverWatcher,
+                               SocketHandler client, Watcher clientWatcher)
+                                                throws InterruptedException {
+    final StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 5000; ++i) {
+      big.append("piece").append(i % 17).append(';');
+    }
+
+    client.writeLine("hello"); //$NON-NLS-1$
+    assertEquals("hello", serverWatcher.next()); //$NON-NLS-1$
+    for (int i = 0; i < 100; ++i) {
+      server.writeLine("s" + i); //$NON-NLS-1$
+      client.writeLine("c" + i); //$NON-NLS-1$
+    }
+    server.writeLine(big.toString());
+    client.writeLine(big.toString());
+
+    for (int i = 0; i < 100; ++i) {
+      assertEquals("s" + i, clientWatcher.next()); //$NON-NLS-1$
+      assertEquals("c" + i, serverWatcher.next()); //$NON-NLS-1$
+    }
+    assertEquals(big.toString(), clientWatcher.next());
+    assertEquals(big.toString(), serverWatcher.next());
+
+    assertTrue(server.isCompressing());
+    assertTrue(client.isCompressing());
+  }
+
+  @Test
+  public void testCompressionBetweenThreadedHandlers() throws Exception {
+    try (ServerSocket ss = new ServerSocket(0)) {
+      final Watcher cw = new Watcher();
+      final SocketHandler client = new SocketHandler(
+        new Socket("localhost", ss.getLocalPort()), cw); //$NON-NLS-1$
+      cw.handler = client;
+      client.acceptCompression();
+      client.start();
+
+      final Watcher sw = new Watcher();
+      final SocketHandler server = new SocketHandler(ss.accept(), sw);
+      sw.handler = server;
+      sw.compress = true;
+      server.start();
+
+      exchange(server, sw, client, cw);
+      client.close();
+    }
+  }
+
+  @Test
+  public void testCompressionWithNioServer() throws Exception {
+    final NioEventLoop loop = new NioEventLoop("test"); //$NON-NLS-1$
+    loop.start();
+    try (ServerSocketChannel ss = ServerSocketChannel.open()) {
+      ss.bind(new InetSocketAddress("localhost", 0)); //$NON-NLS-1$
+      final Watcher cw = new Watcher();
+      final SocketHandler client = new SocketHandler(
+        new Socket("localhost", ss.socket().getLocalPort()), cw); //$NON-NLS-1$
+      cw.handler = client;
+      client.acceptCompression();
+      client.start();
+
+      final SocketChannel ch = ss.accept();
+      final Watcher sw = new Watcher();
+      final SocketHandler server = new NioSocketHandler(ch, loop, sw);
+      sw.handler = server;
+      sw.compress = true;
+      server.start();
+
+      exchange(server, sw, client, cw);
+      client.close();
+    }
+    finally {
+      loop.interrupt();
+    }
+  }
+
+  @Test
+  public void testDeflateLineIgnoredUnlessOffered() throws Exception {
+    try (ServerSocket ss = new ServerSocket(0)) {
+      final Watcher cw = new Watcher();
+      final SocketHandler client = new SocketHandler(
+        new Socket("localhost", ss.getLocalPort()), cw); //$NON-NLS-1$
+      cw.handler = client;
+      client.start();
+
+      final Watcher sw = new Watcher();
+      final SocketHandler server = new SocketHandler(ss.accept(), sw);
+      sw.handler = server;
+      server.start();
+
+      // a client which has not accepted offers reads DEFLATE as a message
+      server.writeLine(Protocol.DEFLATE);
+      server.writeLine("after"); //$NON-NLS-1$
+      assertEquals(Protocol.DEFLATE, cw.next());
+      assertEquals("after", cw.next()); //$NON-NLS-1$
+      assertFalse(client.isCompressing());
+      assertFalse(server.isCompressing());
+      client.close();
+    }
+  }
+
+  @Test
+  public void testOverlongLineClosesNioConnection() throws Exception {
+    final NioEventLoop loop = new NioEventLoop("test"); //$NON-NLS-1$
+    loop.start();
+    try (ServerSocketChannel ss = ServerSocketChannel.open()) {
+      ss.bind(new InetSocketAddress("localhost", 0)); //$NON-NLS-1$
+      final Socket client = new Socket("localhost", ss.socket().getLocalPort()); //$NON-NLS-1$
+
+      final Watcher sw = new Watcher();
+      final SocketHandler server = new NioSocketHandler(ss.accept(), loop, sw);
+      sw.handler = server;
+      server.start();
+
+      final byte[] chunk = new byte[65536];
+      Arrays.fill(chunk, (byte) 'x');
+      try (OutputStream out = client.getOutputStream()) {
+        for (int n = 0; n <= SocketHandler.MAX_LINE_LENGTH; n += chunk.length) {
+          out.write(chunk);
+        }
+        out.write('\n');
+      }
+      catch (IOException e) {
+        // the server closed the connection before taking it all
+      }
+
+      assertTrue(sw.closed.await(10, TimeUnit.SECONDS));
+      assertNull(sw.lines.poll());
+      client.close();
+    }
+    finally {
+      loop.interrupt();
+    }
+  }
+}
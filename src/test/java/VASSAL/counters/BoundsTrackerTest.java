@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import org.junit.Test;
+
+import VASSAL.build.module.properties.ChangePropertyCommand;
+import VASSAL.command.Command;
+import VASSAL.command.NullCommand;
+
+import static org.junit.Assert.*;
+
+public class BoundsTrackerTest {
+
+  @Test
+  public void testPropertyChangeFoundAnywhereInChain() {
+    final Command prop =
+      new ChangePropertyCommand(null, "Turn", "1", "2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    assertFalse(BoundsTracker.changesProperty(null));
+    assertFalse(BoundsTracker.changesProperty(
+      new NullCommand().append(new NullCommand())));
+    assertTrue(BoundsTracker.changesProperty(prop));
+
+    final Command chain = new NullCommand();
+    chain.append(new NullCommand().append(prop));
+    assertTrue(BoundsTracker.changesProperty(chain));
+  }
+}
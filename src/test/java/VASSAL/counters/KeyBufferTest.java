@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyBufferTest {
+
+  private static final int PIECES = 2000;
+
+  @After
+  public void tearDown() {
+    KeyBuffer.getBuffer().clear();
+    DragBuffer.getBuffer().clear();
+  }
+
+  // a piece which needs no module to look up its properties
+  private static class TestPiece extends BasicPiece {
+    private Object selected;
+
+    @Override
+    public Object getProperty(Object key) {
+      return Properties.SELECTED.equals(key) ? selected : null;
+    }
+
+    @Override
+    public void setProperty(Object key, Object val) {
+      if (Properties.SELECTED.equals(key)) {
+        selected = val;
+      }
+    }
+  }
+
+  private static List<GamePiece> makePieces(int n) {
+    final List<GamePiece> l = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      final BasicPiece p = new TestPiece();
+      p.setPosition(new java.awt.Point(i % 50, i / 50));
+      l.add(p);
+    }
+    return l;
+  }
+
+  @Test
+  public void testSelectionOrderAndMembership() {
+    final KeyBuffer kbuf = KeyBuffer.getBuffer();
+    final List<GamePiece> l = makePieces(3);
+
+    kbuf.add(l.get(2));
+    kbuf.add(l.get(0));
+    kbuf.add(l.get(2));
+
+    assertEquals(List.of(l.get(2), l.get(0)), kbuf.asList());
+    assertTrue(kbuf.contains(l.get(0)));
+    assertFalse(kbuf.contains(l.get(1)));
+    assertEquals(Boolean.TRUE, l.get(0).getProperty(Properties.SELECTED));
+
+    kbuf.remove(l.get(0));
+    assertFalse(kbuf.contains(l.get(0)));
+    assertNull(l.get(0).getProperty(Properties.SELECTED));
+  }
+
+  /**
+   * Band-selects, drags, and deselects {@value #PIECES} pieces, checking
+   * selection once per piece as the map and piece mover do. This is
+   * quadratic if membership tests are linear.
+   */
+  @Test(timeout = 10000)
+  public void testBandSelectAndMove() {
+    final KeyBuffer kbuf = KeyBuffer.getBuffer();
+    final DragBuffer dbuf = DragBuffer.getBuffer();
+    final List<GamePiece> l = makePieces(PIECES);
+
+    for (int round = 0; round < 20; ++round) {
+      // band select
+      for (GamePiece p : l) {
+        kbuf.add(p);
+      }
+
+      // drag
+      for (GamePiece p : l) {
+        assertTrue(kbuf.contains(p));
+      }
+      kbuf.sort(Comparator.comparingInt((GamePiece p) -> p.getPosition().y)
+                          .thenComparingInt(p -> p.getPosition().x));
+      // the pieces were made in this order
+      assertEquals(l, kbuf.asList());
+      for (GamePiece p : kbuf.asList()) {
+        dbuf.add(p);
+      }
+      assertEquals(l, dbuf.asList());
+      for (GamePiece p : l) {
+        assertTrue(dbuf.contains(p));
+      }
+      dbuf.clear();
+
+      // deselect one by one, oldest first
+      for (GamePiece p : l) {
+        kbuf.remove(p);
+      }
+      assertTrue(kbuf.isEmpty());
+    }
+  }
+}
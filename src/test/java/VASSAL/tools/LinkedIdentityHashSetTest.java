@@ -0,0 +1,179 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkedIdentityHashSetTest {
+
+  @Test
+  public void testComparesByIdentity() {
+    final LinkedIdentityHashSet<String> s = new LinkedIdentityHashSet<>();
+    final String a = new String("a");
+    final String b = new String("a");
+
+    assertTrue(s.add(a));
+    assertTrue(s.add(b));
+    assertFalse(s.add(a));
+    assertEquals(2, s.size());
+    assertFalse(s.contains("a"));
+  }
+
+  @Test
+  public void testKeepsInsertionOrder() {
+    final LinkedIdentityHashSet<String> s = new LinkedIdentityHashSet<>();
+    s.addAll(Arrays.asList("c", "a", "d", "b"));
+    s.remove("a");
+    s.add("a");
+
+    assertEquals(Arrays.asList("c", "d", "b", "a"), s.asList());
+    assertEquals(Arrays.asList("c", "d", "b", "a"), new ArrayList<>(s));
+  }
+
+  @Test
+  public void testSort() {
+    final LinkedIdentityHashSet<String> s = new LinkedIdentityHashSet<>();
+    s.addAll(Arrays.asList("c", "a", "d", "b"));
+    s.remove("d");
+    s.sort(Comparator.naturalOrder());
+
+    assertEquals(Arrays.asList("a", "b", "c"), s.asList());
+
+    // positions must follow the sort
+    s.remove("b");
+    s.add("e");
+    assertEquals(Arrays.asList("a", "c", "e"), s.asList());
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    final LinkedIdentityHashSet<Integer> s = new LinkedIdentityHashSet<>();
+    for (int i = 0; i < 10; ++i) {
+      s.add(i);
+    }
+
+    for (Iterator<Integer> i = s.iterator(); i.hasNext(); ) {
+      if (i.next() % 2 == 1) {
+        i.remove();
+      }
+    }
+
+    assertEquals(Arrays.asList(0, 2, 4, 6, 8), s.asList());
+    assertFalse(s.contains(9));
+    s.add(9);
+    assertEquals(Arrays.asList(0, 2, 4, 6, 8, 9), s.asList());
+  }
+
+  @Test(timeout = 5000)
+  public void testManyRemovals() {
+    final int n = 100000;
+    final List<Object> objs = new ArrayList<>(n);
+    final LinkedIdentityHashSet<Object> s = new LinkedIdentityHashSet<>();
+    for (int i = 0; i < n; ++i) {
+      final Object o = new Object();
+      objs.add(o);
+      s.add(o);
+    }
+
+    // remove from the front, which is quadratic for a list
+    for (int i = 0; i < n - 1; ++i) {
+      assertTrue(s.remove(objs.get(i)));
+    }
+
+    assertEquals(1, s.size());
+    assertEquals(objs.get(n - 1), s.asList().get(0));
+  }
+
+  @Test
+  public void testIterationAcrossCompact() {
+    final LinkedIdentityHashSet<Integer> s = new LinkedIdentityHashSet<>();
+    for (int i = 0; i < 10; ++i) {
+      s.add(i);
+    }
+    // leave holes, too few to close up
+    s.remove(1);
+    s.remove(4);
+
+    final List<Integer> seen = new ArrayList<>();
+    final Iterator<Integer> i = s.iterator();
+    seen.add(i.next());
+    seen.add(i.next());
+    seen.add(i.next());
+
+    // reading the list view by position closes up the holes
+    assertEquals(Integer.valueOf(0), s.asList().get(0));
+
+    // removing through the iterator still removes the last element seen
+    i.remove();
+    while (i.hasNext()) {
+      seen.add(i.next());
+    }
+
+    assertEquals(Arrays.asList(0, 2, 3, 5, 6, 7, 8, 9), seen);
+    assertEquals(Arrays.asList(0, 2, 5, 6, 7, 8, 9), s.asList());
+    assertFalse(s.contains(3));
+  }
+
+  @Test
+  public void testListIsFailFastView() {
+    final LinkedIdentityHashSet<String> s = new LinkedIdentityHashSet<>();
+    s.addAll(Arrays.asList("a", "b", "c"));
+    final List<String> l = s.asList();
+
+    s.remove("b");
+    s.add("d");
+    assertEquals(Arrays.asList("a", "c", "d"), l);
+
+    try {
+      l.add("e");
+      fail();
+    }
+    catch (UnsupportedOperationException expected) {
+    }
+
+    final Iterator<String> li = l.iterator();
+    li.next();
+    s.add("e");
+    try {
+      li.next();
+      fail();
+    }
+    catch (ConcurrentModificationException expected) {
+    }
+
+    final Iterator<String> si = s.iterator();
+    si.next();
+    s.remove("a");
+    try {
+      si.hasNext();
+      fail();
+    }
+    catch (ConcurrentModificationException expected) {
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeightedLRUMapTest {
+
+  // each value weighs its length
+  private static WeightedLRUMap<String,String> make(
+    long capacity, ConcurrentMap<String,String> overflow)
+  {
+    return new WeightedLRUMap<>(capacity, String::length, overflow);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    final WeightedLRUMap<String,String> m = make(10, null);
+    m.put("a", "aaaa");
+    m.put("b", "bbbb");
+    m.get("a");
+    m.put("c", "cccc");
+
+    assertEquals("aaaa", m.get("a"));
+    assertNull(m.get("b"));
+    assertEquals("cccc", m.get("c"));
+    assertEquals(8, m.getWeight());
+    assertEquals(1, m.getEvictionCount());
+  }
+
+  @Test
+  public void testZeroWeightNotEvicted() {
+    final WeightedLRUMap<String,String> m = make(4, null);
+    m.put("a", "");
+    m.put("b", "bbbb");
+    m.put("c", "cccc");
+
+    assertEquals("", m.get("a"));
+    assertNull(m.get("b"));
+    assertEquals("cccc", m.get("c"));
+  }
+
+  @Test
+  public void testEvictedToOverflowAndPromoted() {
+    final ConcurrentMap<String,String> overflow = new ConcurrentHashMap<>();
+    final WeightedLRUMap<String,String> m = make(4, overflow);
+    m.put("a", "aaaa");
+    m.put("b", "bbbb");
+
+    assertEquals("aaaa", overflow.get("a"));
+    assertEquals("aaaa", m.get("a"));
+    assertFalse(overflow.containsKey("a"));
+    assertEquals("bbbb", overflow.get("b"));
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    final WeightedLRUMap<String,String> m = make(100, null);
+    assertNull(m.putIfAbsent("a", "x"));
+    assertEquals("x", m.putIfAbsent("a", "y"));
+    assertFalse(m.replace("a", "y", "zz"));
+    assertTrue(m.replace("a", "x", "zz"));
+    assertEquals(2, m.getWeight());
+    assertFalse(m.remove("a", "x"));
+    assertTrue(m.remove("a", "zz"));
+    assertEquals(0, m.getWeight());
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    final WeightedLRUMap<String,String> m = make(100, null);
+    m.put("a", "a");
+    m.get("a");
+    m.get("b");
+
+    assertEquals(1, m.getHitCount());
+    assertEquals(1, m.getMissCount());
+  }
+
+  @Test
+  public void testSetCapacityEvicts() {
+    final WeightedLRUMap<String,String> m = make(100, null);
+    m.put("a", "aaaa");
+    m.put("b", "bbbb");
+    m.setCapacity(4);
+
+    assertEquals(1, m.size());
+    assertEquals(4, m.getWeight());
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PNGStreamWriterTest {
+
+  private static BufferedImage random(int w, int h) {
+    final Random r = new Random(42);
+    final BufferedImage img =
+      new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < h; ++y) {
+      for (int x = 0; x < w; ++x) {
+        img.setRGB(x, y, r.nextInt());
+      }
+    }
+    return img;
+  }
+
+  @Test
+  public void testWriteInBands() throws IOException {
+    final BufferedImage src = random(37, 23);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PNGStreamWriter w = new PNGStreamWriter(out, 37, 23)) {
+      w.writeRows(src, 0, 0, 10);
+      w.writeRows(src, 0, 10, 13);
+    }
+
+    final BufferedImage dst =
+      ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(37, dst.getWidth());
+    assertEquals(23, dst.getHeight());
+    for (int y = 0; y < 23; ++y) {
+      for (int x = 0; x < 37; ++x) {
+        assertEquals(src.getRGB(x, y), dst.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testWriteColumns() throws IOException {
+    final BufferedImage src = random(20, 5);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PNGStreamWriter w = new PNGStreamWriter(out, 8, 5)) {
+      w.writeRows(src, 12, 0, 5);
+    }
+
+    final BufferedImage dst =
+      ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+    for (int y = 0; y < 5; ++y) {
+      for (int x = 0; x < 8; ++x) {
+        assertEquals(src.getRGB(x + 12, y), dst.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test(expected=IOException.class)
+  public void testIncompleteImage() throws IOException {
+    final BufferedImage src = random(4, 4);
+    try (PNGStreamWriter w =
+           new PNGStreamWriter(new ByteArrayOutputStream(), 4, 4)) {
+      w.writeRows(src, 0, 0, 3);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileCacheCollectorTest {
+
+  private static final Dimension IDIM = new Dimension(512, 256);
+  private static final Dimension TDIM = new Dimension(256, 256);
+
+  private final File root =
+    new File("src/test/resources/tilecache-collector.tmp");
+
+  private TileCacheCollector collector;
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteQuietly(root);
+    collector = new TileCacheCollector(root);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(root);
+  }
+
+  private void makeSet(String chash, long mtime) throws IOException {
+    for (String tn : TileUtils.tileNames(chash, IDIM.width, IDIM.height,
+                                         TDIM.width, TDIM.height)) {
+      final File f = new File(root, tn);
+      FileUtils.writeByteArrayToFile(f, new byte[100]);
+    }
+
+    collector.record(chash, IDIM, TDIM);
+    ContentAddressedTileCache.manifestFile(root, chash).setLastModified(mtime);
+  }
+
+  private File makeIndex(String key, String chash) throws IOException {
+    final TileIndex index = new TileIndex();
+    index.put("images/" + chash, chash);
+    final File f = ContentAddressedTileCache.indexFile(root, key);
+    index.write(f);
+    return f;
+  }
+
+  @Test
+  public void testUnderBudgetKeepsEverything() throws IOException {
+    makeSet("a", 1000);
+    makeSet("b", 2000);
+
+    assertEquals(0, collector.collect(1L << 20, Collections.emptySet()));
+    assertTrue(collector.exists("a"));
+    assertTrue(collector.exists("b"));
+  }
+
+  @Test
+  public void testUnreferencedRemovedLeastRecentlyUsedFirst()
+                                                           throws IOException {
+    makeSet("a", 1000);
+    makeSet("b", 2000);
+    makeSet("c", 3000);
+
+    // each set is 10 tiles of 100 bytes
+    assertEquals(1000, collector.collect(2000, Collections.emptySet()));
+    assertFalse(collector.exists("a"));
+    assertTrue(collector.exists("b"));
+    assertTrue(collector.exists("c"));
+
+    assertFalse(new File(root, TileUtils.tileName("a", 0, 0, 1)).exists());
+    assertTrue(new File(root, TileUtils.tileName("b", 0, 0, 1)).exists());
+  }
+
+  @Test
+  public void testReferencedSetsKeptUntilIndexDropped() throws IOException {
+    makeSet("a", 1000);
+    makeSet("b", 2000);
+    makeIndex("old", "a").setLastModified(1000);
+    makeIndex("current", "b");
+
+    collector.collect(1000, Collections.singleton("current"));
+
+    assertFalse(collector.exists("a"));
+    assertTrue(collector.exists("b"));
+    assertFalse(ContentAddressedTileCache.indexFile(root, "old").exists());
+    assertTrue(ContentAddressedTileCache.indexFile(root, "current").exists());
+  }
+
+  @Test
+  public void testSharedSetResolvesByContent() throws IOException {
+    makeSet("a", 1000);
+
+    final TileIndex index = new TileIndex();
+    index.put("images/v1.png", "a");
+    index.put("images/v2.png", "a");
+
+    final ContentAddressedTileCache cache =
+      new ContentAddressedTileCache(root.getPath(), index);
+
+    assertTrue(cache.tileExists("images/v1.png", 1, 0, 1.0));
+    assertTrue(cache.tileExists("images/v2.png", 1, 0, 1.0));
+    assertFalse(cache.tileExists("images/v3.png", 0, 0, 1.0));
+  }
+
+  @Test
+  public void testRecentlyUsedIndexKept() throws IOException {
+    makeSet("a", 1000);
+    makeIndex("recent", "a");
+
+    assertEquals(0, collector.collect(0, Collections.emptySet()));
+    assertTrue(collector.exists("a"));
+    assertTrue(ContentAddressedTileCache.indexFile(root, "recent").exists());
+  }
+
+  @Test
+  public void testLockedIndexKept() throws IOException {
+    makeSet("a", 1000);
+    final File f = makeIndex("open", "a");
+    f.setLastModified(1000);
+
+    final ContentAddressedTileCache cache =
+      new ContentAddressedTileCache(root.getPath(), "open");
+    assertNotNull(cache.lock);
+
+    assertEquals(0, collector.collect(0, Collections.emptySet()));
+    assertTrue(collector.exists("a"));
+    assertTrue(f.exists());
+
+    // once the module is closed, the index may go
+    cache.lock.close();
+    assertEquals(1000, collector.collect(0, Collections.emptySet()));
+    assertFalse(collector.exists("a"));
+    assertFalse(f.exists());
+  }
+
+  @Test
+  public void testPrunedImagesReleaseTheirSets() throws IOException {
+    makeSet("a", 1000);
+    makeSet("b", 2000);
+
+    final TileIndex index = new TileIndex();
+    index.put("images/a.png", "a");
+    index.put("images/b.png", "b");
+
+    assertFalse(index.retain(Arrays.asList("images/a.png", "images/b.png")));
+    assertTrue(index.retain(Collections.singleton("images/b.png")));
+    assertNull(index.get("images/a.png"));
+
+    index.write(ContentAddressedTileCache.indexFile(root, "current"));
+
+    assertEquals(1000, collector.collect(1000, Collections.singleton("current")));
+    assertFalse(collector.exists("a"));
+    assertTrue(collector.exists("b"));
+  }
+
+  private File makeStray(String chash, long mtime) throws IOException {
+    final File f = new File(root, TileUtils.tileName(chash, 0, 0, 1));
+    FileUtils.writeByteArrayToFile(f, new byte[100]);
+    f.setLastModified(mtime);
+    return f;
+  }
+
+  @Test
+  public void testOldStrayTilesRemoved() throws IOException {
+    makeSet("a", 1000);
+    final File kept = new File(root, TileUtils.tileName("a", 0, 0, 1));
+    kept.setLastModified(1000);
+
+    final File old = makeStray("b", 1000);
+    final File young = makeStray("c", System.currentTimeMillis());
+
+    collector.collect(1L << 20, Collections.emptySet());
+
+    assertTrue(kept.exists());
+    assertFalse(old.exists());
+    assertTrue(young.exists());
+
+    // the next search waits for the minimum age
+    final File later = makeStray("d", 1000);
+    collector.collect(1L << 20, Collections.emptySet());
+    assertTrue(later.exists());
+  }
+
+  @Test
+  public void testSetLockExcludesOtherLaunches() throws IOException {
+    final FileLock lock = collector.lockSet("a");
+    assertNotNull(lock);
+    assertNull(collector.lockSet("a"));
+
+    final FileLock other = collector.lockSet("b");
+    assertNotNull(other);
+    other.channel().close();
+
+    // released with its channel
+    lock.channel().close();
+    final FileLock again = collector.lockSet("a");
+    assertNotNull(again);
+    again.channel().close();
+  }
+}
@@ -218,4 +218,20 @@ public class TileUtilsTest {
       }
     }
   }
+
+  @Test
+  public void testTileNamesMatchesTileCount() {
+    assertEquals(
+      TileUtils.tileCount(1500, 1000, 256, 256),
+      TileUtils.tileNames("foo", 1500, 1000, 256, 256).size()
+    );
+  }
+
+  @Test
+  public void testContentHash() throws IOException {
+    assertEquals(
+      TileUtils.contentHash(new ByteArrayInputStream(bytes)),
+      TileUtils.contentHash(new ByteArrayInputStream(bytes.clone()))
+    );
+  }
 }
@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright (c) 2020 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.imageop;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageAtlasTest {
+
+  // with padding, sixteen of these fill a page
+  private static final int SIZE = ImageAtlas.PAGE_SIZE / 4 - 2;
+
+  private static List<BufferedImage> images(int n) {
+    final List<BufferedImage> l = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      l.add(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB));
+    }
+    return l;
+  }
+
+  private static ImageAtlas.Slot pack(ImageAtlas atlas, BufferedImage img) {
+    ImageAtlas.Slot s = null;
+    for (int i = 0; i < ImageAtlas.PACK_THRESHOLD; ++i) {
+      s = atlas.lookup(img);
+    }
+    assertNotNull(s);
+    return s;
+  }
+
+  @Test
+  public void testFullAtlasEvictsLeastRecentlyUsedPage() {
+    final ImageAtlas atlas = new ImageAtlas();
+    final List<BufferedImage> imgs = images(16 * ImageAtlas.MAX_PAGES);
+    for (BufferedImage img : imgs) {
+      pack(atlas, img);
+    }
+    assertEquals(ImageAtlas.MAX_PAGES, atlas.pages.size());
+
+    // use every page but the second
+    for (int i = 0; i < imgs.size(); ++i) {
+      if (i / 16 != 1) {
+        atlas.lookup(imgs.get(i));
+      }
+    }
+
+    final BufferedImage extra = images(1).get(0);
+    final ImageAtlas.Slot s = pack(atlas, extra);
+    assertSame(atlas.pages.get(1), s.page);
+    assertEquals(ImageAtlas.MAX_PAGES, atlas.pages.size());
+
+    // the sprites on the other pages stay where they were
+    for (int i = 0; i < imgs.size(); ++i) {
+      final ImageAtlas.Sprite sp = atlas.sprites.get(imgs.get(i));
+      if (i / 16 == 1) {
+        assertNull(sp.slot);
+      }
+      else {
+        assertNotNull(sp.slot);
+        assertNotSame(s.page, sp.slot.page);
+      }
+    }
+  }
+
+  @Test
+  public void testSlotIsUnchangedByEviction() {
+    final ImageAtlas atlas = new ImageAtlas();
+    final List<BufferedImage> imgs = images(16 * ImageAtlas.MAX_PAGES);
+    final ImageAtlas.Slot first = pack(atlas, imgs.get(0));
+    final BufferedImage firstImage = first.image;
+    final int x = first.x;
+    final int y = first.y;
+
+    for (BufferedImage img : imgs.subList(1, imgs.size())) {
+      pack(atlas, img);
+    }
+    // the first page is the least recently used, so this empties it
+    pack(atlas, images(1).get(0));
+
+    // a slot taken before the eviction still draws what it did
+    assertSame(firstImage, first.image);
+    assertEquals(x, first.x);
+    assertEquals(y, first.y);
+    assertNotSame(firstImage, first.page.image);
+    assertNull(atlas.sprites.get(imgs.get(0)).slot);
+  }
+}